@@ -0,0 +1,63 @@
+package smalltalk.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import smalltalk.Run;
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.VirtualMachine;
+import smalltalk.vm.primitive.BlockContext;
+import smalltalk.vm.primitive.BlockDescriptor;
+import smalltalk.vm.primitive.STCompiledBlock;
+import smalltalk.vm.primitive.STMetaClassObject;
+import smalltalk.vm.primitive.STObject;
+
+import java.util.concurrent.TimeUnit;
+
+/** Cost of creating the contexts made for every send and block
+ *  evaluation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockContextBenchmark {
+	VirtualMachine vm;
+	STObject receiver;
+	STCompiledBlock method;
+	BlockDescriptor descriptor;
+
+	@Setup
+	public void setup() {
+		STSymbolTable symtab = Run.compileCore(false);
+		Run.compileString(symtab,
+						  "class T [ f: x [ | y | ^[:z | x + z] ] ]\n" +
+						  "^T new f: 1",
+						  false);
+		vm = new VirtualMachine(symtab);
+		STMetaClassObject T = vm.lookupClass("T");
+		receiver = new STObject(T);
+		method = T.resolveMethod("f:");
+		BlockContext methodContext = new BlockContext(vm, method, receiver);
+		descriptor = new BlockDescriptor(method.blocks[0], methodContext);
+	}
+
+	@Benchmark
+	public BlockContext methodContext() {
+		return new BlockContext(vm, method, receiver);
+	}
+
+	@Benchmark
+	public BlockContext blockContext() {
+		return new BlockContext(vm, descriptor);
+	}
+}
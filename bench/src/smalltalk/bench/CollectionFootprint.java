@@ -0,0 +1,59 @@
+package smalltalk.bench;
+
+import smalltalk.Run;
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.VirtualMachine;
+import smalltalk.vm.primitive.STObject;
+
+/** Compare OrderedCollection with linkedlist.st's LinkedList: heap kept
+ *  per element of a collection of integers, and time per element to run
+ *  do: over it. Each class is measured in its own fresh VM.
+ *
+ *  $ java smalltalk.bench.CollectionFootprint [-size n] [-runs n]
+ */
+public class CollectionFootprint {
+	public static final String PROGRAM =
+		"class Bench [\n" +
+		"    class build: n [ |c| c := %s new. 1 to: n do: [:i | c add: i]. ^c ]\n" +
+		"    class sum: c [ |s| s := 0. c do: [:v | s := s + v]. ^s ]\n" +
+		"]\n";
+
+	public static int size = 100_000;
+	public static int runs = 10;
+
+	public static void main(String[] args) {
+		for (int i = 0; i+1 < args.length; i += 2) {
+			switch ( args[i] ) {
+				case "-size" : size = Integer.parseInt(args[i+1]); break;
+				case "-runs" : runs = Integer.parseInt(args[i+1]); break;
+				default :
+					throw new IllegalArgumentException("usage: CollectionFootprint [-size n] [-runs n]");
+			}
+		}
+		System.out.printf("%-18s %12s %14s%n", "class", "bytes/elem", "do: ns/elem");
+		report("LinkedList");
+		report("OrderedCollection");
+	}
+
+	public static void report(String className) {
+		STSymbolTable symtab = Run.compileCore(false);
+		Run.compile(symtab, CompileBenchmark.LINKED_LIST, false);
+		Run.compileString(symtab, String.format(PROGRAM, className), false);
+		VirtualMachine vm = new VirtualMachine(symtab);
+		STObject bench = vm.lookupClass("Bench");
+
+		long before = RetainedHeap.usedAfterGC();
+		STObject c = vm.send(bench, "build:", vm.newInteger(size));
+		long after = RetainedHeap.usedAfterGC();
+		double bytes = (double)(after - before) / size;
+
+		vm.send(bench, "sum:", c); // warm up
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < runs; i++) {
+			long start = System.nanoTime();
+			vm.send(bench, "sum:", c);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.printf("%-18s %12.1f %14.1f%n", className, bytes, (double)best / size);
+	}
+}
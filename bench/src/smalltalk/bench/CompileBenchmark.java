@@ -0,0 +1,57 @@
+package smalltalk.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import smalltalk.Run;
+import smalltalk.compiler.STSymbolTable;
+
+import java.util.concurrent.TimeUnit;
+
+/** Time the whole compiler pipeline (parse, define, resolve, gen code)
+ *  on the core image and the test libraries. Each library needs the
+ *  core, so those numbers include compiling image.st; subtract
+ *  compileCore to get the cost of the library alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompileBenchmark {
+	public static final String LINKED_LIST = "smalltalk/test/linkedlist.st";
+	public static final String DICT = "smalltalk/test/dict.st";
+
+	@Benchmark
+	public STSymbolTable compileCore() {
+		return Run.compileCore(false);
+	}
+
+	@Benchmark
+	public STSymbolTable compileCoreWithDbg() {
+		return Run.compileCore(true);
+	}
+
+	@Benchmark
+	public STSymbolTable compileLinkedList() {
+		STSymbolTable symtab = Run.compileCore(false);
+		return Run.compile(symtab, LINKED_LIST, false);
+	}
+
+	@Benchmark
+	public STSymbolTable compileDict() {
+		STSymbolTable symtab = Run.compileCore(false);
+		Run.compile(symtab, LINKED_LIST, false);
+		return Run.compile(symtab, DICT, false);
+	}
+
+	@Benchmark
+	public STSymbolTable compileString() {
+		STSymbolTable symtab = Run.compileCore(false);
+		return Run.compileString(symtab, ExecBenchmark.FIB, false);
+	}
+}
@@ -0,0 +1,130 @@
+package smalltalk.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import smalltalk.Run;
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.VirtualMachine;
+import smalltalk.vm.primitive.STObject;
+
+import java.util.concurrent.TimeUnit;
+
+/** Time {@link VirtualMachine#execMain()} on small programs that each
+ *  stress one part of the interpreter. Programs are compiled once per
+ *  trial and run repeatedly in the same VM so only execution is measured.
+ *
+ *  With {@link Scope#Thread}, each benchmark thread gets its own compiled
+ *  program and VM, so no VM is used by two threads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecBenchmark {
+	public static final String FIB =
+		"class Fib [\n" +
+		"    fib: n [ n < 2 ifTrue: [^n]. ^(self fib: n - 1) + (self fib: n - 2) ]\n" +
+		"]\n" +
+		"^Fib new fib: 20";
+
+	public static final String TO_DO =
+		"| sum |\n" +
+		"sum := 0.\n" +
+		"1 to: 10000 do: [:i | sum := sum + i].\n" +
+		"^sum";
+
+	public static final String DICTIONARY =
+		"| d sum |\n" +
+		"d := Dictionary new.\n" +
+		"1 to: 1000 do: [:i | d at: i put: i].\n" +
+		"sum := 0.\n" +
+		"1 to: 1000 do: [:i | sum := sum + (d at: i)].\n" +
+		"^sum";
+
+	/** dict.st's BucketDictionary, written in Smalltalk, has 7 buckets and
+	 *  at:put: only handles one key per bucket, so use keys 1..7 and repeat
+	 *  updates and lookups.
+	 */
+	public static final String BUCKET_DICTIONARY =
+		"| d sum |\n" +
+		"d := BucketDictionary new.\n" +
+		"sum := 0.\n" +
+		"1 to: 100 do: [:j |\n" +
+		"    1 to: 7 do: [:i | d at: i put: i * j].\n" +
+		"    1 to: 7 do: [:i | sum := sum + (d at: i)]].\n" +
+		"^sum";
+
+	public static final String LINKED_LIST =
+		"| list sum |\n" +
+		"list := LinkedList new.\n" +
+		"1 to: 1000 do: [:i | list add: i].\n" +
+		"sum := 0.\n" +
+		"list do: [:v | sum := sum + v].\n" +
+		"^sum";
+
+	public static final String ORDERED_COLLECTION =
+		"| c sum |\n" +
+		"c := OrderedCollection new.\n" +
+		"1 to: 1000 do: [:i | c add: i].\n" +
+		"sum := 0.\n" +
+		"c do: [:v | sum := sum + v].\n" +
+		"^sum";
+
+	public static final String STRING_CAT =
+		"| s |\n" +
+		"s := ''.\n" +
+		"1 to: 500 do: [:i | s := s, 'x'].\n" +
+		"^s";
+
+	public static final String MAP =
+		"| a |\n" +
+		"a := Array new: 1000.\n" +
+		"1 to: 1000 do: [:i | a at: i put: i].\n" +
+		"^(a map: [:v | v * 2]) size";
+
+	@Param({"fib", "toDo", "dictionary", "bucketDictionary", "linkedList", "orderedCollection",
+		"stringCat", "map"})
+	public String program;
+
+	VirtualMachine vm;
+
+	@Setup
+	public void setup() {
+		STSymbolTable symtab = Run.compileCore(false);
+		Run.compile(symtab, CompileBenchmark.LINKED_LIST, false);
+		Run.compile(symtab, CompileBenchmark.DICT, false);
+		Run.compileString(symtab, source(program), false);
+		vm = new VirtualMachine(symtab);
+	}
+
+	public static String source(String program) {
+		switch ( program ) {
+			case "fib" :        return FIB;
+			case "toDo" :       return TO_DO;
+			case "dictionary" : return DICTIONARY;
+			case "bucketDictionary" : return BUCKET_DICTIONARY;
+			case "linkedList" : return LINKED_LIST;
+			case "orderedCollection" : return ORDERED_COLLECTION;
+			case "stringCat" :  return STRING_CAT;
+			case "map" :        return MAP;
+			default :
+				throw new IllegalArgumentException("unknown program: "+program);
+		}
+	}
+
+	@Benchmark
+	public STObject execMain() {
+		return vm.execMain();
+	}
+}
@@ -0,0 +1,102 @@
+package smalltalk.bench;
+
+import smalltalk.SmalltalkExecutor;
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.primitive.STObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+
+/** Load-test {@link SmalltalkExecutor} with many short scripts and report
+ *  throughput and latency percentiles. Clients keep at most -inflight
+ *  jobs submitted but not finished, two per thread by default. A job's
+ *  latency runs from submit to completion, so it includes time queued
+ *  behind other jobs. Jobs
+ *  cycle through {@link #SCRIPTS}; with -source, each job compiles its
+ *  script, otherwise jobs run precompiled programs. Every result is
+ *  checked.
+ *
+ *  $ java smalltalk.bench.ExecutorLoadTest [-jobs n] [-threads n] [-inflight n] [-source]
+ */
+public class ExecutorLoadTest {
+	/** source, expected result of main */
+	public static final String[][] SCRIPTS = {
+		{"^3 + 4", "7"},
+		{"| sum | sum := 0. 1 to: 100 do: [:i | sum := sum + i]. ^sum", "5050"},
+		{"| a | a := Array new: 3. a at: 2 put: 5. ^a at: 2", "5"},
+		{"class T [ fib: n [ n < 2 ifTrue: [^n]. ^(self fib: n - 1) + (self fib: n - 2) ] ]\n^T new fib: 15", "610"},
+		{"^('abc', 'def') size", "6"},
+	};
+
+	public static int jobs = 20000;
+	public static int threads = Runtime.getRuntime().availableProcessors();
+	public static int inflight = 0;
+	public static boolean source = false;
+
+	public static void main(String[] args) throws Exception {
+		for (int i = 0; i < args.length; i++) {
+			switch ( args[i] ) {
+				case "-jobs" :    jobs = Integer.parseInt(args[++i]); break;
+				case "-threads" : threads = Integer.parseInt(args[++i]); break;
+				case "-inflight" : inflight = Integer.parseInt(args[++i]); break;
+				case "-source" :  source = true; break;
+			}
+		}
+		if ( inflight==0 ) inflight = 2 * threads;
+		try (SmalltalkExecutor executor = new SmalltalkExecutor(threads)) {
+			run(executor, jobs / 10); // warm up
+			long[] latencies = new long[jobs];
+			long start = System.nanoTime();
+			run(executor, latencies);
+			double secs = (System.nanoTime() - start) / 1e9;
+			Arrays.sort(latencies);
+			System.out.printf("%d jobs, %d threads, %d in flight, %s%n", jobs, threads, inflight,
+							  source ? "compiled per job" : "precompiled");
+			System.out.printf("throughput %.0f jobs/sec%n", jobs / secs);
+			System.out.printf("latency ms: p50 %.3f  p90 %.3f  p99 %.3f  p99.9 %.3f  max %.3f%n",
+							  percentile(latencies, 50), percentile(latencies, 90),
+							  percentile(latencies, 99), percentile(latencies, 99.9),
+							  latencies[latencies.length-1] / 1e6);
+		}
+	}
+
+	public static void run(SmalltalkExecutor executor, int n) throws Exception {
+		run(executor, new long[n]);
+	}
+
+	/** Submit latencies.length jobs and record each one's latency in ns */
+	public static void run(SmalltalkExecutor executor, long[] latencies) throws Exception {
+		List<STSymbolTable> programs = new ArrayList<>();
+		for (String[] script : SCRIPTS) programs.add(SmalltalkExecutor.compile(script[0]));
+		List<CompletableFuture<STObject>> results = new ArrayList<>();
+		Semaphore slots = new Semaphore(inflight);
+		for (int i = 0; i < latencies.length; i++) {
+			int job = i;
+			String[] script = SCRIPTS[i % SCRIPTS.length];
+			slots.acquire();
+			long submitted = System.nanoTime();
+			CompletableFuture<STObject> result = source ?
+				executor.submit(script[0]) :
+				executor.submit(programs.get(i % SCRIPTS.length));
+			results.add(result.whenComplete((r, e) -> {
+				latencies[job] = System.nanoTime() - submitted;
+				slots.release();
+			}));
+		}
+		for (int i = 0; i < results.size(); i++) {
+			String[] script = SCRIPTS[i % SCRIPTS.length];
+			String answer = results.get(i).get().toString();
+			if ( !answer.equals(script[1]) ) {
+				throw new IllegalStateException(script[0]+" answered "+answer+"; expecting "+script[1]);
+			}
+		}
+	}
+
+	public static double percentile(long[] sorted, double p) {
+		int i = (int)Math.ceil(p / 100 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(i, sorted.length-1))] / 1e6;
+	}
+}
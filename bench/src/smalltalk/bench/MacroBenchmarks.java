@@ -0,0 +1,84 @@
+package smalltalk.bench;
+
+import smalltalk.Run;
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.VirtualMachine;
+import smalltalk.vm.primitive.STObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** End-to-end benchmarks: run the classic programs in
+ *  resources/smalltalk/bench and report ops/sec, where an op is one
+ *  execution of the program's main. Each program is compiled once; then
+ *  each of several fresh VMs does some warm-up ops followed by timed ops.
+ *  Every result is checked so a broken VM can't report a good number.
+ *
+ *  $ java smalltalk.bench.MacroBenchmarks [-warmup n] [-iterations n] [-vms n] [name...]
+ */
+public class MacroBenchmarks {
+	/** name, expected result of main */
+	public static final String[][] BENCHMARKS = {
+		{"richards",     "{2322. 928}"},
+		{"deltablue",    "{100. 200}"},
+		{"nbody",        "{-169075. -169086}"},
+		{"binarytrees",  "{1023. 7936. 8128. 8176. 511}"},
+		{"json",         "{-5162. 820. 40}"},
+		{"bank",         "{47203. true. 124. 20}"},
+	};
+
+	public static int warmup = 5;
+	public static int iterations = 10;
+	public static int vms = 3;
+
+	public static void main(String[] args) {
+		List<String> names = new ArrayList<>();
+		int i = 0;
+		while ( i<args.length ) {
+			switch ( args[i] ) {
+				case "-warmup" :     warmup = Integer.parseInt(args[++i]); break;
+				case "-iterations" : iterations = Integer.parseInt(args[++i]); break;
+				case "-vms" :        vms = Integer.parseInt(args[++i]); break;
+				default :            names.add(args[i]); break;
+			}
+			i++;
+		}
+		System.out.printf("%-14s %6s %10s %10s %10s%n", "benchmark", "vms", "ops/sec", "min", "max");
+		for (String[] b : BENCHMARKS) {
+			if ( names.isEmpty() || names.contains(b[0]) ) {
+				run(b[0], b[1]);
+			}
+		}
+	}
+
+	public static void run(String name, String expected) {
+		STSymbolTable symtab = compile(name);
+		double min = Double.MAX_VALUE, max = 0, sum = 0;
+		for (int v = 1; v<=vms; v++) {
+			VirtualMachine vm = new VirtualMachine(symtab);
+			for (int i = 1; i<=warmup; i++) {
+				check(name, expected, vm.execMain());
+			}
+			long start = System.nanoTime();
+			for (int i = 1; i<=iterations; i++) {
+				check(name, expected, vm.execMain());
+			}
+			double opsPerSec = iterations / ((System.nanoTime() - start) / 1e9);
+			min = Math.min(min, opsPerSec);
+			max = Math.max(max, opsPerSec);
+			sum += opsPerSec;
+		}
+		System.out.printf("%-14s %6d %10.2f %10.2f %10.2f%n", name, vms, sum / vms, min, max);
+	}
+
+	public static STSymbolTable compile(String name) {
+		STSymbolTable symtab = Run.compileCore(false);
+		return Run.compile(symtab, "smalltalk/bench/"+name+".st", false);
+	}
+
+	public static void check(String name, String expected, STObject result) {
+		if ( !expected.equals(result.toString()) ) {
+			throw new IllegalStateException(name+" answered "+result+"; expecting "+expected);
+		}
+	}
+}
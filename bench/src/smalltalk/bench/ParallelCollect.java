@@ -0,0 +1,54 @@
+package smalltalk.bench;
+
+import smalltalk.SmalltalkExecutor;
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.VirtualMachine;
+
+/** Compare Array>>map: with parallelCollect: on CPU-bound work: fib of
+ *  each element of an array. Reports the best time of several runs for
+ *  each and the speedup, which should approach the number of cores as
+ *  the work per element grows.
+ *
+ *  $ java smalltalk.bench.ParallelCollect [-size n] [-fib n] [-runs n]
+ */
+public class ParallelCollect {
+	public static int size = 256;
+	public static int fib = 18;
+	public static int runs = 5;
+
+	public static void main(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			switch ( args[i] ) {
+				case "-size" : size = Integer.parseInt(args[++i]); break;
+				case "-fib" :  fib = Integer.parseInt(args[++i]); break;
+				case "-runs" : runs = Integer.parseInt(args[++i]); break;
+			}
+		}
+		double serial = bestMillis("map:");
+		double parallel = bestMillis("parallelCollect:");
+		System.out.printf("%d cores, %d elements, fib %d%n", Runtime.getRuntime().availableProcessors(), size, fib);
+		System.out.printf("map:              %8.1f ms%n", serial);
+		System.out.printf("parallelCollect:  %8.1f ms  speedup %.2f%n", parallel, serial / parallel);
+	}
+
+	public static double bestMillis(String collect) {
+		STSymbolTable program = SmalltalkExecutor.compile(
+			"class T [ fib: n [ n < 2 ifTrue: [^n]. ^(self fib: n - 1) + (self fib: n - 2) ] ]\n" +
+			"| a t |\n" +
+			"t := T new.\n" +
+			"a := Array new: "+size+".\n" +
+			"1 to: "+size+" do: [:i | a at: i put: "+fib+"].\n" +
+			"^(a "+collect+" [:n | t fib: n]) size");
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < runs + 1; i++) { // first run warms up
+			long start = System.nanoTime();
+			String result = new VirtualMachine(program).execMain().toString();
+			long t = System.nanoTime() - start;
+			if ( !result.equals(String.valueOf(size)) ) {
+				throw new IllegalStateException("answered "+result+"; expecting "+size);
+			}
+			if ( i>0 ) best = Math.min(best, t);
+		}
+		return best / 1e6;
+	}
+}
@@ -0,0 +1,94 @@
+package smalltalk.bench;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.misc.Interval;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import smalltalk.Run;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.SmalltalkParser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/** Time parsing alone, with SLL-first prediction (sll) and with full LL
+ *  (ll), on image.st and on a generated file of 20 classes. Divide by
+ *  the file size in KB, printed during setup, to compare parse time per
+ *  KB. The DFA cache is shared across parsers so after warm-up every
+ *  parse finds its predictions already cached.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+	public static final String IMAGE = "resources/smalltalk/image.st";
+
+	@Param({"image", "generated"})
+	public String source;
+
+	@Param({"sll", "ll"})
+	public String prediction;
+
+	char[] text;
+	Compiler compiler;
+
+	@Setup
+	public void setup() throws IOException {
+		if ( source.equals("image") ) {
+			try (InputStream in = Run.getImageURL(IMAGE).openStream()) {
+				ANTLRInputStream input = new ANTLRInputStream(in);
+				text = input.getText(Interval.of(0, input.size()-1)).toCharArray();
+			}
+		}
+		else {
+			text = generate(20, 10).toCharArray();
+		}
+		System.out.printf("%n%s is %.1fKB%n", source, text.length/1024.0);
+		compiler = new Compiler();
+		compiler.sllFirst = prediction.equals("sll");
+	}
+
+	@Benchmark
+	public SmalltalkParser.FileContext parse() {
+		return compiler.parseClasses(new ANTLRInputStream(text, text.length));
+	}
+
+	/** A file of nclasses classes with nmethods methods each that use
+	 *  every kind of expression, and a main that calls them.
+	 */
+	public static String generate(int nclasses, int nmethods) {
+		StringBuilder buf = new StringBuilder();
+		for (int c = 0; c < nclasses; c++) {
+			buf.append("class C").append(c).append(c>0 ? " : C"+(c-1) : "").append(" [\n");
+			buf.append("    | a b |\n");
+			buf.append("    class new [ ^super new init ]\n");
+			buf.append("    init [ a := 0. b := {1. 2. $c. 'str'. 3.5} ]\n");
+			for (int m = 0; m < nmethods; m++) {
+				buf.append("    m").append(m).append(": x with: y [\n");
+				buf.append("        | t u |\n");
+				buf.append("        t := x + y * 2 - (a // 3).\n");
+				buf.append("        u := b size > 2 ifTrue: [x] ifFalse: [[:z | z + t] value: y].\n");
+				buf.append("        1 to: t do: [:i | a := a + i. b at: 1 put: (i max: u)].\n");
+				buf.append("        (x < y and: [t ~= u]) ifTrue: [^self m").append((m+1)%nmethods).append(": y with: x].\n");
+				buf.append("        ^super printString, t asString\n");
+				buf.append("    ]\n");
+			}
+			buf.append("]\n");
+		}
+		buf.append("^(C").append(nclasses-1).append(" new m0: 1 with: 2) size\n");
+		return buf.toString();
+	}
+}
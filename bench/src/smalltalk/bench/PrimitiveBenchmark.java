@@ -0,0 +1,89 @@
+package smalltalk.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import smalltalk.Run;
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.VirtualMachine;
+import smalltalk.vm.primitive.BlockContext;
+import smalltalk.vm.primitive.Primitive;
+import smalltalk.vm.primitive.STArray;
+import smalltalk.vm.primitive.STInteger;
+import smalltalk.vm.primitive.STObject;
+import smalltalk.vm.primitive.STString;
+
+import java.util.concurrent.TimeUnit;
+
+/** Cost of {@link Primitive#perform} for common primitives, outside of
+ *  the interpreter loop. Each benchmark pushes the receiver and args
+ *  the way SEND leaves them; perform pops them so the stack stays
+ *  balanced across invocations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimitiveBenchmark {
+	VirtualMachine vm;
+	BlockContext ctx;
+	STInteger one;
+	STInteger two;
+	STString hello;
+	STArray array;
+
+	@Setup
+	public void setup() {
+		STSymbolTable symtab = Run.compileCore(false);
+		Run.compileString(symtab, "^nil", false);
+		vm = new VirtualMachine(symtab);
+		ctx = new BlockContext(vm, vm.lookupClass("MainClass").resolveMethod("main"), vm.nil());
+		one = new STInteger(vm, 1);
+		two = new STInteger(vm, 2);
+		hello = new STString(vm, "hello");
+		array = new STArray(vm, 10, vm.nil());
+	}
+
+	@Benchmark
+	public STObject integerAdd() {
+		ctx.push(one);
+		ctx.push(two);
+		return Primitive.Integer_ADD.perform(ctx, 1);
+	}
+
+	@Benchmark
+	public STObject integerLessThan() {
+		ctx.push(one);
+		ctx.push(two);
+		return Primitive.Integer_LT.perform(ctx, 1);
+	}
+
+	@Benchmark
+	public STObject stringCat() {
+		ctx.push(hello);
+		ctx.push(hello);
+		return Primitive.String_CAT.perform(ctx, 1);
+	}
+
+	@Benchmark
+	public STObject arrayAt() {
+		ctx.push(array);
+		ctx.push(two);
+		return Primitive.Array_AT.perform(ctx, 1);
+	}
+
+	@Benchmark
+	public STObject objectHash() {
+		ctx.push(hello);
+		return Primitive.Object_HASH.perform(ctx, 0);
+	}
+}
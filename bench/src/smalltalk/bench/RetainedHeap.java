@@ -0,0 +1,66 @@
+package smalltalk.bench;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.misc.Interval;
+import smalltalk.Run;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.STSymbolTable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Report how much heap compiled symbol tables keep alive per KB of
+ *  source, with and without {@link Compiler#releaseTrees}. Compiles
+ *  image.st, then the generated file from {@link ParseBenchmark}, copies
+ *  times each, holding on to every symbol table, and measures used heap
+ *  after a full GC.
+ *
+ *  $ java smalltalk.bench.RetainedHeap [-copies n]
+ */
+public class RetainedHeap {
+	public static int copies = 20;
+
+	public static void main(String[] args) throws IOException {
+		if ( args.length==2 && args[0].equals("-copies") ) copies = Integer.parseInt(args[1]);
+		String image;
+		try (InputStream in = Run.getImageURL(ParseBenchmark.IMAGE).openStream()) {
+			ANTLRInputStream input = new ANTLRInputStream(in);
+			image = input.getText(Interval.of(0, input.size()-1));
+		}
+		String generated = ParseBenchmark.generate(20, 10);
+		System.out.printf("%-10s %8s %14s %14s%n", "source", "KB", "kept KB/KB", "released KB/KB");
+		report("image", image);
+		report("generated", generated);
+	}
+
+	public static void report(String name, String source) {
+		double kb = source.length()/1024.0;
+		double kept = retained(source, false)/1024.0/copies/kb;
+		double released = retained(source, true)/1024.0/copies/kb;
+		System.out.printf("%-10s %8.1f %14.1f %14.1f%n", name, kb, kept, released);
+	}
+
+	/** Bytes of heap held by copies symbol tables compiled from source */
+	public static long retained(String source, boolean releaseTrees) {
+		long before = usedAfterGC();
+		List<STSymbolTable> tables = new ArrayList<>();
+		for (int i = 0; i < copies; i++) {
+			Compiler c = new Compiler();
+			c.releaseTrees = releaseTrees;
+			tables.add(c.compile(new ANTLRInputStream(source)));
+		}
+		long after = usedAfterGC();
+		if ( tables.size()!=copies ) throw new IllegalStateException(); // keep tables reachable
+		return after - before;
+	}
+
+	public static long usedAfterGC() {
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		for (int i = 0; i < 3; i++) System.gc();
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+}
@@ -0,0 +1,76 @@
+package smalltalk.bench;
+
+import smalltalk.vm.Image;
+import smalltalk.vm.VirtualMachine;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Show that VMs scale with cores when they share compiled code. Each
+ *  {@link MacroBenchmarks} program is compiled into an image once. Then
+ *  1, 2, 4, ... threads each run iterations tasks, where a task starts a
+ *  fresh VM from each image and runs its main, so threads run different
+ *  programs over the same loaded code at the same time. Reports tasks/sec
+ *  and the speedup over one thread, which should be close to the number
+ *  of threads up to the number of cores.
+ *
+ *  $ java smalltalk.bench.VMScaling [-iterations n] [-threads max]
+ */
+public class VMScaling {
+	public static int iterations = 5;
+	public static int maxThreads = Runtime.getRuntime().availableProcessors();
+
+	public static void main(String[] args) throws Exception {
+		for (int i = 0; i < args.length; i++) {
+			switch ( args[i] ) {
+				case "-iterations" : iterations = Integer.parseInt(args[++i]); break;
+				case "-threads" :    maxThreads = Integer.parseInt(args[++i]); break;
+			}
+		}
+		List<Image> images = new ArrayList<>();
+		for (String[] b : MacroBenchmarks.BENCHMARKS) {
+			images.add(new Image(ByteBuffer.wrap(Image.toBytes(MacroBenchmarks.compile(b[0])))));
+		}
+		tasksPerSec(images, maxThreads); // warm up
+		System.out.printf("%d cores%n", Runtime.getRuntime().availableProcessors());
+		System.out.printf("%8s %10s %8s%n", "threads", "tasks/sec", "speedup");
+		double one = 0;
+		for (int n = 1; n<=maxThreads; n = n<maxThreads && n*2>maxThreads ? maxThreads : n*2) {
+			double tasksPerSec = tasksPerSec(images, n);
+			if ( n==1 ) one = tasksPerSec;
+			System.out.printf("%8d %10.2f %8.2f%n", n, tasksPerSec, tasksPerSec / one);
+		}
+	}
+
+	public static double tasksPerSec(List<Image> images, int nthreads) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(nthreads);
+		try {
+			List<Future<?>> threads = new ArrayList<>();
+			long start = System.nanoTime();
+			for (int t = 0; t < nthreads; t++) {
+				int first = t; // start each thread on a different program
+				threads.add(pool.submit(() -> {
+					for (int i = 0; i < iterations; i++) runAll(images, first);
+				}));
+			}
+			for (Future<?> thread : threads) thread.get();
+			return nthreads * iterations / ((System.nanoTime() - start) / 1e9);
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	/** Run each program once in a fresh VM, starting with program first */
+	public static void runAll(List<Image> images, int first) {
+		for (int i = 0; i < images.size(); i++) {
+			int p = (first + i) % images.size();
+			String[] b = MacroBenchmarks.BENCHMARKS[p];
+			MacroBenchmarks.check(b[0], b[1], new VirtualMachine(images.get(p)).execMain());
+		}
+	}
+}
@@ -19,11 +19,25 @@ CP = "src:gen:out:test/src:resources:"+\
     JARCACHE+"/junit-4.10.jar:"+\
     JARCACHE+"/symtab-1.0.1.jar"
 
+JMH_CP = CP+":"+\
+    JARCACHE+"/jmh-core-1.37.jar:"+\
+    JARCACHE+"/jmh-generator-annprocess-1.37.jar:"+\
+    JARCACHE+"/jopt-simple-5.0.4.jar:"+\
+    JARCACHE+"/commons-math3-3.6.1.jar"
+
 def init():
     download("http://www.antlr.org/download/symtab-1.0.1.jar", JARCACHE)
     download("http://search.maven.org/remotecontent?filepath=junit/junit/4.10/junit-4.10.jar", JARCACHE)
 
 
+def init_bench():
+    # once cached in JARCACHE, bench builds work offline
+    download("http://search.maven.org/remotecontent?filepath=org/openjdk/jmh/jmh-core/1.37/jmh-core-1.37.jar", JARCACHE)
+    download("http://search.maven.org/remotecontent?filepath=org/openjdk/jmh/jmh-generator-annprocess/1.37/jmh-generator-annprocess-1.37.jar", JARCACHE)
+    download("http://search.maven.org/remotecontent?filepath=net/sf/jopt-simple/jopt-simple/5.0.4/jopt-simple-5.0.4.jar", JARCACHE)
+    download("http://search.maven.org/remotecontent?filepath=org/apache/commons/commons-math3/3.6.1/commons-math3-3.6.1.jar", JARCACHE)
+
+
 def parser():
     antlr4(srcdir="src/smalltalk/compiler", trgdir="gen",
            package="smalltalk.compiler",
@@ -50,6 +64,25 @@ def tests():
         test(file)
 
 
+def compile_bench():
+    require(compile)
+    require(init_bench)
+    # JMH's annotation processor, found on JMH_CP, generates the harness
+    javac("bench/src", "out", javacVersion="1.8", cp=JMH_CP)
+
+
+def bench():
+    """Run all JMH benchmarks; e.g., ./bild.py bench"""
+    require(compile_bench)
+    os.system("java -cp "+JMH_CP+" org.openjdk.jmh.Main")
+
+
+def macrobench():
+    """Run the programs in resources/smalltalk/bench; e.g., ./bild.py macrobench"""
+    require(compile_bench)
+    os.system("java -cp "+JMH_CP+" smalltalk.bench.MacroBenchmarks")
+
+
 def clean():
     rmdir("out")
     rmdir("gen")
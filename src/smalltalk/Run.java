@@ -1,44 +1,197 @@
 package smalltalk;
 
 import org.antlr.v4.runtime.ANTLRInputStream;
+import smalltalk.compiler.CompileCache;
 import smalltalk.compiler.Compiler;
 import smalltalk.compiler.STSymbolTable;
-import smalltalk.vm.SystemDictionary;
+import smalltalk.vm.Image;
+import smalltalk.vm.TraceListener;
+import smalltalk.vm.TreeShaker;
 import smalltalk.vm.VirtualMachine;
+import smalltalk.vm.profile.CallTree;
+import smalltalk.vm.profile.OpcodeHistogram;
+import smalltalk.vm.profile.Profiler;
+import smalltalk.vm.profile.SamplingProfiler;
 import smalltalk.vm.primitive.STObject;
 
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 
 /** Main entry to the Smalltalk interpreter */
 public class Run {
+	/** Frozen core symbol tables without and with dbg instructions */
+	private static final STSymbolTable[] sharedCores = new STSymbolTable[2];
+
+	/** If non-null, {@link #compile} reuses code for unchanged classes */
+	public static CompileCache compileCache;
+
+	/** If true, {@link #compile} generates method code on first send */
+	public static boolean lazy;
+
 	public static void main(String[] args) throws Exception {
-		int fi = 0;
 		boolean trace = false;
-		if (args.length > 0 && args[0].equals("-trace")) {
-			fi = 1;
-			trace = true;
-		}
+		boolean profile = false;
+		boolean sample = false;
+		boolean opcodes = false;
+		String collapsedFileName = null;
+		String opcodesCSVFileName = null;
 		String fileName = null;
-		if ( args.length>=1 ) fileName = args[fi];
-		compileAndExecute(fileName, trace, trace);
+		String imageFileName = null;
+		String saveImageFileName = null;
+		String shakeImageFileName = null;
+		for (int i = 0; i < args.length; i++) {
+			switch ( args[i] ) {
+				case "-trace" :
+					trace = true;
+					break;
+				case "-profile" : // exact, instrumenting profiler
+					profile = true;
+					break;
+				case "-sample" : // sampling profiler
+					sample = true;
+					break;
+				case "-collapsed" : // write profile call stacks for flame graphs
+					collapsedFileName = args[++i];
+					break;
+				case "-opcodes" : // opcode and opcode pair histograms
+					opcodes = true;
+					break;
+				case "-opcodes-csv" :
+					opcodes = true;
+					opcodesCSVFileName = args[++i];
+					break;
+				case "-cache" : // reuse code of unchanged classes from this dir
+					compileCache = new CompileCache(new File(args[++i]));
+					break;
+				case "-lazy" : // generate a method's code when it's first sent
+					lazy = true;
+					break;
+				case "-image" : // run a precompiled image instead of compiling
+					imageFileName = args[++i];
+					break;
+				case "-save-image" : // compile image.st and fileName to an image
+					saveImageFileName = args[++i];
+					break;
+				case "-shake-image" : // like -save-image but only what main can reach
+					shakeImageFileName = args[++i];
+					break;
+				default :
+					fileName = args[i];
+			}
+		}
+		if ( saveImageFileName!=null ) {
+			STSymbolTable symtab = compileCore(trace);
+			if ( fileName!=null ) compile(symtab, fileName, trace);
+			Image.save(symtab, saveImageFileName);
+			return;
+		}
+		if ( shakeImageFileName!=null ) {
+			STSymbolTable symtab = compileCore(trace);
+			compile(symtab, fileName, trace);
+			TreeShaker shaker = new TreeShaker(symtab).shake();
+			Image.save(shaker.getLiveCode(), shakeImageFileName);
+			System.err.print(shaker.report());
+			return;
+		}
+		if ( imageFileName==null && !profile && !sample && !opcodes ) {
+			compileAndExecute(fileName, trace, trace);
+			return;
+		}
+
+		VirtualMachine vm;
+		if ( imageFileName!=null ) {
+			vm = new VirtualMachine(Image.map(imageFileName));
+		}
+		else {
+			STSymbolTable symtab = compileCore(trace);
+			compile(symtab, fileName, trace);
+			vm = new VirtualMachine(symtab);
+		}
+		if ( trace ) vm.addListener(new TraceListener());
+		Profiler profiler = null;
+		if ( profile ) {
+			profiler = new Profiler();
+			vm.addListener(profiler);
+		}
+		OpcodeHistogram histogram = null;
+		if ( opcodes ) {
+			histogram = new OpcodeHistogram();
+			vm.addListener(histogram);
+		}
+		SamplingProfiler sampler = null;
+		if ( sample ) {
+			sampler = new SamplingProfiler(vm);
+			sampler.start();
+		}
+		try {
+			vm.execMain();
+		}
+		finally {
+			if ( sampler!=null ) sampler.stop();
+		}
+
+		CallTree calls = null;
+		if ( profiler!=null ) {
+			System.err.print(profiler.report());
+			calls = profiler.getCallTree();
+		}
+		if ( sampler!=null ) {
+			System.err.print(sampler.report());
+			calls = sampler.getCallTree();
+		}
+		if ( collapsedFileName!=null && calls!=null ) {
+			try (PrintWriter out = new PrintWriter(new FileWriter(collapsedFileName))) {
+				calls.writeCollapsed(out);
+			}
+		}
+		if ( histogram!=null ) {
+			System.err.print(histogram.report());
+			if ( opcodesCSVFileName!=null ) {
+				try (PrintWriter out = new PrintWriter(new FileWriter(opcodesCSVFileName))) {
+					histogram.writeCSV(out);
+				}
+			}
+		}
 	}
 
 	public static STObject compileAndExecute(String fileName, boolean genDbg, boolean trace) {
-		STSymbolTable symtab = compileCore(genDbg);
+		STSymbolTable symtab = overlayCore(genDbg);
 		compile(symtab, fileName, genDbg);
 		return exec(symtab, trace);
 	}
 
-	/** Compile the core image.st, which includes Object. Also clear the
-	 *  {@link SystemDictionary} for this thread.
+	/** Compile the core image.st, which includes Object, into a new
+	 *  symbol table
 	 */
 	public static STSymbolTable compileCore(boolean genDbg) {
 		return compile(null, "resources/smalltalk/image.st", genDbg);
 	}
 
+	/** Return the compiled image.st shared by all programs in this JVM,
+	 *  compiling it on first use. It's frozen; compile programs into
+	 *  {@link #overlayCore} instead.
+	 */
+	public static synchronized STSymbolTable sharedCore(boolean genDbg) {
+		int i = genDbg ? 1 : 0;
+		if ( sharedCores[i]==null ) {
+			sharedCores[i] = compileCore(genDbg).freeze();
+		}
+		return sharedCores[i];
+	}
+
+	/** Return a new, empty symbol table layered over {@link #sharedCore}
+	 *  into which a program can be compiled without recompiling image.st.
+	 */
+	public static STSymbolTable overlayCore(boolean genDbg) {
+		return new STSymbolTable(sharedCore(genDbg));
+	}
+
 	public static STSymbolTable compile(STSymbolTable symtab, String fileName, boolean genDbg) {
 		Compiler c;
 		if ( symtab!=null ) {
@@ -48,6 +201,8 @@ public class Run {
 			c = new Compiler();
 		}
 		c.genDbg = genDbg;
+		c.cache = compileCache;
+		c.lazy = lazy;
 
 		URL imageURL = getImageURL(fileName);
 		try {
@@ -65,6 +220,33 @@ public class Run {
 		return symtab;
 	}
 
+	/** Compile fileNames together, in parallel, into symtab; the files
+	 *  can refer to each other's classes.
+	 */
+	public static STSymbolTable compile(STSymbolTable symtab, List<String> fileNames, boolean genDbg) {
+		Compiler c = symtab!=null ? new Compiler(symtab) : new Compiler();
+		c.genDbg = genDbg;
+		c.cache = compileCache;
+		c.lazy = lazy;
+		List<ANTLRInputStream> inputs = new ArrayList<>();
+		for (String fileName : fileNames) {
+			URL url = getImageURL(fileName);
+			try {
+				ANTLRInputStream input = new ANTLRInputStream(url.openStream());
+				input.name = url.getFile();
+				inputs.add(input);
+			}
+			catch (IOException e ) {
+				throw new RuntimeException("can't load "+url, e);
+			}
+		}
+		symtab = c.compile(inputs);
+		if ( c.errors.size()>0 ) {
+			throw new RuntimeException("compile errors: "+c.errors.toString(),null);
+		}
+		return symtab;
+	}
+
 	public static STSymbolTable compileString(STSymbolTable symtab, String input, boolean genDbg) {
 		Compiler c;
 		if ( symtab!=null ) {
@@ -92,7 +274,7 @@ public class Run {
 	 */
 	public static STObject exec(STSymbolTable symtab, boolean trace) {
 		VirtualMachine vm = new VirtualMachine(symtab);
-		vm.trace = trace;
+		if ( trace ) vm.addListener(new TraceListener());
 		return vm.execMain();
 	}
 
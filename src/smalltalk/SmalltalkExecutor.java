@@ -0,0 +1,100 @@
+package smalltalk;
+
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.VirtualMachine;
+import smalltalk.vm.exceptions.ExecutionLimitExceeded;
+import smalltalk.vm.primitive.STObject;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Run many short Smalltalk programs, each in its own fresh VM. Programs
+ *  are compiled over the {@link Run#sharedCore} so image.st is compiled
+ *  once per JVM, and VMs share its compiled code, so starting a job
+ *  costs little more than running it.
+ *
+ *  Jobs run on the executor passed to the constructor; by default, a
+ *  pool with one thread per core. On a JVM with virtual threads, pass
+ *  Executors.newVirtualThreadPerTaskExecutor() to run each job on its
+ *  own virtual thread.
+ *
+ *  Each job can be limited in instructions executed and in wall time;
+ *  its future then completes exceptionally with
+ *  {@link ExecutionLimitExceeded}. Compile errors and other VM errors
+ *  complete it exceptionally too.
+ */
+public class SmalltalkExecutor implements AutoCloseable {
+	/** Defaults for jobs submitted without limits; 0 means no limit */
+	public long maxInstructions;
+	public long maxMillis;
+
+	protected final Executor executor;
+
+	/** Non-null if we created executor and so must shut it down */
+	protected final ExecutorService ownExecutor;
+
+	public SmalltalkExecutor() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public SmalltalkExecutor(int nthreads) {
+		ownExecutor = Executors.newFixedThreadPool(nthreads, daemonThreads());
+		executor = ownExecutor;
+	}
+
+	public SmalltalkExecutor(Executor executor) {
+		this.executor = executor;
+		ownExecutor = null;
+	}
+
+	/** Compile source, which must define main, over the shared core so
+	 *  that it can be submitted any number of times without recompiling.
+	 */
+	public static STSymbolTable compile(String source) {
+		return Run.compileString(Run.overlayCore(false), source, false);
+	}
+
+	public CompletableFuture<STObject> submit(String source) {
+		return submit(source, maxInstructions, maxMillis);
+	}
+
+	public CompletableFuture<STObject> submit(String source, long maxInstructions, long maxMillis) {
+		return CompletableFuture.supplyAsync(() -> exec(compile(source), maxInstructions, maxMillis), executor);
+	}
+
+	/** Run a program compiled by {@link #compile} */
+	public CompletableFuture<STObject> submit(STSymbolTable program) {
+		return submit(program, maxInstructions, maxMillis);
+	}
+
+	public CompletableFuture<STObject> submit(STSymbolTable program, long maxInstructions, long maxMillis) {
+		return CompletableFuture.supplyAsync(() -> exec(program, maxInstructions, maxMillis), executor);
+	}
+
+	public static STObject exec(STSymbolTable program, long maxInstructions, long maxMillis) {
+		VirtualMachine vm = new VirtualMachine(program);
+		vm.maxInstructions = maxInstructions;
+		vm.maxNanos = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+		return vm.execMain();
+	}
+
+	/** Stop accepting jobs if we own the executor; running jobs finish */
+	@Override
+	public void close() {
+		if ( ownExecutor!=null ) ownExecutor.shutdown();
+	}
+
+	protected static ThreadFactory daemonThreads() {
+		AtomicInteger n = new AtomicInteger(1);
+		return r -> {
+			Thread t = new Thread(r, "smalltalk-job-"+n.getAndIncrement());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+}
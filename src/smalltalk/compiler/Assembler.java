@@ -0,0 +1,102 @@
+package smalltalk.compiler;
+
+import smalltalk.misc.ByteList;
+import smalltalk.vm.Bytecode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The bytecode and literal table of one block under construction.
+ *  {@link CodeGenerator} appends instructions in execution order so
+ *  assembling a block is linear in its size rather than copying every
+ *  subexpression's code each time it's combined with its parent's.
+ *
+ *  When an instruction must precede code whose literals are added to
+ *  the table first, such as a DBG in front of its send's receiver, emit
+ *  it with a placeholder operand and {@link #patchLiteral} the operand
+ *  once the literal has its index. The instruction set has no jumps so
+ *  that is the only kind of forward reference.
+ */
+public class Assembler extends ByteList {
+	protected final List<String> literals = new ArrayList<>();
+	protected final Map<String,Integer> literalIndexes = new HashMap<>();
+
+	public Assembler() {
+		super(32);
+	}
+
+	/** Add s to the literal table, if not there already, and return its index */
+	public int addLiteral(String s) {
+		Integer i = literalIndexes.get(s);
+		if ( i==null ) {
+			i = literals.size();
+			literals.add(s);
+			literalIndexes.put(s, i);
+		}
+		return i;
+	}
+
+	/** Return the index of s in the literal table or -1 if not there */
+	public int getLiteralIndex(String s) {
+		Integer i = literalIndexes.get(s);
+		return i!=null ? i : -1;
+	}
+
+	/** The literal table or null if this block has no literals */
+	public String[] getLiterals() {
+		if ( literals.isEmpty() ) return null;
+		return literals.toArray(new String[literals.size()]);
+	}
+
+	/** Set the literal operand at address to the index of s */
+	public void patchLiteral(int address, String s) {
+		setShort(address, getLiteralIndex(s));
+	}
+
+	public void push_nil() 				{ add(Bytecode.NIL); }
+	public void push_self() 			{ add(Bytecode.SELF); }
+	public void push_true() 			{ add(Bytecode.TRUE); }
+	public void push_false() 			{ add(Bytecode.FALSE); }
+	public void push_char(int c) 		{ add(Bytecode.PUSH_CHAR); addShort(c); }
+	public void push_int(int v) 		{ add(Bytecode.PUSH_INT); addInt(v); }
+	public void push_float(float v) 	{ add(Bytecode.PUSH_FLOAT); addInt(Float.floatToIntBits(v)); }
+	public void push_field(int i) 		{ add(Bytecode.PUSH_FIELD); addShort(i); }
+	public void push_local(int delta, int i) { add(Bytecode.PUSH_LOCAL); addShort(delta); addShort(i); }
+	public void push_literal(int i) 	{ add(Bytecode.PUSH_LITERAL); addShort(i); }
+	public void push_global(int i) 		{ add(Bytecode.PUSH_GLOBAL); addShort(i); }
+	public void push_array(int n) 		{ add(Bytecode.PUSH_ARRAY); addShort(n); }
+	public void store_field(int i) 		{ add(Bytecode.STORE_FIELD); addShort(i); }
+	public void store_local(int delta, int i) { add(Bytecode.STORE_LOCAL); addShort(delta); addShort(i); }
+	public void pop() 					{ add(Bytecode.POP); }
+	public void send(int nargs, int i) 	{ add(Bytecode.SEND); addShort(nargs); addShort(i); }
+	public void send_super(int nargs, int i) { add(Bytecode.SEND_SUPER); addShort(nargs); addShort(i); }
+	public void block(int i) 			{ add(Bytecode.BLOCK); addShort(i); }
+	public void block_return() 			{ add(Bytecode.BLOCK_RETURN); }
+	public void method_return() 		{ add(Bytecode.RETURN); }
+
+	/** Emit a DBG instruction and return the address of its literal operand */
+	public int dbg(int literalIndex, int line, int charPos) {
+		add(Bytecode.DBG);
+		int address = size();
+		addShort(literalIndex);
+		addInt(Bytecode.combineLineCharPos(line, charPos));
+		return address;
+	}
+
+	protected void addShort(int v) {
+		add((short)((v >> 8) & 0xFF));
+		add((short)(v & 0xFF));
+	}
+
+	protected void addInt(int v) {
+		addShort(v >> 16);
+		addShort(v);
+	}
+
+	protected void setShort(int address, int v) {
+		set(address, (short)((v >> 8) & 0xFF));
+		set(address+1, (short)(v & 0xFF));
+	}
+}
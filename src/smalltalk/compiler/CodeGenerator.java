@@ -1,98 +1,83 @@
 package smalltalk.compiler;
 
+import org.antlr.symtab.GlobalScope;
 import org.antlr.symtab.Scope;
-import org.antlr.symtab.StringTable;
 import org.antlr.symtab.Symbol;
+import org.antlr.symtab.VariableSymbol;
 import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.misc.NotNull;
 import org.antlr.v4.runtime.tree.TerminalNode;
 import smalltalk.vm.primitive.STCompiledBlock;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Fill STBlock, STMethod objects in Symbol table with bytecode,
  * {@link smalltalk.vm.primitive.STCompiledBlock}.
+ *
+ * This is the second of the compiler's two passes. The first,
+ * {@link Compiler#defineSignatures}, defines classes, fields, methods,
+ * and arguments. Since nothing outside a method body can refer to its
+ * locals or blocks, this pass defines them as it goes, resolves each
+ * identifier once, and checks that assignments are to variables.
+ * It's the only place names in method bodies are resolved.
  */
-public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
+public class CodeGenerator extends SmalltalkBaseVisitor<Void> {
 	public Scope currentScope;
 	public final Compiler compiler;
-	public final Map<Scope, StringTable> blockToStrings = new HashMap<>();
+	/** Where code for the block in {@link #currentScope} goes */
+	public Assembler asm;
 	private String file;
-	public CodeGenerator(Compiler compiler) {
-		this.compiler = compiler;
-		file = compiler.fileName;
-	}
+	public STMethod currentMethod;
 
-	@Override
-	protected Code aggregateResult(Code aggregate, Code nextResult) {
-		if (aggregate != Code.None) {
-			if (nextResult != Code.None) {
-				return aggregate.join(nextResult);
-			}
-			return aggregate;
-		} else {
-			return nextResult;
-		}
+	/** Errors found in this generator's classes; {@link Compiler} merges
+	 *  them in order as generators may run concurrently.
+	 */
+	public final List<String> errors = new ArrayList<>();
+	public CodeGenerator(Compiler compiler) {
+		this(compiler, compiler.fileName);
 	}
 
-	@Override
-	protected Code defaultResult() {
-		return Code.None;
+	/** A generator for classes of file; the compiler may be running
+	 *  several of these at once, one per class.
+	 */
+	public CodeGenerator(Compiler compiler, String file) {
+		this.compiler = compiler;
+		this.file = file;
 	}
 
-	private STCompiledBlock getCompiledBlock(STBlock scope, Code code) {
-		STCompiledBlock stCB = new STCompiledBlock(scope);
-		if (code != null)
-			stCB.bytecode = code.bytes();
-		if (blockToStrings.containsKey(scope)) {
-			stCB.literals = blockToStrings.get(scope).toArray();
-			stCB.initialLiteralAsStrings();
-		}
-		return stCB;
+	private STCompiledBlock getCompiledBlock(STBlock scope, Assembler asm) {
+		return new STCompiledBlock(scope, asm.bytes(), asm.getLiterals());
 	}
 
-	private Code store(String text) {
-		Code code = new Code();
-		Symbol symbol = currentScope.resolve(text);
+	private void store(Symbol symbol) {
 		int intValue = symbol.getInsertionOrderNumber();
-		if (symbol instanceof STField) code = code.join(Compiler.store_field(intValue));
+		if (symbol instanceof STField) asm.store_field(intValue);
 		 else {
-			int relativeNum = ((STBlock) currentScope).getRelativeScopeCount(symbol.getScope().getName());
-			code = code.join(Compiler.store_local(relativeNum, intValue));
+			int relativeNum = ((STBlock) currentScope).depth - ((STBlock) symbol.getScope()).depth;
+			asm.store_local(relativeNum, intValue);
 		}
-		return code;
 	}
 
-	private Code push(String text) {
-		Code code = new Code();
+	private void push(Symbol symbol, String text) {
 		int depth, posi;
-		Symbol symbol = currentScope.resolve(text);
 
-		if (null == symbol || symbol.getScope() == compiler.symtab.GLOBALS) code.join(Compiler.push_global(addToStringTable(text)));
+		if (null == symbol || symbol.getScope() instanceof GlobalScope) asm.push_global(addToStringTable(text));
 		else {
 			posi = symbol.getInsertionOrderNumber();
-			if (symbol instanceof STField)  code.join(Compiler.push_field(posi));
+			if (symbol instanceof STField)  asm.push_field(posi);
 			else {
-				depth = ((STBlock) currentScope).getRelativeScopeCount(symbol.getScope().getName());
-				code.join(Compiler.push_local(depth, posi));
+				depth = ((STBlock) currentScope).depth - ((STBlock) symbol.getScope()).depth;
+				asm.push_local(depth, posi);
 			}
 		}
-		return code;
 	}
 
 	private int addToStringTable(String text) {
-		int posi;
 		if (text.contains("'")) text = text.substring(text.indexOf("'") + 1, text.lastIndexOf("'"));
-		if (null != blockToStrings.get(currentScope))  posi = blockToStrings.get(currentScope).add(text);
-		else {
-			StringTable strTable = new StringTable();
-			posi = strTable.add(text);
-			blockToStrings.put(currentScope, strTable);
-		}
-		return posi;
+		return asm.addLiteral(text);
 	}
 
 	public void pushScope(Scope scope) {
@@ -104,189 +89,201 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 	}
 
 	public int getLiteralIndex(String s) {
-		String[] strings;
-		if (blockToStrings.containsKey(currentScope)) {
-			strings = blockToStrings.get(currentScope).toArray();
-			for (int i = 0; i < strings.length; i++)  if (strings[i].equals(s)) return i;
-		}
-		return -1;
+		return asm.getLiteralIndex(s);
 	}
 
-	public Code dbgAtEndMain(Token t) {
+	public int dbgAtEndMain(Token t) {
 		int charPos = t.getCharPositionInLine() + t.getText().length();
 		return dbg(t.getLine(), charPos);
 	}
 
-	public Code dbgAtEndBlock(Token t) {
+	public int dbgAtEndBlock(Token t) {
 		int charPos = t.getCharPositionInLine() + t.getText().length();
 		charPos -= 1; // point at ']'
 		return dbg(t.getLine(), charPos);
 	}
 
-	public Code dbg(Token t) {
+	public int dbg(Token t) {
 		return dbg(t.getLine(), t.getCharPositionInLine());
 	}
 
-	public Code dbg(int line, int charPos) {
-		return Compiler.dbg(getLiteralIndex(compiler.getFileName()), line, charPos);
+	/** Emit a dbg instruction and return the address of its file operand;
+	 *  if file isn't in the literal table yet, patch the operand once it is.
+	 */
+	public int dbg(int line, int charPos) {
+		return asm.dbg(getLiteralIndex(file), line, charPos);
 	}
 
 	@Override
-	public Code visitFile(@NotNull SmalltalkParser.FileContext ctx) {
+	public Void visitFile(@NotNull SmalltalkParser.FileContext ctx) {
 		if (!ctx.main().getText().isEmpty()) visit(ctx.main());
 		for (int i = 0; i < ctx.classDef().size(); i++) visit(ctx.classDef(i));
-		return Code.None;
+		return null;
 	}
 
 	@Override
-	public Code visitMain(@NotNull SmalltalkParser.MainContext ctx) {
+	public Void visitMain(@NotNull SmalltalkParser.MainContext ctx) {
 		pushScope(ctx.classScope);
 		pushScope(ctx.scope);
-		Code code = new Code() ;
-		code = visitChildren(ctx);
+		currentMethod = ctx.scope;
+		asm = new Assembler();
+		visitChildren(ctx);
 		if (ctx.body() instanceof SmalltalkParser.FullBodyContext) {
 			if (compiler.genDbg) {
 				addToStringTable(file);
-				code = Code.join(code, dbgAtEndMain(ctx.stop));
+				dbgAtEndMain(ctx.stop);
 			}
-			code.join(Compiler.pop());
+			asm.pop();
 		}
-		code.join(Compiler.push_self()).join(Compiler.method_return());
-		ctx.scope.compiledBlock = getCompiledBlock(ctx.scope, code);
+		asm.push_self();
+		asm.method_return();
+		ctx.scope.compiledBlock = getCompiledBlock(ctx.scope, asm);
 		popScope();
 		popScope();
-		return code;
+		return null;
 	}
 
 	@Override
-	public Code visitPrimitiveMethodBlock(@NotNull SmalltalkParser.PrimitiveMethodBlockContext ctx) {
+	public Void visitPrimitiveMethodBlock(@NotNull SmalltalkParser.PrimitiveMethodBlockContext ctx) {
 		SmalltalkParser.MethodContext methodContext = (SmalltalkParser.MethodContext) ctx.getParent();
 		pushScope(methodContext.scope);
-		Code code = visitChildren(ctx);
+		asm = new Assembler();
 		if (compiler.genDbg) { // put dbg in front of push_self
 			addToStringTable(file);
-			code = Code.join(code, dbgAtEndBlock(ctx.stop));
+			dbgAtEndBlock(ctx.stop);
 		}
-		methodContext.scope.compiledBlock = getCompiledBlock(methodContext.scope, code);
+		methodContext.scope.compiledBlock = getCompiledBlock(methodContext.scope, asm);
 		popScope();
-		return Code.None;
+		return null;
 	}
 
 	@Override
-	public Code visitSmalltalkMethodBlock(@NotNull SmalltalkParser.SmalltalkMethodBlockContext ctx) {
+	public Void visitSmalltalkMethodBlock(@NotNull SmalltalkParser.SmalltalkMethodBlockContext ctx) {
 //		System.out.println("visitSmalltalkMethodBlock");
 		SmalltalkParser.MethodContext methodNode = (SmalltalkParser.MethodContext) ctx.getParent();
+		if ( methodNode.scope==null ) return null; // redefinition, already reported
 		pushScope(methodNode.scope);
-		Code code = visitChildren(ctx);
+		currentMethod = methodNode.scope;
+		asm = new Assembler();
+		visitChildren(ctx);
 		if (compiler.genDbg) { // put dbg in front of push_self
 			addToStringTable(file);
-			code = Code.join(code, dbgAtEndBlock(ctx.stop));
+			dbgAtEndBlock(ctx.stop);
 		}
-		if (ctx.body() instanceof SmalltalkParser.FullBodyContext) code = code.join(Compiler.pop()); // visitFullBody() doesn't have last pop; we toss here but use with block_return in visitBlock
-		code = code.join(Compiler.push_self());
-		code = code.join(Compiler.method_return());
-		methodNode.scope.compiledBlock = getCompiledBlock(methodNode.scope, code);
+		if (ctx.body() instanceof SmalltalkParser.FullBodyContext) asm.pop(); // visitFullBody() doesn't have last pop; we toss here but use with block_return in visitBlock
+		asm.push_self();
+		asm.method_return();
+		methodNode.scope.compiledBlock = getCompiledBlock(methodNode.scope, asm);
 		popScope();
-		return Code.None;
+		return null;
 	}
 
 	@Override
-	public Code visitAssign(@NotNull SmalltalkParser.AssignContext ctx) {
+	public Void visitAssign(@NotNull SmalltalkParser.AssignContext ctx) {
 //		System.out.println("visitAssign");
-		Code e = visit(ctx.messageExpression());
-		Code store = store(ctx.lvalue().ID().getText());
-		Code code = e.join(store);
+		int dbgAddress = compiler.genDbg ? dbg(ctx.start) : -1; // dbg goes before expression
+		visit(ctx.messageExpression());
+		ctx.lvalue().sym = checkIDExists(ctx.lvalue().ID().getSymbol());
+		if (ctx.lvalue().sym == null) return null;
+		store(ctx.lvalue().sym);
 		if (compiler.genDbg) {
 			addToStringTable(file);
-			code = dbg(ctx.start).join(code);
+			asm.patchLiteral(dbgAddress, file);
 		}
-		return code;
+		return null;
 	}
 
 	@Override
-	public Code visitBlock(@NotNull SmalltalkParser.BlockContext ctx) {
+	public Void visitBlock(@NotNull SmalltalkParser.BlockContext ctx) {
 //		System.out.println("visitBlock");
+		List<String> args = Collections.emptyList();
+		if ( ctx.blockArgs()!=null && ctx.blockArgs().ID()!=null ) {
+			args = DefineSymbols.getTextValues(ctx.blockArgs().ID());
+		}
+		STBlock blk = compiler.createBlock(currentMethod, ctx);
+		blk.depth = ((STBlock) currentScope).depth + 1;
+		currentScope.define(blk); // must occur before defining variables
+		compiler.defineArguments(blk, args, errors);
+		ctx.scope = blk;
+		asm.block(ctx.scope.index);
+		Assembler enclosing = asm;
 		pushScope(ctx.scope);
-		short blockIndex = (short) ctx.scope.index;
-		Code code = new Code();
-		code.join(Compiler.block(blockIndex));
-		Code sideCode = new Code();
-		sideCode = visitChildren(ctx);
+		asm = new Assembler();
+		visitChildren(ctx);
 		if (ctx.body() instanceof SmalltalkParser.EmptyBodyContext) {
-			sideCode = sideCode.join(Compiler.push_nil());
+			asm.push_nil();
 		}
 		if (compiler.genDbg) {
 			addToStringTable(file);
-			sideCode = Code.join(sideCode, dbgAtEndBlock(ctx.stop));
+			dbgAtEndBlock(ctx.stop);
 		}
-		sideCode = sideCode.join(Compiler.block_return());
-		ctx.scope.compiledBlock = getCompiledBlock(ctx.scope, sideCode);
+		asm.block_return();
+		ctx.scope.compiledBlock = getCompiledBlock(ctx.scope, asm);
 		popScope();
-		return code;
+		asm = enclosing;
+		return null;
 	}
 
 	@Override
-	public Code visitFullBody(@NotNull SmalltalkParser.FullBodyContext ctx) {
+	public Void visitFullBody(@NotNull SmalltalkParser.FullBodyContext ctx) {
 //		System.out.println("visitFullyBody");
-		Code code = new Code();
-		if (ctx.stat().size()<2) code = code.join(visitChildren(ctx));
-		else {
-			if(ctx.localVars()!=null)code.join(visit(ctx.localVars()));
-			code = code.join(visit(ctx.stat(0)));
-			int	length = ctx.stat().size();
-			for (int i = 1; i < length; i++) {
-				code = code.join(Compiler.pop());
-				code = code.join(visit(ctx.stat(i)));
-			}
+		defineLocals(ctx.localVars());
+		for (int i = 0; i < ctx.stat().size(); i++) {
+			if (i > 0) asm.pop();
+			visit(ctx.stat(i));
 		}
-		return code;
+		return null;
 	}
 
 	@Override
-	public Code visitEmptyBody(@NotNull SmalltalkParser.EmptyBodyContext ctx) {
+	public Void visitEmptyBody(@NotNull SmalltalkParser.EmptyBodyContext ctx) {
 //		System.out.println("visitEmptyBody");
-		Code code = new Code();
+		defineLocals(ctx.localVars());
 		if(compiler.genDbg){
 			addToStringTable(file);
-			code.join(dbg(ctx.stop));
+			dbg(ctx.stop);
 		}
-		return code;
+		return null;
 	}
 
 	@Override
-	public Code visitReturn(@NotNull SmalltalkParser.ReturnContext ctx) {
+	public Void visitReturn(@NotNull SmalltalkParser.ReturnContext ctx) {
 //		System.out.println("visitReturn");
-		Code code = visit(ctx.messageExpression());
+		visit(ctx.messageExpression());
 		if (compiler.genDbg) {
 			addToStringTable(file);
-			code = Code.join(code, dbg(ctx.start)); // put dbg after expression as that is when it executes
+			dbg(ctx.start); // put dbg after expression as that is when it executes
 		}
-		code = code.join(Compiler.method_return());
-		return code;
+		asm.method_return();
+		return null;
 	}
 
 	@Override
-	public Code visitBinaryExpression(@NotNull SmalltalkParser.BinaryExpressionContext ctx) {
+	public Void visitBinaryExpression(@NotNull SmalltalkParser.BinaryExpressionContext ctx) {
 //		System.out.println("visitBinaryExpression");
-		Code code =  visit(ctx.unaryExpression(0));
-		for (int i = 0 ; i < ctx.bop().size();i++){
-			code = aggregateResult(code, visit(ctx.unaryExpression(i + 1)));
+		// the dbg of every operator goes in front of the whole expression, last operator's first
+		int nops = ctx.bop().size();
+		int[] dbgAddresses = new int[nops];
+		if (compiler.genDbg) {
+			for (int i = nops - 1; i >= 0; i--) dbgAddresses[i] = dbg(ctx.bop(i).start);
+		}
+		visit(ctx.unaryExpression(0));
+		for (int i = 0 ; i < nops;i++){
+			visit(ctx.unaryExpression(i + 1));
 			if (compiler.genDbg) {
 				addToStringTable(file);
-				code = aggregateResult(dbg(ctx.bop(i).start),code);
+				asm.patchLiteral(dbgAddresses[i], file);
 			}
-			code = aggregateResult(code,Compiler.send(1,addToStringTable(ctx.bop(i).getText())));
+			asm.send(1,addToStringTable(ctx.bop(i).getText()));
 		}
-		return code;
+		return null;
 	}
 
 	@Override
-	public Code visitKeywordSend(@NotNull SmalltalkParser.KeywordSendContext ctx) {
+	public Void visitKeywordSend(@NotNull SmalltalkParser.KeywordSendContext ctx) {
 //		System.out.println("visitKeywordSend");
-		Code code1 = new Code();
-		code1 = visit(ctx.recv);
-		Code code2 = new Code();
-		for (int i = 0; i < ctx.args.size(); i++) code2 = code2.join(visit(ctx.args.get(i)));
+		visit(ctx.recv);
+		for (int i = 0; i < ctx.args.size(); i++) visit(ctx.args.get(i));
 		if (!ctx.KEYWORD().isEmpty()) {
 			List<TerminalNode> key = ctx.KEYWORD();
 			List<String> strS = org.antlr.symtab.Utils.map(key, TerminalNode::getText);
@@ -294,73 +291,93 @@ public class CodeGenerator extends SmalltalkBaseVisitor<Code> {
 			addToStringTable(str);
 			if (compiler.genDbg) {
 				addToStringTable(file);
-				code2 = Code.join( code2,dbg(ctx.KEYWORD(0).getSymbol()));
+				dbg(ctx.KEYWORD(0).getSymbol());
 			}
-			code2 = code2.join(Compiler.send(ctx.args.size(), addToStringTable(str)));
+			asm.send(ctx.args.size(), addToStringTable(str));
 		}
-		code1 = code1.join(code2);
-		return code1;
+		return null;
 	}
 
 	@Override
-	public Code visitUnarySuperMsgSend(@NotNull SmalltalkParser.UnarySuperMsgSendContext ctx) {
+	public Void visitUnarySuperMsgSend(@NotNull SmalltalkParser.UnarySuperMsgSendContext ctx) {
 //		System.out.println("visitUnarySuperMsgSend");
-		Code code = new Code();
-		code.join(Compiler.push_self()).join(Compiler.send_super(0, addToStringTable(ctx.ID().getText())));
-		return code;
+		asm.push_self();
+		asm.send_super(0, addToStringTable(ctx.ID().getText()));
+		return null;
 	}
 
 	@Override
-	public Code visitUnaryMsgSend(@NotNull SmalltalkParser.UnaryMsgSendContext ctx) {
+	public Void visitUnaryMsgSend(@NotNull SmalltalkParser.UnaryMsgSendContext ctx) {
 //		System.out.println("visitUnaryMsgSend");
-		Code code = new Code();
-		code = visit(ctx.unaryExpression());
+		int dbgAddress = compiler.genDbg ? dbg(ctx.stop) : -1; // dbg goes before receiver
+		visit(ctx.unaryExpression());
 		addToStringTable(ctx.ID().getText());
 		if (compiler.genDbg) {
 			addToStringTable(file);
-			code = Code.join(dbg(ctx.stop),code);
+			asm.patchLiteral(dbgAddress, file);
 		}
-		code = code.join(Compiler.send(0, addToStringTable(ctx.ID().getText())));
-		return code;
+		asm.send(0, addToStringTable(ctx.ID().getText()));
+		return null;
 	}
 
 	@Override
-	public Code visitLiteral(@NotNull SmalltalkParser.LiteralContext ctx) {
+	public Void visitLiteral(@NotNull SmalltalkParser.LiteralContext ctx) {
 //		System.out.println("visitLiteral");
-		Code code = new Code();
 		if (ctx.NUMBER() != null) {
 			if (ctx.NUMBER().getText().contains(".")) {
-				code = code.join(Compiler.push_float(new Float(ctx.NUMBER().getText())));
+				asm.push_float(new Float(ctx.NUMBER().getText()));
 			} else
-				code = code.join(Compiler.push_int(new Integer(ctx.NUMBER().getText())));
+				asm.push_int(new Integer(ctx.NUMBER().getText()));
 		} else if ( ctx.CHAR() != null) {
-			code = code.join(Compiler.push_char(ctx.CHAR().getText().charAt(1)));
+			asm.push_char(ctx.CHAR().getText().charAt(1));
 		} else if (ctx.STRING() != null) {
-			code = code.join(Compiler.push_literal(addToStringTable(ctx.STRING().getText())));
+			asm.push_literal(addToStringTable(ctx.STRING().getText()));
 		} else {
 			String string = ctx.getText();
-			if (string.equals("nil"))  code = code.join(Compiler.push_nil());
-			else if (string.equals("self")) code = code.join(Compiler.push_self());
-			else if (string.equals("true"))  code = code.join(Compiler.push_true());
-			else if (string.equals("false")) code = code.join(Compiler.push_false());
+			if (string.equals("nil"))  asm.push_nil();
+			else if (string.equals("self")) asm.push_self();
+			else if (string.equals("true"))  asm.push_true();
+			else if (string.equals("false")) asm.push_false();
 		}
-		return code;
+		return null;
 	}
 
 	@Override
-	public Code visitArray(@NotNull SmalltalkParser.ArrayContext ctx) {
+	public Void visitArray(@NotNull SmalltalkParser.ArrayContext ctx) {
 //		System.out.println("visitArray");
-		Code code = visitChildren(ctx);
-		code.join(Compiler.push_array(ctx.messageExpression().size()));
-		return code;
+		visitChildren(ctx);
+		asm.push_array(ctx.messageExpression().size());
+		return null;
 	}
 
 	@Override
-	public Code visitId(@NotNull SmalltalkParser.IdContext ctx) {
+	public Void visitId(@NotNull SmalltalkParser.IdContext ctx) {
 //		System.out.println("visitId");
-		Code code = new Code();
-		code.join(push(ctx.getText()));
-		return code;
+		ctx.sym = currentScope.resolve(ctx.getText());
+		push(ctx.sym, ctx.getText());
+		return null;
+	}
+
+	private void defineLocals(SmalltalkParser.LocalVarsContext localVars) {
+		if ( localVars!=null ) {
+			compiler.defineLocals(currentScope, DefineSymbols.getTextValues(localVars.ID()), errors);
+		}
+	}
+
+	/** Check that the left-hand side of an assignment is a variable */
+	public VariableSymbol checkIDExists(Token ID) {
+		Symbol sym = currentScope.resolve(ID.getText());
+		if ( sym==null ) {
+			errors.add("unknown variable "+ID.getText()+" in "+currentScope.toQualifierString(">>"));
+			return null;
+		}
+		if ( !(sym instanceof VariableSymbol) ) {
+			errors.add("symbol "+ID.getText()+
+				  " is not a variable/argument in "+
+				  currentScope.toQualifierString(">>"));
+			return null;
+		}
+		return (VariableSymbol)sym;
 	}
 
 
@@ -0,0 +1,148 @@
+package smalltalk.compiler;
+
+import org.antlr.symtab.MethodSymbol;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.misc.Interval;
+import smalltalk.vm.Image;
+import smalltalk.vm.primitive.STCompiledBlock;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/** A persistent, on-disk cache of compiled classes for incremental
+ *  compilation. Attach one to {@link Compiler#cache}.
+ *
+ *  A class' code depends on its own source, where that source sits in the
+ *  file (dbg instructions and {@link STCompiledBlock#line}), whether dbg
+ *  instructions are generated, and the fields it inherits. So its
+ *  {@link STClass#fingerprint} hashes all of that plus the fingerprint of
+ *  its superclass. Editing a class therefore changes the fingerprint of
+ *  it and all of its subclasses but no other class. The compiler still
+ *  parses everything and defines all symbols but skips code generation
+ *  for classes whose fingerprint is in the cache.
+ *
+ *  Each entry is a file named fingerprint.stc holding the class' methods
+ *  in {@link Image} format. Entries are written to a temp file and renamed
+ *  so concurrent compiles sharing a directory never see partial entries.
+ */
+public class CompileCache {
+	public static final int MAGIC = 0x53544343; // "STCC"
+
+	public final File dir;
+
+	protected int hits;
+	protected int misses;
+
+	public CompileCache(File dir) {
+		this.dir = dir;
+		dir.mkdirs();
+	}
+
+	public static String fingerprint(ParserRuleContext def, String fileName, boolean genDbg,
+									 String superFingerprint)
+	{
+		String text = def.start.getInputStream().getText(Interval.of(def.start.getStartIndex(),
+																	  def.stop.getStopIndex()));
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-256");
+			String header = Image.VERSION+"\n"+genDbg+"\n"+fileName+"\n"+
+				def.start.getLine()+":"+def.start.getCharPositionInLine()+"\n"+
+				superFingerprint+"\n";
+			md.update(header.getBytes(StandardCharsets.UTF_8));
+			md.update(text.getBytes(StandardCharsets.UTF_8));
+			StringBuilder buf = new StringBuilder();
+			for (byte b : md.digest()) buf.append(String.format("%02x", b));
+			return buf.toString();
+		}
+		catch (NoSuchAlgorithmException nsae) { // every JVM has SHA-256
+			throw new RuntimeException(nsae);
+		}
+	}
+
+	/** Set compiledBlock of all methods in cl from the cache and return
+	 *  true, or return false if cl isn't in the cache.
+	 */
+	public boolean load(STClass cl) {
+		File f = getFile(cl);
+		if ( cl.fingerprint==null || !f.exists() ) {
+			misses++;
+			return false;
+		}
+		Map<String,STCompiledBlock> methods = new HashMap<>();
+		try {
+			ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(f.toPath()));
+			if ( in.getInt()!=MAGIC || in.getInt()!=Image.VERSION ) {
+				misses++;
+				return false;
+			}
+			int n = in.getInt();
+			for (int i = 0; i < n; i++) {
+				String selector = Image.readString(in);
+				methods.put(selector, Image.readMethod(in, cl.getName()));
+			}
+		}
+		catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+			misses++; // unreadable or truncated; just recompile
+			return false;
+		}
+		if ( methods.size()!=cl.getDefinedMethods().size() ) {
+			misses++;
+			return false;
+		}
+		for (MethodSymbol m : cl.getDefinedMethods()) {
+			if ( !methods.containsKey(m.getName()) ) {
+				misses++;
+				return false;
+			}
+		}
+		for (MethodSymbol m : cl.getDefinedMethods()) {
+			((STMethod)m).compiledBlock = methods.get(m.getName());
+		}
+		hits++;
+		return true;
+	}
+
+	/** Save the compiled methods of cl under its fingerprint */
+	public void store(STClass cl) {
+		if ( cl.fingerprint==null ) return;
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(Image.VERSION);
+			out.writeInt(cl.getDefinedMethods().size());
+			for (MethodSymbol m : cl.getDefinedMethods()) {
+				Image.writeString(out, m.getName());
+				Image.writeMethod(out, ((STMethod)m).getCompiledBlock());
+			}
+			File tmp = File.createTempFile(cl.fingerprint, ".tmp", dir);
+			Files.write(tmp.toPath(), bytes.toByteArray());
+			Files.move(tmp.toPath(), getFile(cl).toPath(),
+					   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException ioe) {
+			throw new RuntimeException("can't write compile cache entry for "+cl.getName()+" in "+dir, ioe);
+		}
+	}
+
+	public File getFile(STClass cl) {
+		return new File(dir, cl.fingerprint+".stc");
+	}
+
+	/** How many classes were loaded from the cache */
+	public int getHits() { return hits; }
+
+	/** How many classes had to be compiled */
+	public int getMisses() { return misses; }
+}
@@ -1,13 +1,25 @@
 package smalltalk.compiler;
 
+import org.antlr.symtab.MethodSymbol;
 import org.antlr.symtab.Scope;
 import org.antlr.v4.runtime.*;
-import org.antlr.v4.runtime.tree.ParseTreeWalker;
-import smalltalk.misc.Utils;
-import smalltalk.vm.Bytecode;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import smalltalk.events.CompilePhaseEvent;
+import smalltalk.vm.exceptions.CompileError;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 public class Compiler {
       protected final STSymbolTable symtab;
@@ -18,7 +30,39 @@ public class Compiler {
       protected String fileName;
       public boolean genDbg; // generate dbg file,line instructions
 
-      protected ParseTreeWalker walker;
+      /**
+       * Where to parse files and generate code for classes in parallel;
+       * null means do everything on the calling thread.
+       */
+      public ForkJoinPool pool = ForkJoinPool.commonPool();
+
+      /**
+       * Where to find and save the code of unchanged classes; null means
+       * always compile everything.
+       */
+      public CompileCache cache;
+
+      /**
+       * Parse with fast SLL prediction first, falling back on full LL only
+       * if that fails; see {@link #parse(SmalltalkParser, Function)}. The trees are
+       * the same either way.
+       */
+      public boolean sllFirst = true;
+
+      /**
+       * Drop references to parse trees and tokens once code is generated
+       * so that they don't live as long as the symbol table; see
+       * {@link #releaseTrees}. Tools that walk the trees after compiling
+       * can turn this off.
+       */
+      public boolean releaseTrees = true;
+
+      /**
+       * Define classes and method signatures now but parse and generate
+       * the code of a class' methods only when the VM first looks them
+       * up; see {@link #deferCodeGen}. Main is always compiled right away.
+       */
+      public boolean lazy;
 
       public Compiler() {
             symtab = new STSymbolTable();
@@ -30,68 +74,259 @@ public class Compiler {
             fileName = "<string>";
       }
 
+      /**
+       * Parse, define, resolve, and generate code for input. Each phase is
+       * recorded as a {@link CompilePhaseEvent} when JFR is recording.
+       */
       public STSymbolTable compile(ANTLRInputStream input) {
+            return compile(Collections.singletonList(input));
+      }
+
+      /**
+       * Compile inputs together so that they can refer to each other's
+       * classes. Files are parsed in parallel on {@link #pool}. Then
+       * {@link #defineSignatures} defines classes, fields, methods, and
+       * arguments file by file, in order, so classes land in the symbol
+       * table in the same order as a sequential compile. Finally, each
+       * class and each main gets its own {@link CodeGenerator} on the
+       * pool, which defines locals and blocks, resolves names, and emits
+       * code in a single walk. Generators share only the symbols outside
+       * method bodies, which are read-only by then, and each writes only
+       * to its own class, so the bytecode is identical to a sequential
+       * compile. Unless {@link #releaseTrees} is off, the symbols then
+       * let go of the parse trees.
+       * <p>
+       * Each phase is recorded per file as a {@link CompilePhaseEvent}.
+       * The CodeGenerator events of files compiled together all span the
+       * whole parallel phase.
+       */
+      public STSymbolTable compile(List<ANTLRInputStream> inputs) {
+            int n = inputs.size();
+            String[] fileNames = new String[n];
+            for (int i = 0; i < n; i++) {
+                  fileNames[i] = fileName;
+                  String name = inputs.get(i).name;
+                  if ( null != name ) {
+                        fileNames[i] = name.substring(name.lastIndexOf('/')+1);
+                  }
+            }
             // parse class(es)
-            fileTree = parseClasses(input);
-            if(null != input.name){
-                  fileName = input.name;
-                  fileName = fileName.substring(fileName.lastIndexOf('/')+1);
-            }
-//        System.out.println(fileName);
-            // define symbols
-            defSymbols(fileTree);
-            // resolve symbols
-            resolveSymbols(fileTree);
-            // gen code
-            CodeGenerator generator = new CodeGenerator(this);
-            generator.visitFile(fileTree);
+            List<Callable<SmalltalkParser.FileContext>> parses = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                  final int f = i;
+                  parses.add(() -> {
+                        CompilePhaseEvent event = CompilePhaseEvent.start("parseClasses", fileNames[f]);
+                        SmalltalkParser.FileContext tree = n==1 ? parseClasses(inputs.get(f)) : parse(inputs.get(f));
+                        event.finish(tree.classDef().size());
+                        return tree;
+                  });
+            }
+            List<SmalltalkParser.FileContext> trees = invokeAll(parses);
+            fileTree = trees.get(n-1);
+            // define classes, fields, methods, and args
+            for (int i = 0; i < n; i++) {
+                  fileName = fileNames[i];
+                  CompilePhaseEvent event = CompilePhaseEvent.start("defineSignatures", fileName);
+                  defineSignatures(trees.get(i));
+                  event.finish(trees.get(i).classDef().size());
+            }
+            // fingerprint classes for the cache
+            Map<STClass,ParserRuleContext> defs = new HashMap<>();
+            Map<STClass,String> files = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                  SmalltalkParser.FileContext tree = trees.get(i);
+                  for (SmalltalkParser.ClassDefContext classDef : tree.classDef()) {
+                        if ( classDef.scope==null ) continue;
+                        defs.put(classDef.scope, classDef);
+                        files.put(classDef.scope, fileNames[i]);
+                  }
+                  if ( tree.main().classScope!=null ) {
+                        defs.put(tree.main().classScope, tree.main());
+                        files.put(tree.main().classScope, fileNames[i]);
+                  }
+            }
+            for (STClass cl : defs.keySet()) {
+                  fingerprint(cl, defs, files);
+            }
+            // gen code for classes not in the cache
+            List<CompilePhaseEvent> events = new ArrayList<>();
+            List<CodeGenerator> generators = new ArrayList<>();
+            List<Callable<Void>> tasks = new ArrayList<>();
+            List<STClass> compiled = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                  events.add(CompilePhaseEvent.start("CodeGenerator", fileNames[i]));
+                  char[] source = lazy ? getText(inputs.get(i)) : null;
+                  SmalltalkParser.FileContext tree = trees.get(i);
+                  SmalltalkParser.MainContext main = tree.main();
+                  if ( !main.getText().isEmpty() && !loadFromCache(main.classScope, compiled) ) {
+                        CodeGenerator gen = new CodeGenerator(this, fileNames[i]);
+                        generators.add(gen);
+                        tasks.add(() -> gen.visit(main));
+                  }
+                  for (SmalltalkParser.ClassDefContext classDef : tree.classDef()) {
+                        if ( lazy && classDef.scope!=null ) {
+                              if ( cache==null || !cache.load(classDef.scope) ) {
+                                    deferCodeGen(classDef, fileNames[i], source);
+                              }
+                        }
+                        else if ( !loadFromCache(classDef.scope, compiled) ) {
+                              CodeGenerator gen = new CodeGenerator(this, fileNames[i]);
+                              generators.add(gen);
+                              tasks.add(() -> gen.visit(classDef));
+                        }
+                  }
+            }
+            invokeAll(tasks);
+            for (CodeGenerator gen : generators) {
+                  errors.addAll(gen.errors);
+            }
+            if ( cache!=null && errors.isEmpty() ) {
+                  for (STClass cl : compiled) cache.store(cl);
+            }
+            for (int i = 0; i < n; i++) {
+                  events.get(i).finish(trees.get(i).classDef().size());
+            }
+            if ( releaseTrees ) releaseTrees(defs.keySet());
 
             return symtab;
       }
 
-      // Convenience methods for code gen
-      // these are what I coded imitating ParrT's except nil char int pop
-      public static Code push_nil() 				{ return Code.of(Bytecode.NIL); }
-      public static Code push_self() 				{ return Code.of(Bytecode.SELF);}
-      public static Code push_true()              { return Code.of(Bytecode.TRUE);}
-      public static Code push_false()             { return Code.of(Bytecode.FALSE);}
-
-      public static Code push_char(int c)         { return Code.of(Bytecode.PUSH_CHAR).join(Utils.shortToBytes(c));}
-      public static Code push_int(int v) 			{ return Code.of(Bytecode.PUSH_INT).join(Utils.intToBytes(v)); }
-      public static Code push_float(float v)      { return Code.of(Bytecode.PUSH_FLOAT).join(Utils.floatToBytes(v));}
-      public static Code push_field(int v)      { return Code.of(Bytecode.PUSH_FIELD).join(Utils.shortToBytes(v));}
-      public static Code push_local(int v1, int v2){
-            return Code.of(Bytecode.PUSH_LOCAL).join(Utils.shortToBytes(v1).join(Utils.shortToBytes(v2)));
-      }
-      public static Code push_literal(int v){
-            return Code.of(Bytecode.PUSH_LITERAL).join(Utils.toLiteral(v));
+      /**
+       * Arrange for each method of classDef to be parsed again, on its own,
+       * and have its code generated when {@link STMethod#getCompiledBlock}
+       * first asks for it. Until then, a method costs only its symbols
+       * plus a share of the file's text, not a parse tree or bytecode.
+       * Errors in a body, such as assigning to an unknown variable,
+       * surface when its code is generated rather than at compile time,
+       * as a {@link CompileError} on every send of the method.
+       */
+      protected void deferCodeGen(SmalltalkParser.ClassDefContext classDef, String file, char[] source) {
+            List<SmalltalkParser.MethodContext> methods = new ArrayList<>(classDef.method());
+            for (SmalltalkParser.ClassMethodContext classMethod : classDef.classMethod()) {
+                  methods.add(classMethod.method());
+            }
+            for (SmalltalkParser.MethodContext methodNode : methods) {
+                  STMethod m = methodNode.scope;
+                  if ( m==null ) continue; // redefinition
+                  Token start = methodNode.getStart();
+                  int index = start.getStartIndex();
+                  int line = start.getLine();
+                  int charPos = start.getCharPositionInLine();
+                  m.setCodeGen(() -> {
+                        SmalltalkParser.MethodContext tree = parseMethod(source, index, line, charPos);
+                        tree.scope = m;
+                        m.setDefNode(tree);
+                        CodeGenerator gen = new CodeGenerator(this, file);
+                        gen.visit(tree);
+                        if ( releaseTrees ) releaseTrees(m);
+                        if ( !gen.errors.isEmpty() ) {
+                              throw new CompileError("compile errors: "+gen.errors.toString(), "");
+                        }
+                  });
+            }
       }
-      public static Code push_global(int v){
-            return Code.of(Bytecode.PUSH_GLOBAL).join(Utils.toLiteral(v));
+
+      /**
+       * Parse the method starting at index of source, which is at line and
+       * charPos, so that tokens have the same positions as in the file.
+       */
+      protected SmalltalkParser.MethodContext parseMethod(char[] source, int index, int line, int charPos) {
+            ANTLRInputStream input = new ANTLRInputStream(source, source.length);
+            input.seek(index);
+            Lexer l = new SmalltalkLexer(input);
+            l.setLine(line);
+            l.setCharPositionInLine(charPos);
+            return parse(new SmalltalkParser(new CommonTokenStream(l)), SmalltalkParser::method);
       }
-      public static Code push_array(int v){
-            return Code.of(Bytecode.PUSH_ARRAY).join(Utils.shortToBytes(v));
+
+      protected static char[] getText(ANTLRInputStream input) {
+            return input.getText(Interval.of(0, input.size()-1)).toCharArray();
       }
-      public static Code store_field(int v){
-            return Code.of(Bytecode.STORE_FIELD).join(Utils.shortToBytes(v));
+
+      /**
+       * Unlink the methods and blocks of classes from their parse trees,
+       * and forget this compiler's tree, parser, and tokens. Otherwise,
+       * {@link STBlock#getDefNode()} keeps every tree, and through it every
+       * token, reachable from the symbol table for as long as a VM runs.
+       * The runtime needs only what's in each {@link STBlock#compiledBlock},
+       * which already has its line number.
+       */
+      protected void releaseTrees(Collection<STClass> classes) {
+            for (STClass cl : classes) {
+                  for (MethodSymbol m : cl.getDefinedMethods()) {
+                        releaseTrees((STMethod)m);
+                  }
+            }
+            fileTree = null;
+            tokens = null;
+            parser = null;
       }
-      public static Code store_local(int v1, int v2){
-            return Code.of(Bytecode.STORE_LOCAL).join(Utils.shortToBytes(v1)).join(Utils.shortToBytes(v2));
+
+      protected void releaseTrees(STMethod method) {
+            method.setDefNode(null);
+            for (Scope blk : method.getAllNestedScopes()) {
+                  ((STBlock)blk).setDefNode(null);
+            }
       }
-      public static Code pop() 					{ return Code.of(Bytecode.POP);}
 
-      public static Code send(int s, int i){
-            return Code.of(Bytecode.SEND).join(Utils.shortToBytes(s)).join(Utils.toLiteral(i));
+      /**
+       * Compute the {@link STClass#fingerprint} of cl, and its superclasses
+       * first, if defined in this compile. A class whose superclass has
+       * no fingerprint gets none and is never cached.
+       */
+      protected String fingerprint(STClass cl, Map<STClass,ParserRuleContext> defs, Map<STClass,String> files) {
+            if ( cl.fingerprint!=null || !defs.containsKey(cl) ) return cl.fingerprint;
+            String superFingerprint = "";
+            Scope superClass = cl.getSuperClassScope();
+            if ( superClass instanceof STClass ) {
+                  superFingerprint = fingerprint((STClass)superClass, defs, files);
+                  if ( superFingerprint==null ) return null;
+            }
+            cl.fingerprint = CompileCache.fingerprint(defs.get(cl), files.get(cl), genDbg, superFingerprint);
+            return cl.fingerprint;
       }
-      public static Code send_super(int s, int i){
-            return Code.of(Bytecode.SEND_SUPER).join(Utils.shortToBytes(s)).join(Utils.toLiteral(i));
+
+      /**
+       * Return true if cl's code came from the cache. Otherwise, add cl
+       * to the list of classes to store once compiled.
+       */
+      protected boolean loadFromCache(STClass cl, List<STClass> compiled) {
+            if ( cache==null || cl==null ) return false;
+            if ( cache.load(cl) ) return true;
+            compiled.add(cl);
+            return false;
       }
-      public static Code block(short v)           { return Code.of(Bytecode.BLOCK).join(Utils.shortToBytes(v));}
-      public static Code block_return()           { return Code.of(Bytecode.BLOCK_RETURN);}
-      public static Code method_return() 			{ return Code.of(Bytecode.RETURN);}
 
-      public static Code dbg(int literalIndex, int line, int charPos) {
-            return Code.of(Bytecode.DBG).join(Utils.toLiteral(literalIndex).join(Utils.intToBytes(Bytecode.combineLineCharPos(line,charPos))));
+      /**
+       * Run tasks on {@link #pool}, or on this thread if there's no pool or
+       * only one task, and return their results in order.
+       */
+      protected <T> List<T> invokeAll(List<Callable<T>> tasks) {
+            List<T> results = new ArrayList<>();
+            try {
+                  if ( pool==null || tasks.size()<2 ) {
+                        for (Callable<T> task : tasks) results.add(task.call());
+                        return results;
+                  }
+                  for (Future<T> f : pool.invokeAll(tasks)) results.add(f.get());
+                  return results;
+            }
+            catch (ExecutionException ee) {
+                  Throwable cause = ee.getCause();
+                  if ( cause instanceof RuntimeException ) throw (RuntimeException)cause;
+                  if ( cause instanceof Error ) throw (Error)cause;
+                  throw new RuntimeException(cause);
+            }
+            catch (InterruptedException ie) {
+                  Thread.currentThread().interrupt();
+                  throw new RuntimeException("compilation interrupted", ie);
+            }
+            catch (RuntimeException re) {
+                  throw re;
+            }
+            catch (Exception e) { // from a Callable run on this thread
+                  throw new RuntimeException(e);
+            }
       }
 
       // Error support
@@ -118,25 +353,31 @@ public class Compiler {
       }
 
       public void defineArguments(STBlock stBlock, List<String> args) {
+            defineArguments(stBlock, args, errors);
+      }
+
+      /** Define args, adding any errors to errors rather than {@link #errors} */
+      public void defineArguments(STBlock stBlock, List<String> args, List<String> errors) {
             if( null != args ){
                   for (String argStr: args){
                         try{
                               stBlock.define(new STArg(argStr));
                         }catch (IllegalArgumentException e){
-                              error("redefinition of "+argStr+" in "+stBlock.toQualifierString(">>"));
+                              errors.add("redefinition of "+argStr+" in "+stBlock.toQualifierString(">>"));
                         }
 
                   }
             }
       }
 
-      public void defineLocals(Scope currentScope, List<String> vars) {
+      /** Define vars, adding any errors to errors rather than {@link #errors} */
+      public void defineLocals(Scope currentScope, List<String> vars, List<String> errors) {
             if( null != vars ){
                   for(String varStr : vars){
                         try {
                               currentScope.define(new STVariable(varStr));
                         }catch (IllegalArgumentException e){
-                              error("redefinition of "+varStr+" in "+currentScope.toQualifierString(">>"));
+                              errors.add("redefinition of "+varStr+" in "+currentScope.toQualifierString(">>"));
                         }
                   }
             }
@@ -160,22 +401,92 @@ public class Compiler {
       }
 
 
+      /**
+       * Parse input without touching this compiler's parser and token
+       * fields so that files can be parsed concurrently. The parsers share
+       * ANTLR's static DFA cache, which is thread safe.
+       */
+      protected SmalltalkParser.FileContext parse(ANTLRInputStream input) {
+            SmalltalkParser p = new SmalltalkParser(new CommonTokenStream(new SmalltalkLexer(input)));
+            return parse(p);
+      }
+
       public SmalltalkParser.FileContext parseClasses(ANTLRInputStream antlrInputStream) {
-            ParserRuleContext ruleContext;
             Lexer l = new SmalltalkLexer(antlrInputStream);
             tokens = new CommonTokenStream(l);
             parser = new SmalltalkParser(tokens);
-            fileTree = parser.file();
+            fileTree = parse(parser);
             return fileTree;
       }
 
-      public void defSymbols(ParserRuleContext tree) {
-            walker = new ParseTreeWalker();
-            walker.walk(new DefineSymbols(this),tree);
+      protected SmalltalkParser.FileContext parse(SmalltalkParser p) {
+            return parse(p, SmalltalkParser::file);
+      }
+
+      /**
+       * Parse a rule with p. If {@link #sllFirst}, try SLL prediction,
+       * which needs no full-context lookahead, bailing out at the first
+       * error. SLL fails only on syntax errors or on input that really
+       * needs full LL, so then rewind and parse again with full LL, which
+       * reports syntax errors as usual.
+       */
+      protected <T extends ParserRuleContext> T parse(SmalltalkParser p, Function<SmalltalkParser,T> rule) {
+            if ( !sllFirst ) return rule.apply(p);
+            p.getInterpreter().setPredictionMode(PredictionMode.SLL);
+            p.removeErrorListeners();
+            p.setErrorHandler(new BailErrorStrategy());
+            try {
+                  return rule.apply(p);
+            }
+            catch (ParseCancellationException pce) {
+                  p.addErrorListener(ConsoleErrorListener.INSTANCE);
+                  p.setErrorHandler(new DefaultErrorStrategy());
+                  p.getInterpreter().setPredictionMode(PredictionMode.LL);
+                  p.reset(); // rewinds the tokens
+                  return rule.apply(p);
+            }
       }
 
-      public void resolveSymbols(ParserRuleContext tree) {
-            walker = new ParseTreeWalker();
-            walker.walk(new ResolveSymbols(this),tree);
+      /**
+       * Define the classes, fields, methods, and method arguments in tree,
+       * i.e., everything but method bodies, without walking into method
+       * bodies. Reuses the {@link DefineSymbols} actions.
+       */
+      public void defineSignatures(SmalltalkParser.FileContext tree) {
+            DefineSymbols def = new DefineSymbols(this);
+            for (SmalltalkParser.ClassDefContext classDef : tree.classDef()) {
+                  def.enterClassDef(classDef);
+                  if ( classDef.scope==null ) continue; // redefinition
+                  for (SmalltalkParser.ClassMethodContext classMethod : classDef.classMethod()) {
+                        defineSignature(def, classMethod.method());
+                        def.exitClassMethod(classMethod);
+                  }
+                  for (SmalltalkParser.MethodContext method : classDef.method()) {
+                        defineSignature(def, method);
+                  }
+                  def.exitClassDef(classDef);
+            }
+            def.enterMain(tree.main());
+            def.exitMain(tree.main());
+      }
+
+      protected void defineSignature(DefineSymbols def, SmalltalkParser.MethodContext method) {
+            if ( method instanceof SmalltalkParser.NamedMethodContext ) {
+                  def.enterNamedMethod((SmalltalkParser.NamedMethodContext)method);
+            }
+            else if ( method instanceof SmalltalkParser.OperatorMethodContext ) {
+                  def.enterOperatorMethod((SmalltalkParser.OperatorMethodContext)method);
+            }
+            else {
+                  def.enterKeywordMethod((SmalltalkParser.KeywordMethodContext)method);
+            }
+            SmalltalkParser.MethodBlockContext block = method.getRuleContext(SmalltalkParser.MethodBlockContext.class, 0);
+            if ( block instanceof SmalltalkParser.SmalltalkMethodBlockContext ) {
+                  def.enterSmalltalkMethodBlock((SmalltalkParser.SmalltalkMethodBlockContext)block);
+                  def.exitSmalltalkMethodBlock((SmalltalkParser.SmalltalkMethodBlockContext)block);
+            }
+            else {
+                  def.enterPrimitiveMethodBlock((SmalltalkParser.PrimitiveMethodBlockContext)block);
+            }
       }
 }
\ No newline at end of file
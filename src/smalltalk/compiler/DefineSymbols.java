@@ -39,7 +39,7 @@ public class DefineSymbols extends SmalltalkBaseListener {
 			}
 //			System.out.println("\tinstance vars: "+instanceVars);
 		}
-		if ( currentScope.getSymbol(className)!=null || className.equals("MainClass") ) {
+		if ( currentScope.resolve(className)!=null || className.equals("MainClass") ) {
 			compiler.error("redefinition of "+className);
 			return;
 		}
@@ -150,40 +150,6 @@ public class DefineSymbols extends SmalltalkBaseListener {
 		}
 	}
 
-	@Override
-	public void enterFullBody(@NotNull SmalltalkParser.FullBodyContext ctx) {
-		if ( ctx.localVars()!=null ) {
-			List<String> vars = getTextValues(ctx.localVars().ID());
-			compiler.defineLocals(currentScope, vars);
-		}
-	}
-
-	@Override
-	public void enterEmptyBody(@NotNull SmalltalkParser.EmptyBodyContext ctx) {
-		if ( ctx.localVars()!=null ) {
-			List<String> vars = getTextValues(ctx.localVars().ID());
-			compiler.defineLocals(currentScope, vars);
-		}
-	}
-
-	@Override
-	public void enterBlock(@NotNull SmalltalkParser.BlockContext ctx) {
-		List<String> args = Collections.emptyList();
-		if ( ctx.blockArgs()!=null && ctx.blockArgs().ID()!=null ) {
-			args = getTextValues(ctx.blockArgs().ID());
-		}
-		STBlock blk = compiler.createBlock(currentMethod, ctx);
-		currentScope.define(blk); // must occur before defining variables
-		compiler.defineArguments(blk, args);
-		ctx.scope = blk;
-		pushScope(blk);
-	}
-
-	@Override
-	public void exitBlock(@NotNull SmalltalkParser.BlockContext ctx) {
-		popScope();
-	}
-
 	public static List<String> getTextValues(List<TerminalNode> nodes) {
 		return Utils.map(nodes, TerminalNode::getText);
 	}
@@ -1,7 +1,6 @@
 package smalltalk.compiler;
 
 import org.antlr.symtab.MethodSymbol;
-import org.antlr.symtab.Scope;
 import org.antlr.v4.runtime.ParserRuleContext;
 import smalltalk.vm.primitive.STCompiledBlock;
 import smalltalk.vm.primitive.STMetaClassObject;
@@ -43,6 +42,12 @@ public class STBlock extends MethodSymbol {
 
 	public int numNestedBlocks;
 
+	/** How many blocks enclose this one within its method; 0 for methods.
+	 *  A variable defined in scope s is depth - s.depth scopes out, which
+	 *  is the first operand of PUSH_LOCAL and STORE_LOCAL.
+	 */
+	public int depth;
+
 	public STCompiledBlock compiledBlock;
 
 	/** Used by subclass STMethod */
@@ -79,21 +84,4 @@ public class STBlock extends MethodSymbol {
 	public int getLocalIndex(String name) {
 		return this.resolve(name).getInsertionOrderNumber();
 	}
-
-	/** Look for name in current block; keep looking upwards in
-	 *  enclosingScope until found; return how many scopes we had to
-	 *  jump to find name. 0 indicates same scope.
-	 */
-	public int getRelativeScopeCount(String name) {
-		int relativeNum = 0;
-		Scope scope = this;
-		while (!scope.getName().equals(name)){
-			scope = scope.getEnclosingScope();
-			if(scope == null){
-				return  -1;
-			}
-			relativeNum++;
-		}
-		return relativeNum;
-	}
 }
@@ -2,10 +2,18 @@ package smalltalk.compiler;
 
 import org.antlr.symtab.ClassSymbol;
 import org.antlr.symtab.Symbol;
+import smalltalk.vm.primitive.ClassLayout;
 
 public class STClass extends ClassSymbol {
 	public final STSymbolTable symtab; // to (lazily) look up superclasses
 
+	/** Hash of this class' source, position, and superclass fingerprint;
+	 *  the key for its code in a {@link CompileCache}. Set by the compiler.
+	 */
+	public String fingerprint;
+
+	protected ClassLayout layout;
+
 	public STClass(String name, String superClassName, STSymbolTable symtab) {
 		super(name);
 		setSuperClass(superClassName);
@@ -17,6 +25,14 @@ public class STClass extends ClassSymbol {
 		return sym!=null && sym.getScope() instanceof STClass ? sym.getInsertionOrderNumber() : -1;
 	}
 
+	/** The layout every VM running this class shares; create it once the
+	 *  class is compiled.
+	 */
+	public synchronized ClassLayout getLayout() {
+		if ( layout==null ) layout = new ClassLayout(this);
+		return layout;
+	}
+
 	public STMethod resolveMethod(String name) {
 		return (STMethod)super.resolveMethod(name);
 	}
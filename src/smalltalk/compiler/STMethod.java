@@ -1,6 +1,8 @@
 package smalltalk.compiler;
 
 import org.antlr.v4.runtime.ParserRuleContext;
+import smalltalk.vm.exceptions.CompileError;
+import smalltalk.vm.primitive.STCompiledBlock;
 
 /** A Smalltalk method symbol. It's like a block with a name.
  *
@@ -16,12 +18,54 @@ public class STMethod extends STBlock {
 	 */
 	public boolean isClassMethod;
 
+	/** Generates {@link #compiledBlock} on first use if the method was
+	 *  compiled lazily; null once generated. See {@link Compiler#lazy}.
+	 */
+	protected Runnable codeGen;
+
+	/** Why {@link #codeGen} failed, if it did; every later request for
+	 *  the code fails the same way
+	 */
+	protected String codeGenError;
+
 	public STMethod(String name, ParserRuleContext tree) {
 		super(name, tree);
 	}
 
 	public boolean isMethod() { return true; }
 
+	public synchronized void setCodeGen(Runnable codeGen) {
+		this.codeGen = codeGen;
+	}
+
+	/** True unless compiled lazily and not yet asked for its code */
+	public synchronized boolean isGenerated() {
+		return codeGen==null;
+	}
+
+	/** Return {@link #compiledBlock}, generating it first if need be.
+	 *  Methods can be shared by VMs on different threads so only one
+	 *  thread generates the code. Throws {@link CompileError}, without a
+	 *  VM stack, if the code has errors.
+	 */
+	public synchronized STCompiledBlock getCompiledBlock() {
+		if ( codeGen!=null ) {
+			Runnable gen = codeGen;
+			codeGen = null; // generate only once even if that fails
+			try {
+				gen.run();
+			}
+			catch (CompileError e) {
+				codeGenError = e.getMessage();
+			}
+			catch (RuntimeException e) { // a compiler bug; don't leave the method missing
+				codeGenError = "code generation failed: "+e;
+			}
+		}
+		if ( codeGenError!=null ) throw new CompileError(codeGenError, "");
+		return compiledBlock;
+	}
+
 	@Override
 	public String toString() {
 		return super.toString();
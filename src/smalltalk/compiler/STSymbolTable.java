@@ -3,15 +3,57 @@ package smalltalk.compiler;
 import org.antlr.symtab.GlobalScope;
 import org.antlr.symtab.Symbol;
 
+import java.util.ArrayList;
+import java.util.List;
 
+/** The global scope holding all classes. A symbol table can be layered
+ *  over a read-only core, such as the compiled image.st from
+ *  {@link smalltalk.Run#sharedCore}, so that many programs can share one
+ *  compiled core. New classes always go into the top layer; symbols
+ *  resolve through the layers, top first. Nothing in the language
+ *  modifies an existing class so the core is never written to.
+ */
 public class STSymbolTable {
 	public final GlobalScope GLOBALS;
 
+	/** The table we're layered on top of or null */
+	public final STSymbolTable core;
+
+	protected boolean frozen;
+
 	public STSymbolTable() {
-		this.GLOBALS = new GlobalScope(null);
+		this(null);
+	}
+
+	public STSymbolTable(STSymbolTable core) {
+		this.core = core;
+		this.GLOBALS = new GlobalScope(core!=null ? core.GLOBALS : null) {
+			@Override
+			public void define(Symbol sym) throws IllegalArgumentException {
+				if ( frozen ) {
+					throw new IllegalStateException("can't define "+sym.getName()+" in a frozen symbol table");
+				}
+				super.define(sym);
+			}
+		};
 	}
 
 	public void defineGlobalSymbol(Symbol s) {
 		this.GLOBALS.define(s);
 	}
+
+	/** Disallow new definitions so this table can be shared as a core */
+	public STSymbolTable freeze() {
+		frozen = true;
+		return this;
+	}
+
+	public boolean isFrozen() { return frozen; }
+
+	/** All global symbols, core layers first, in definition order */
+	public List<Symbol> getGlobalSymbols() {
+		List<Symbol> symbols = core!=null ? core.getGlobalSymbols() : new ArrayList<>();
+		symbols.addAll(GLOBALS.getSymbols());
+		return symbols;
+	}
 }
@@ -0,0 +1,43 @@
+package smalltalk.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** JFR event for one phase of {@link smalltalk.compiler.Compiler#compile}:
+ *  parseClasses, defineSignatures, or CodeGenerator.
+ */
+@Name("smalltalk.CompilePhase")
+@Label("Compile Phase")
+@Category({"Smalltalk", "Compiler"})
+@Description("One phase of compiling a Smalltalk file")
+public class CompilePhaseEvent extends Event {
+	@Label("Phase")
+	public String phase;
+
+	@Label("File")
+	public String fileName;
+
+	@Label("Classes")
+	@Description("Number of classes defined in the file")
+	public int classCount;
+
+	/** Create and begin timing an event for phase of fileName */
+	public static CompilePhaseEvent start(String phase, String fileName) {
+		CompilePhaseEvent e = new CompilePhaseEvent();
+		e.phase = phase;
+		e.fileName = fileName;
+		e.begin();
+		return e;
+	}
+
+	public void finish(int classCount) {
+		end();
+		if ( shouldCommit() ) {
+			this.classCount = classCount;
+			commit();
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package smalltalk.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** JFR event covering {@link smalltalk.vm.VirtualMachine#execMain()} */
+@Name("smalltalk.ExecMain")
+@Label("Exec Main")
+@Category({"Smalltalk", "VM"})
+@Description("Execution of MainClass>>main")
+public class ExecMainEvent extends Event {
+	@Label("VM")
+	public int vm;
+
+	@Label("Sends")
+	public long sends;
+
+	@Label("Contexts Allocated")
+	public long contextsAllocated;
+
+	@Label("Objects Allocated")
+	public long objectsAllocated;
+}
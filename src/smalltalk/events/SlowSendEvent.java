@@ -0,0 +1,40 @@
+package smalltalk.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/** JFR event for a Smalltalk method invocation that took longer than
+ *  the threshold, 1 ms by default. Set the threshold in a .jfc file or
+ *  with, e.g., -XX:StartFlightRecording:settings=my.jfc where my.jfc has
+ *  &lt;setting name="threshold"&gt;200 us&lt;/setting&gt; for smalltalk.SlowSend.
+ *
+ *  See {@link SlowSendListener}.
+ */
+@Name("smalltalk.SlowSend")
+@Label("Slow Send")
+@Category({"Smalltalk", "VM"})
+@Description("A Smalltalk method invocation that exceeded the threshold")
+@Threshold("1 ms")
+@StackTrace(false)
+public class SlowSendEvent extends Event {
+	@Label("VM")
+	public int vm;
+
+	@Label("Method")
+	public String method;
+
+	@Label("Line")
+	public int line;
+
+	@Label("Receiver Class")
+	public String receiverClass;
+
+	@Label("Depth")
+	@Description("Length of the invokingContext chain")
+	public int depth;
+}
@@ -0,0 +1,58 @@
+package smalltalk.events;
+
+import smalltalk.vm.ExecutionListener;
+import smalltalk.vm.primitive.BlockContext;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/** Times each method invocation and emits a {@link SlowSendEvent} for
+ *  those exceeding the event's JFR threshold. The VM only attaches this
+ *  listener if the event is enabled when execution starts (see
+ *  {@link #isEnabled()}), so there is no cost when not recording.
+ *
+ *  Blocks are not timed separately; their time counts toward the method
+ *  that evaluates them.
+ */
+public class SlowSendListener implements ExecutionListener {
+	protected final int vm;
+	protected final Deque<SlowSendEvent> events = new ArrayDeque<>();
+	protected final Deque<BlockContext> contexts = new ArrayDeque<>();
+
+	public SlowSendListener(int vm) {
+		this.vm = vm;
+	}
+
+	public static boolean isEnabled() {
+		return new SlowSendEvent().isEnabled();
+	}
+
+	@Override
+	public void activated(BlockContext ctx) {
+		if ( ctx.isBlock() ) return;
+		if ( ctx.invokingContext==null ) { // new exec(); toss anything left by an exception
+			events.clear();
+			contexts.clear();
+		}
+		SlowSendEvent e = new SlowSendEvent();
+		e.begin();
+		events.push(e);
+		contexts.push(ctx);
+	}
+
+	@Override
+	public void returned(BlockContext ctx) {
+		if ( contexts.peek()!=ctx ) return;
+		contexts.pop();
+		SlowSendEvent e = events.pop();
+		e.end();
+		if ( e.shouldCommit() ) {
+			e.vm = vm;
+			e.method = ctx.compiledBlock.qualifiedName;
+			e.line = ctx.compiledBlock.line;
+			e.receiverClass = ctx.receiver.getSTClass().getName();
+			e.depth = ctx.depth;
+			e.commit();
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package smalltalk.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** JFR event for each VMException raised via
+ *  {@link smalltalk.vm.VirtualMachine#error}. The Java stack trace isn't
+ *  interesting; the Smalltalk stack is in vmStack.
+ */
+@Name("smalltalk.VMError")
+@Label("VM Error")
+@Category({"Smalltalk", "VM"})
+@Description("A VMException raised by the Smalltalk VM")
+@StackTrace(false)
+public class VMErrorEvent extends Event {
+	@Label("VM")
+	public int vm;
+
+	@Label("Type")
+	public String type;
+
+	@Label("Message")
+	public String message;
+
+	@Label("Smalltalk Stack")
+	public String vmStack;
+}
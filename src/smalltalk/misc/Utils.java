@@ -1,7 +1,5 @@
 package smalltalk.misc;
 
-import smalltalk.compiler.Code;
-
 public class Utils {
 	public static void dumpBytes(byte[] data) {
 		for (int i=0; data!=null && i<data.length; i++) {
@@ -11,29 +9,4 @@ public class Utils {
 		}
 		System.out.println();
 	}
-
-	public static Code toLiteral(int v) {
-		return shortToBytes(v);
-	}
-
-	public static Code shortToBytes(int v) {
-		return Code.of(
-			  (byte) ((v >> (8*1))&0xFF),
-			  (byte) ((v >> (8*0))&0xFF)
-		);
-	}
-
-	public static Code intToBytes(int v)	{
-		return Code.of(
-			  (byte) ((v >> (8 * 3)) & 0xFF),
-			  (byte) ((v >> (8 * 2)) & 0xFF),
-			  (byte) ((v >> (8 * 1)) & 0xFF),
-			  (byte) ((v >> (8 * 0)) & 0xFF)
-		);
-	}
-
-	public static Code floatToBytes(float v) {
-		int bits = Float.floatToIntBits(v);
-		return intToBytes(bits);
-	}
 }
@@ -0,0 +1,118 @@
+package smalltalk.vm;
+
+import smalltalk.vm.exceptions.ExecutionLimitExceeded;
+import smalltalk.vm.primitive.STObject;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** One actor of an {@link ActorSystem}: a VM, the object in it that
+ *  handles messages (its behavior), and a mailbox. Smalltalk code sees
+ *  an actor through an {@link smalltalk.vm.primitive.STActor}. Any
+ *  thread can deliver mail; only one thread at a time handles it.
+ */
+public class Actor {
+	/** Messages an actor handles before giving up its pool thread */
+	public static final int BATCH = 16;
+
+	public final ActorSystem system;
+
+	public final VirtualMachine vm;
+
+	/** Class of the behavior; null for the main actor */
+	public final String className;
+
+	/** Created in vm by the first message */
+	protected STObject behavior;
+
+	protected final LinkedBlockingQueue<ActorMessage> mailbox = new LinkedBlockingQueue<>();
+
+	/** True while a drain task for this actor is queued or running */
+	protected final AtomicBoolean scheduled = new AtomicBoolean();
+
+	/** After an error, an actor drops its mail */
+	protected volatile boolean failed;
+
+	public Actor(ActorSystem system, VirtualMachine vm, String className) {
+		this.system = system;
+		this.vm = vm;
+		this.className = className;
+	}
+
+	public boolean isMain() { return this==system.main; }
+
+	public void deliver(ActorMessage m) {
+		if ( system.stopped ) return;
+		if ( isMain() ) {
+			mailbox.add(m); // main takes it with receive
+			return;
+		}
+		system.messageSent();
+		mailbox.add(m);
+		if ( scheduled.compareAndSet(false, true) ) system.schedule(this::drain);
+	}
+
+	/** Handle up to {@link #BATCH} messages then let other actors run */
+	protected void drain() {
+		for (int i = 0; i < BATCH; i++) {
+			ActorMessage m = mailbox.poll();
+			if ( m==null ) break;
+			try {
+				if ( !failed && !system.stopped ) handle(m);
+			}
+			finally {
+				system.messageHandled();
+			}
+		}
+		scheduled.set(false);
+		// mail that arrived after our last poll but before the set above
+		// found scheduled true, so reschedule for it
+		if ( !mailbox.isEmpty() && scheduled.compareAndSet(false, true) ) {
+			system.schedule(this::drain);
+		}
+	}
+
+	protected void handle(ActorMessage m) {
+		try {
+			if ( behavior==null ) {
+				behavior = vm.send(vm.lookupClass(className), "new");
+			}
+			vm.send(behavior, m.selector, m.thaw(vm));
+		}
+		catch (RuntimeException e) { // VMException or a bug in the VM
+			failed = true;
+			system.failed(this, e);
+		}
+	}
+
+	/** Main only: wait for the next message, but not past main's
+	 *  deadline; see {@link ActorSystem}
+	 */
+	public ActorMessage receive() throws InterruptedException {
+		while ( true ) {
+			if ( system.failure instanceof ExecutionLimitExceeded ) { // actors share main's deadline
+				vm.error("ExecutionLimitExceeded", system.failure.getMessage());
+			}
+			if ( system.failure!=null ) {
+				vm.error("ActorFailed", "actor "+system.failed.className+" failed: "+
+						 system.failure.getClass().getSimpleName()+": "+system.failure.getMessage());
+			}
+			ActorMessage m = mailbox.poll();
+			if ( m==null ) {
+				// An actor posts to main before counting its message handled,
+				// so once pending is 0 any mail for main is in the mailbox
+				if ( system.pending.get()==0 && mailbox.isEmpty() ) {
+					vm.error("Deadlock", "main is waiting for a message but no actor has mail");
+				}
+				long nanos = vm.nanosLeft();
+				if ( nanos==Long.MAX_VALUE ) m = mailbox.take();
+				else {
+					m = nanos>0 ? mailbox.poll(nanos, TimeUnit.NANOSECONDS) : null;
+					if ( m==null ) vm.error("ExecutionLimitExceeded", "ran longer than "+vm.maxNanos/1_000_000+"ms");
+				}
+			}
+			if ( m!=ActorMessage.WAKE ) return m;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package smalltalk.vm;
+
+import smalltalk.vm.primitive.STActor;
+import smalltalk.vm.primitive.STArray;
+import smalltalk.vm.primitive.STBoolean;
+import smalltalk.vm.primitive.STCharacter;
+import smalltalk.vm.primitive.STFloat;
+import smalltalk.vm.primitive.STInteger;
+import smalltalk.vm.primitive.STMetaClassObject;
+import smalltalk.vm.primitive.STNil;
+import smalltalk.vm.primitive.STObject;
+import smalltalk.vm.primitive.STString;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/** A message between actors: a selector and arguments frozen into a form
+ *  that belongs to no VM. Freezing deep-copies the arguments out of the
+ *  sender's VM and thawing copies them into the receiver's, so the two
+ *  never share an object.
+ *
+ *  nil, booleans, numbers, characters, and strings freeze to Java values.
+ *  Arrays and plain objects of user classes freeze field by field,
+ *  keeping sharing and cycles. Classes and actors travel by reference.
+ *  Anything else, such as a block, a process or a semaphore, is tied to
+ *  its VM and can't be sent.
+ */
+public class ActorMessage {
+	/** Wakes the main actor to check for failure or deadlock */
+	public static final ActorMessage WAKE = new ActorMessage(null, null);
+
+	public final String selector;
+
+	protected final Object[] args;
+
+	/** An array or plain object, by class name */
+	protected static class Frozen {
+		final String className;
+		final boolean isArray;
+		final Object[] slots;
+
+		Frozen(String className, boolean isArray, int n) {
+			this.className = className;
+			this.isArray = isArray;
+			this.slots = new Object[n];
+		}
+	}
+
+	protected static class ClassRef {
+		final String name;
+
+		ClassRef(String name) { this.name = name; }
+	}
+
+	protected ActorMessage(String selector, Object[] args) {
+		this.selector = selector;
+		this.args = args;
+	}
+
+	public static ActorMessage freeze(VirtualMachine vm, String selector, STObject[] args) {
+		Map<STObject,Object> frozen = new IdentityHashMap<>();
+		Object[] frozenArgs = new Object[args.length];
+		for (int i = 0; i < args.length; i++) {
+			frozenArgs[i] = freeze(vm, args[i], frozen);
+		}
+		return new ActorMessage(selector, frozenArgs);
+	}
+
+	public STObject[] thaw(VirtualMachine vm) {
+		Map<Object,STObject> thawed = new IdentityHashMap<>();
+		STObject[] result = new STObject[args.length];
+		for (int i = 0; i < args.length; i++) {
+			result[i] = thaw(vm, args[i], thawed);
+		}
+		return result;
+	}
+
+	protected static Object freeze(VirtualMachine vm, STObject o, Map<STObject,Object> frozen) {
+		if ( o instanceof STNil ) return null;
+		if ( o instanceof STBoolean ) return ((STBoolean)o).b;
+		if ( o instanceof STInteger ) return ((STInteger)o).v;
+		if ( o instanceof STFloat ) return ((STFloat)o).v;
+		if ( o instanceof STCharacter ) return (char)((STCharacter)o).c;
+		if ( o instanceof STString ) return ((STString)o).s;
+		if ( o instanceof STActor ) return ((STActor)o).actor;
+		if ( o instanceof STMetaClassObject ) return new ClassRef(((STMetaClassObject)o).getName());
+		Object seen = frozen.get(o);
+		if ( seen!=null ) return seen;
+		STObject[] slots;
+		Frozen f;
+		if ( o instanceof STArray ) {
+			slots = ((STArray)o).elements;
+			f = new Frozen("Array", true, slots.length);
+		}
+		else if ( o.getClass()==STObject.class ) {
+			slots = o.fields;
+			f = new Frozen(o.getSTClass().getName(), false, slots.length);
+		}
+		else {
+			vm.error("TypeError", "can't copy "+o.getSTClass().getName()+" to another VM");
+			return null;
+		}
+		frozen.put(o, f);
+		for (int i = 0; i < slots.length; i++) {
+			f.slots[i] = freeze(vm, slots[i], frozen);
+		}
+		return f;
+	}
+
+	protected static STObject thaw(VirtualMachine vm, Object o, Map<Object,STObject> thawed) {
+		if ( o==null ) return vm.nil();
+		if ( o instanceof Boolean ) return vm.newBoolean((Boolean)o);
+		if ( o instanceof Integer ) return vm.newInteger((Integer)o);
+		if ( o instanceof Float ) return vm.newFloat((Float)o);
+		if ( o instanceof Character ) return new STCharacter(vm, (Character)o);
+		if ( o instanceof String ) return vm.newString((String)o);
+		if ( o instanceof Actor ) return new STActor(vm, (Actor)o);
+		if ( o instanceof ClassRef ) return vm.lookupClass(((ClassRef)o).name);
+		STObject seen = thawed.get(o);
+		if ( seen!=null ) return seen;
+		Frozen f = (Frozen)o;
+		STObject result;
+		STObject[] slots;
+		if ( f.isArray ) {
+			STArray a = new STArray(vm, f.slots.length, vm.nil());
+			slots = a.elements;
+			result = a;
+		}
+		else {
+			result = new STObject(vm.lookupClass(f.className));
+			slots = result.fields;
+		}
+		thawed.put(o, result);
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = thaw(vm, f.slots[i], thawed);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,105 @@
+package smalltalk.vm;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Actors for parallelism across cores. Each {@link Actor} is a separate
+ *  {@link VirtualMachine} running the same program, with its own objects,
+ *  and a mailbox. Actors share nothing but compiled code; a message's
+ *  arguments are deep-copied into the receiving VM (see {@link
+ *  ActorMessage}). An actor handles one message at a time, so its VM is
+ *  only ever used by one thread at a time.
+ *
+ *  Actors run on a work-stealing {@link ForkJoinPool}, by default one
+ *  shared by all actor systems with a thread per core. An actor with
+ *  mail is a task on that pool; it handles up to {@link Actor#BATCH}
+ *  messages and then, if it has more, queues itself again so it can't
+ *  hog a thread.
+ *
+ *  The program's main method runs in the main actor, on the caller's
+ *  thread rather than the pool. It waits for messages with Actor
+ *  receive:. If an actor fails, the main actor's next receive: raises
+ *  ActorFailed; if main waits while no actor has mail, receive: raises
+ *  Deadlock. When main returns, the system stops and messages still
+ *  queued are dropped.
+ */
+public class ActorSystem {
+	protected static class DefaultPool {
+		static final ForkJoinPool pool =
+			new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+							 ForkJoinPool.defaultForkJoinWorkerThreadFactory,
+							 null, true); // FIFO: mail is handled in order it became ready
+	}
+
+	public final ForkJoinPool pool;
+
+	/** The actor running the program's main method */
+	public final Actor main;
+
+	/** Messages sent to actors other than main and not yet handled */
+	protected final AtomicInteger pending = new AtomicInteger();
+
+	/** The first error in any actor */
+	protected volatile RuntimeException failure;
+	protected volatile Actor failed;
+
+	protected volatile boolean stopped;
+
+	/** The pool shared by actor systems and parallel Array operations */
+	public static ForkJoinPool defaultPool() {
+		return DefaultPool.pool;
+	}
+
+	public ActorSystem(VirtualMachine mainVM) {
+		this(mainVM, DefaultPool.pool);
+	}
+
+	public ActorSystem(VirtualMachine mainVM, ForkJoinPool pool) {
+		this.pool = pool;
+		this.main = new Actor(this, mainVM, null);
+	}
+
+	/** A new actor, in a new VM, whose behavior is a new instance of
+	 *  className; the instance is created when the actor first runs.
+	 */
+	public Actor spawn(VirtualMachine from, String className) {
+		VirtualMachine vm = from.sibling();
+		Actor actor = new Actor(this, vm, className);
+		vm.actor = actor;
+		return actor;
+	}
+
+	/** Drop all undelivered and future messages */
+	public void stop() {
+		stopped = true;
+	}
+
+	protected void schedule(Runnable drain) {
+		Thread t = Thread.currentThread();
+		if ( t instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread)t).getPool()==pool ) {
+			ForkJoinTask.adapt(drain).fork(); // local queue; idle workers steal from it
+		}
+		else {
+			pool.execute(drain);
+		}
+	}
+
+	protected void messageSent() {
+		pending.incrementAndGet();
+	}
+
+	/** An actor other than main finished with a message */
+	protected void messageHandled() {
+		if ( pending.decrementAndGet()==0 ) main.mailbox.add(ActorMessage.WAKE);
+	}
+
+	protected void failed(Actor actor, RuntimeException e) {
+		if ( failure==null ) {
+			failed = actor;
+			failure = e;
+		}
+		main.mailbox.add(ActorMessage.WAKE);
+	}
+}
@@ -0,0 +1,118 @@
+package smalltalk.vm;
+
+import smalltalk.vm.primitive.BlockContext;
+import smalltalk.vm.primitive.BlockDescriptor;
+import smalltalk.vm.primitive.STCompiledBlock;
+import smalltalk.vm.primitive.STObject;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** A copy of a block and the state it captures, frozen out of one VM so
+ *  that any number of other VMs can each thaw their own copy and
+ *  evaluate it. Only what the block reads is copied: the captured
+ *  variables it uses and, if it uses self or a field, the receiver. See
+ *  {@link ActorMessage} for what can be copied.
+ *
+ *  Because each VM gets a copy, assignments to captured variables or to
+ *  fields of self would be silently lost, as would a ^ return from the
+ *  method. Taking a snapshot of a block that does any of those, itself
+ *  or in a nested block, is an error. Changes made by sending messages
+ *  to captured objects can't be detected; they change the copy.
+ */
+public class BlockSnapshot {
+	protected final STCompiledBlock block;
+
+	/** The block's enclosing contexts, innermost first, ending with the
+	 *  method; their code and the frozen locals the block reads.
+	 */
+	protected final STCompiledBlock[] contexts;
+	protected final Object[][] locals;
+
+	protected final Object receiver;
+
+	public BlockSnapshot(VirtualMachine vm, BlockDescriptor blk, String operation) {
+		block = blk.block;
+		List<BlockContext> chain = new ArrayList<>();
+		for (BlockContext c = blk.enclosingContext; c!=null; c = c.enclosingContext) {
+			chain.add(c);
+			if ( c==c.enclosingMethodContext ) break;
+		}
+		contexts = new STCompiledBlock[chain.size()];
+		boolean[][] reads = new boolean[chain.size()][];
+		for (int i = 0; i < contexts.length; i++) {
+			contexts[i] = chain.get(i).compiledBlock;
+			reads[i] = new boolean[chain.get(i).locals.length];
+		}
+		boolean readsSelf = scan(vm, blk.block, 0, reads, blk.enclosingMethodContext.compiledBlock.blocks, operation);
+
+		Map<STObject,Object> frozen = new IdentityHashMap<>();
+		receiver = readsSelf ? ActorMessage.freeze(vm, blk.receiver, frozen) : null;
+		locals = new Object[contexts.length][];
+		for (int i = 0; i < contexts.length; i++) {
+			locals[i] = new Object[reads[i].length];
+			for (int j = 0; j < reads[i].length; j++) {
+				if ( reads[i][j] ) locals[i][j] = ActorMessage.freeze(vm, chain.get(i).locals[j], frozen);
+			}
+		}
+	}
+
+	/** A descriptor for the block in vm, over new copies of its state */
+	public BlockDescriptor thaw(VirtualMachine vm) {
+		Map<Object,STObject> thawed = new IdentityHashMap<>();
+		STObject self = ActorMessage.thaw(vm, receiver, thawed);
+		BlockContext[] chain = new BlockContext[contexts.length];
+		for (int i = contexts.length-1; i >= 0; i--) { // method first
+			chain[i] = new BlockContext(vm, contexts[i], self);
+			for (int j = 0; j < locals[i].length; j++) {
+				chain[i].locals[j] = ActorMessage.thaw(vm, locals[i][j], thawed);
+			}
+			if ( i < contexts.length-1 ) {
+				chain[i].enclosingContext = chain[i+1];
+				chain[i].enclosingMethodContext = chain[contexts.length-1];
+			}
+		}
+		return new BlockDescriptor(block, chain[0]);
+	}
+
+	/** Record in reads the captured locals that code, nested level deep
+	 *  inside the block, reads; return whether it reads self. Reject
+	 *  code whose effects would be lost on a copy.
+	 */
+	protected static boolean scan(VirtualMachine vm, STCompiledBlock code, int level, boolean[][] reads,
+								  STCompiledBlock[] methodBlocks, String operation)
+	{
+		boolean readsSelf = false;
+		byte[] bytecode = code.bytecode;
+		for (int ip = 0; ip < bytecode.length; ip += Bytecode.sizeOf(bytecode[ip])) {
+			switch ( bytecode[ip] ) {
+				case Bytecode.PUSH_LOCAL :
+					int delta = Bytecode.getShort(bytecode, ip+1);
+					if ( delta > level ) reads[delta-level-1][Bytecode.getShort(bytecode, ip+3)] = true;
+					break;
+				case Bytecode.STORE_LOCAL :
+					if ( Bytecode.getShort(bytecode, ip+1) > level ) {
+						vm.error(operation+" block can't assign to variables outside itself");
+					}
+					break;
+				case Bytecode.STORE_FIELD :
+					vm.error(operation+" block can't assign to fields");
+					break;
+				case Bytecode.RETURN :
+					vm.error(operation+" block can't return from its method with ^");
+					break;
+				case Bytecode.SELF :
+				case Bytecode.PUSH_FIELD :
+					readsSelf = true;
+					break;
+				case Bytecode.BLOCK :
+					STCompiledBlock nested = methodBlocks[Bytecode.getShort(bytecode, ip+1)];
+					readsSelf |= scan(vm, nested, level+1, reads, methodBlocks, operation);
+					break;
+			}
+		}
+		return readsSelf;
+	}
+}
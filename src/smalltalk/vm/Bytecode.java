@@ -29,7 +29,7 @@ public class Bytecode {
 	}
 
 	public static class Instruction {
-		final String name; // E.g., "pop", "new"
+		public final String name; // E.g., "pop", "new"
 		final OperandType[] type = new OperandType[MAX_OPNDS];
 		int n = 0;
 		public Instruction(String name) {
@@ -187,6 +187,14 @@ public class Bytecode {
 		return ip;
 	}
 
+	/** Number of bytes in the instruction with opcode, including the opcode */
+	public static int sizeOf(int opcode) {
+		Instruction I = instructions[opcode];
+		int size = 1;
+		for (int i=0; i<I.n; i++) size += I.type[i].sizeInBytes;
+		return size;
+	}
+
 	public static int getInt(byte[] memory, int index) {
 		int b1 = memory[index++]&0xFF; // high byte
 		int b2 = memory[index++]&0xFF;
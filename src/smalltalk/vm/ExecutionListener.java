@@ -0,0 +1,48 @@
+package smalltalk.vm;
+
+import smalltalk.vm.primitive.BlockContext;
+import smalltalk.vm.primitive.STObject;
+
+/** A hook into the interpreter for tracing, profiling, coverage, etc...
+ *  Attach with {@link VirtualMachine#addListener}.
+ *
+ *  As long as no listener is attached, the VM runs an interpreter loop
+ *  without any hooks so there is no cost to having this mechanism. Once a
+ *  listener is attached, the VM switches to an instrumented loop that
+ *  notifies the listener around every instruction.
+ *
+ *  All methods default to doing nothing so listeners override only the
+ *  events they care about.
+ */
+public interface ExecutionListener {
+	/** The instruction at ip within ctx.compiledBlock is about to execute. */
+	default void instruction(BlockContext ctx, int ip, int opcode) { }
+
+	/** The instruction just finished. ctx is the context that is active
+	 *  afterwards, which is null if the outermost method just returned.
+	 */
+	default void instructionExecuted(BlockContext ctx) { }
+
+	/** A SEND or SEND_SUPER is about to look up selector in receiver's
+	 *  class. Fires for primitive and Smalltalk methods alike.
+	 */
+	default void send(BlockContext ctx, STObject receiver, String selector, int nArgs) { }
+
+	/** ctx just became the active context; it's either a method invoked by
+	 *  a send or a block evaluated via value, ifTrue:, etc...  Use
+	 *  {@link BlockContext#isBlock()} to tell them apart.
+	 */
+	default void activated(BlockContext ctx) { }
+
+	/** ctx finished executing. This fires for normal method and block
+	 *  returns as well as for each context unwound by a ^ inside a block
+	 *  (innermost first).
+	 */
+	default void returned(BlockContext ctx) { }
+
+	/** A Smalltalk object was created. This is called from the
+	 *  {@link STObject} constructor so only the class of o is set up;
+	 *  subclass fields like STInteger.v are not initialized yet.
+	 */
+	default void allocated(STObject o) { }
+}
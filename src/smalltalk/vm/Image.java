@@ -0,0 +1,313 @@
+package smalltalk.vm;
+
+import org.antlr.symtab.ClassSymbol;
+import org.antlr.symtab.FieldSymbol;
+import org.antlr.symtab.MethodSymbol;
+import org.antlr.symtab.Symbol;
+import smalltalk.compiler.STClass;
+import smalltalk.compiler.STMethod;
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.primitive.ClassLayout;
+import smalltalk.vm.primitive.Primitive;
+import smalltalk.vm.primitive.STCompiledBlock;
+import smalltalk.vm.primitive.STMetaClassObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/** A precompiled, binary snapshot of the classes in a symbol table so that
+ *  a {@link VirtualMachine} can start up by reading a file instead of
+ *  parsing and compiling image.st plus the program. Create one with
+ *  {@link #save} or {@link #toBytes} then pass {@link #load} or
+ *  {@link #map} to {@link VirtualMachine#VirtualMachine(Image)}.
+ *
+ *  Loading a class reads only its name, superclass, fields, and the
+ *  selector and offset of each method. A method's compiled blocks are
+ *  decoded from the image the first time the method is looked up;
+ *  see {@link STMetaClassObject#resolveMethod}. VMs started from the same
+ *  Image object share the decoded code. With {@link #map}, the
+ *  image is never copied onto the heap as a whole and VMs in different
+ *  processes share the file's pages in the OS page cache.
+ *
+ *  The format is big endian:
+ *
+ *  <pre>
+ *  image  : MAGIC VERSION nclasses:int class*
+ *  class  : name:str superClass:str nfields:int str* nmethods:int method*
+ *  method : selector:str nbytes:int block nblocks:int block*
+ *  block  : name:str qualifiedName:str nargs:int nlocals:int
+ *           isClassMethod:byte line:int primitive:str
+ *           nliterals:int str* nbytes:int byte*
+ *  str    : nbytes:int utf8-byte*
+ *  </pre>
+ *
+ *  A method's nbytes is the size of the rest of the method so that
+ *  loaders can skip it. A null string, literal table, or bytecode array has length -1.
+ *  Classes appear in definition order so a superclass always precedes
+ *  its subclasses. A method's nested blocks appear in the order of their
+ *  index, which is the operand of the BLOCK instruction.
+ */
+public class Image {
+	public static final int MAGIC = 0x5354494D; // "STIM"
+	public static final int VERSION = 2;
+
+	/** The image bytes, positioned at the start of the image */
+	protected final ByteBuffer buf;
+
+	protected List<ClassLayout> layouts;
+
+	public Image(ByteBuffer buf) {
+		this.buf = buf.duplicate();
+		if ( this.buf.capacity()<8 || this.buf.getInt(0)!=MAGIC ) {
+			throw new IllegalArgumentException("not a Smalltalk image");
+		}
+		int version = this.buf.getInt(4);
+		if ( version!=VERSION ) {
+			throw new IllegalArgumentException("unsupported image version "+version+"; expecting "+VERSION);
+		}
+	}
+
+	public static Image load(String fileName) throws IOException {
+		return new Image(ByteBuffer.wrap(Files.readAllBytes(Paths.get(fileName))));
+	}
+
+	/** Map fileName into memory read-only rather than reading it. The
+	 *  mapping stays valid after the channel is closed.
+	 */
+	public static Image map(String fileName) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			return new Image(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	public static void save(STSymbolTable symtab, String fileName) throws IOException {
+		try (FileOutputStream out = new FileOutputStream(fileName)) {
+			out.write(toBytes(symtab));
+		}
+	}
+
+	public static void save(Map<STClass,List<STMethod>> classes, String fileName) throws IOException {
+		try (FileOutputStream out = new FileOutputStream(fileName)) {
+			out.write(toBytes(classes));
+		}
+	}
+
+	public static byte[] toBytes(STSymbolTable symtab) {
+		Map<STClass,List<STMethod>> classes = new LinkedHashMap<>();
+		for (Symbol s : symtab.getGlobalSymbols()) {
+			if ( s instanceof ClassSymbol ) {
+				List<STMethod> methods = new ArrayList<>();
+				for (MethodSymbol m : ((STClass)s).getDefinedMethods()) methods.add((STMethod)m);
+				classes.put((STClass)s, methods);
+			}
+		}
+		return toBytes(classes);
+	}
+
+	/** An image with just the given classes and, for each, just the given
+	 *  methods; e.g., those a {@link TreeShaker} found reachable. Classes
+	 *  must be in definition order.
+	 */
+	public static byte[] toBytes(Map<STClass,List<STMethod>> classes) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(classes.size());
+			for (Map.Entry<STClass,List<STMethod>> c : classes.entrySet()) {
+				writeClass(out, c.getKey(), c.getValue());
+			}
+		}
+		catch (IOException ioe) { // can't happen with a byte array
+			throw new RuntimeException(ioe);
+		}
+		return bytes.toByteArray();
+	}
+
+	/** Create an {@link STMetaClassObject} for each class in the image
+	 *  and define it in vm's system dictionary. Methods are left in the
+	 *  image until first use. All VMs created from this image share its
+	 *  {@link ClassLayout}s and so decode each method just once.
+	 */
+	public void defineClasses(VirtualMachine vm) {
+		for (ClassLayout layout : getLayouts()) {
+			vm.systemDict.define(layout.name, new STMetaClassObject(vm, layout));
+		}
+	}
+
+	/** The classes in the image, in definition order, read on first use */
+	public synchronized List<ClassLayout> getLayouts() {
+		if ( layouts==null ) layouts = readLayouts();
+		return layouts;
+	}
+
+	protected List<ClassLayout> readLayouts() {
+		List<ClassLayout> layouts = new ArrayList<>();
+		ByteBuffer in = buf.duplicate();
+		in.position(8);
+		int nclasses = in.getInt();
+		for (int i = 0; i < nclasses; i++) {
+			String name = readString(in);
+			String superClassName = readString(in);
+			List<String> fields = new ArrayList<>();
+			int nfields = in.getInt();
+			for (int f = 0; f < nfields; f++) {
+				fields.add(readString(in));
+			}
+			LinkedHashMap<String,Supplier<STCompiledBlock>> loaders = new LinkedHashMap<>();
+			int nmethods = in.getInt();
+			for (int m = 0; m < nmethods; m++) {
+				String selector = readString(in);
+				int nbytes = in.getInt();
+				int offset = in.position();
+				loaders.put(selector, () -> readMethod(offset, name));
+				in.position(in.position() + nbytes);
+			}
+			layouts.add(new ClassLayout(name, superClassName, fields, loaders));
+		}
+		return layouts;
+	}
+
+	/** Decode the method of class className, and its nested blocks, stored at offset */
+	public STCompiledBlock readMethod(int offset, String className) {
+		ByteBuffer in = buf.duplicate();
+		in.position(offset);
+		return readMethod(in, className);
+	}
+
+	/** Write a method and its nested blocks in image format */
+	public static void writeMethod(DataOutputStream out, STCompiledBlock method) throws IOException {
+		writeBlock(out, method);
+		out.writeInt(method.blocks.length);
+		for (STCompiledBlock blk : method.blocks) {
+			writeBlock(out, blk);
+		}
+	}
+
+	public static STCompiledBlock readMethod(ByteBuffer in, String className) {
+		int start = in.position();
+		skipBlock(in);
+		STCompiledBlock[] blocks = new STCompiledBlock[in.getInt()];
+		for (int b = 0; b < blocks.length; b++) {
+			blocks[b] = readBlock(in, className, null);
+		}
+		int end = in.position();
+		in.position(start);
+		STCompiledBlock method = readBlock(in, className, blocks);
+		in.position(end);
+		return method;
+	}
+
+	protected static void writeClass(DataOutputStream out, STClass c, List<STMethod> methods) throws IOException {
+		writeString(out, c.getName());
+		writeString(out, c.getSuperClassName());
+		List<? extends FieldSymbol> fields = c.getFields();
+		out.writeInt(fields.size());
+		for (FieldSymbol f : fields) {
+			writeString(out, f.getName());
+		}
+		out.writeInt(methods.size());
+		for (STMethod m : methods) {
+			STCompiledBlock method = m.getCompiledBlock();
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			writeMethod(new DataOutputStream(bytes), method);
+			writeString(out, m.getName());
+			out.writeInt(bytes.size());
+			bytes.writeTo(out);
+		}
+	}
+
+	protected static void writeBlock(DataOutputStream out, STCompiledBlock blk) throws IOException {
+		writeString(out, blk.name);
+		writeString(out, blk.qualifiedName);
+		out.writeInt(blk.nargs);
+		out.writeInt(blk.nlocals);
+		out.writeByte(blk.isClassMethod ? 1 : 0);
+		out.writeInt(blk.line);
+		writeString(out, blk.isPrimitive() ? blk.primitive.name() : null);
+		if ( blk.literals==null ) out.writeInt(-1);
+		else {
+			out.writeInt(blk.literals.length);
+			for (String s : blk.literals) writeString(out, s);
+		}
+		if ( blk.bytecode==null ) out.writeInt(-1);
+		else {
+			out.writeInt(blk.bytecode.length);
+			out.write(blk.bytecode);
+		}
+	}
+
+	protected static STCompiledBlock readBlock(ByteBuffer in, String className, STCompiledBlock[] blocks) {
+		String name = readString(in);
+		String qualifiedName = readString(in);
+		int nargs = in.getInt();
+		int nlocals = in.getInt();
+		boolean isClassMethod = in.get()!=0;
+		int line = in.getInt();
+		String primitiveName = readString(in);
+		Primitive primitive = primitiveName!=null ? Primitive.valueOf(primitiveName) : null;
+		String[] literals = null;
+		int nliterals = in.getInt();
+		if ( nliterals>=0 ) {
+			literals = new String[nliterals];
+			for (int i = 0; i < nliterals; i++) literals[i] = readString(in);
+		}
+		byte[] bytecode = null;
+		int nbytes = in.getInt();
+		if ( nbytes>=0 ) {
+			bytecode = new byte[nbytes];
+			in.get(bytecode);
+		}
+		return new STCompiledBlock(className, name, qualifiedName, nargs, nlocals, primitive,
+								   isClassMethod, line, literals, bytecode, blocks);
+	}
+
+	/** Move in past a block without decoding it */
+	protected static void skipBlock(ByteBuffer in) {
+		skipString(in); // name
+		skipString(in); // qualifiedName
+		in.position(in.position() + 4 + 4 + 1 + 4); // nargs nlocals isClassMethod line
+		skipString(in); // primitive
+		int nliterals = in.getInt();
+		for (int i = 0; i < nliterals; i++) skipString(in);
+		int nbytes = in.getInt();
+		if ( nbytes>0 ) in.position(in.position() + nbytes);
+	}
+
+	public static void writeString(DataOutputStream out, String s) throws IOException {
+		if ( s==null ) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(utf8.length);
+		out.write(utf8);
+	}
+
+	public static String readString(ByteBuffer in) {
+		int n = in.getInt();
+		if ( n<0 ) return null;
+		byte[] utf8 = new byte[n];
+		in.get(utf8);
+		return new String(utf8, StandardCharsets.UTF_8);
+	}
+
+	protected static void skipString(ByteBuffer in) {
+		int n = in.getInt();
+		if ( n>0 ) in.position(in.position() + n);
+	}
+}
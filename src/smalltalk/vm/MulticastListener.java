@@ -0,0 +1,47 @@
+package smalltalk.vm;
+
+import smalltalk.vm.primitive.BlockContext;
+import smalltalk.vm.primitive.STObject;
+
+import java.util.List;
+
+/** Forwards events to multiple listeners in the order they were added.
+ *  The VM uses one of these only if more than one listener is attached.
+ */
+class MulticastListener implements ExecutionListener {
+	private final ExecutionListener[] listeners;
+
+	MulticastListener(List<ExecutionListener> listeners) {
+		this.listeners = listeners.toArray(new ExecutionListener[listeners.size()]);
+	}
+
+	@Override
+	public void instruction(BlockContext ctx, int ip, int opcode) {
+		for (ExecutionListener l : listeners) l.instruction(ctx, ip, opcode);
+	}
+
+	@Override
+	public void instructionExecuted(BlockContext ctx) {
+		for (ExecutionListener l : listeners) l.instructionExecuted(ctx);
+	}
+
+	@Override
+	public void send(BlockContext ctx, STObject receiver, String selector, int nArgs) {
+		for (ExecutionListener l : listeners) l.send(ctx, receiver, selector, nArgs);
+	}
+
+	@Override
+	public void activated(BlockContext ctx) {
+		for (ExecutionListener l : listeners) l.activated(ctx);
+	}
+
+	@Override
+	public void returned(BlockContext ctx) {
+		for (ExecutionListener l : listeners) l.returned(ctx);
+	}
+
+	@Override
+	public void allocated(STObject o) {
+		for (ExecutionListener l : listeners) l.allocated(o);
+	}
+}
@@ -0,0 +1,180 @@
+package smalltalk.vm;
+
+import smalltalk.vm.primitive.BlockContext;
+import smalltalk.vm.primitive.BlockDescriptor;
+import smalltalk.vm.primitive.Primitive;
+import smalltalk.vm.primitive.STArray;
+import smalltalk.vm.primitive.STObject;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/** Array>>parallelDo:, parallelCollect:, and the chunks behind
+ *  parallelInject:into:. The receiver is cut into chunks, a few per
+ *  pool thread, and each chunk runs in its own sibling VM on
+ *  {@link ActorSystem#defaultPool()}. A chunk's VM gets its own copy of
+ *  its elements and of the block's state (see {@link BlockSnapshot}), so
+ *  chunks never share objects and no locking is needed; results are
+ *  copied back into the caller's VM. The caller's thread waits, helping
+ *  to run chunks. Chunk VMs inherit the caller's limits (see
+ *  {@link VirtualMachine#sibling()}) and the caller waits no longer than
+ *  its own deadline.
+ *
+ *  Copying costs time proportional to what the block captures and to
+ *  the elements and results, so these pay off when the block does a lot
+ *  of work per element.
+ */
+public class ParallelArrays {
+	/** Chunks per pool thread, so uneven chunks still balance */
+	public static final int CHUNKS_PER_THREAD = 4;
+
+	protected static class Chunk {
+		final int from, to; // [from, to)
+		final Object[] elements; // frozen
+		Object[] results;
+		RuntimeException failure;
+
+		Chunk(int from, int to, Object[] elements) {
+			this.from = from;
+			this.to = to;
+			this.elements = elements;
+		}
+	}
+
+	public static STObject perform(BlockContext ctx, int nArgs, Primitive primitive) {
+		VirtualMachine vm = ctx.vm;
+		vm.assertNumOperands(nArgs+1); // ensure args + receiver
+		int firstArg = ctx.sp - nArgs + 1;
+		STArray receiver = (STArray)ctx.stack[firstArg-1];
+		STObject init = null;
+		BlockDescriptor blk;
+		String operation;
+		switch ( primitive ) {
+			case Array_PARALLEL_DO :
+				operation = "parallelDo:";
+				break;
+			case Array_PARALLEL_COLLECT :
+				operation = "parallelCollect:";
+				break;
+			default : // Array_PARALLEL_INJECT_CHUNKS
+				operation = "parallelInject:into:";
+				init = ctx.stack[firstArg];
+				break;
+		}
+		STObject b = ctx.stack[ctx.sp];
+		if ( !(b instanceof BlockDescriptor) ) {
+			vm.error("TypeError", operation+" expects a block not "+b.getSTClass().getName());
+		}
+		blk = (BlockDescriptor)b;
+		int nargs = init!=null ? 2 : 1;
+		if ( blk.block.nargs!=nargs ) {
+			vm.error("MismatchedBlockArg", operation+" expects a block of "+nargs+" argument(s)");
+		}
+
+		BlockSnapshot snapshot = new BlockSnapshot(vm, blk, operation);
+		Map<STObject,Object> frozen = new IdentityHashMap<>();
+		Object frozenInit = init!=null ? ActorMessage.freeze(vm, init, frozen) : null;
+		List<Chunk> chunks = split(vm, receiver.elements, frozen);
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		for (Chunk c : chunks) {
+			tasks.add(ForkJoinTask.adapt(() -> run(vm, snapshot, c, frozenInit, primitive)));
+		}
+		if ( ForkJoinTask.inForkJoinPool() ) ForkJoinTask.invokeAll(tasks); // chunks have vm's limits so this ends
+		else await(vm, ActorSystem.defaultPool().submit(() -> ForkJoinTask.invokeAll(tasks)), tasks, operation);
+		for (Chunk c : chunks) {
+			if ( c.failure!=null ) throw c.failure; // keeps the failing VM's stack
+		}
+
+		ctx.sp -= nArgs+1;
+		switch ( primitive ) {
+			case Array_PARALLEL_DO :
+				return receiver;
+			case Array_PARALLEL_COLLECT :
+				STObject[] results = new STObject[receiver.elements.length];
+				for (Chunk c : chunks) {
+					Map<Object,STObject> thawed = new IdentityHashMap<>();
+					for (int i = c.from; i < c.to; i++) {
+						results[i] = ActorMessage.thaw(vm, c.results[i-c.from], thawed);
+					}
+				}
+				return new STArray(vm, results);
+			default :
+				STObject[] partials = new STObject[chunks.size()];
+				for (int i = 0; i < partials.length; i++) {
+					partials[i] = ActorMessage.thaw(vm, chunks.get(i).results[0], new IdentityHashMap<>());
+				}
+				return new STArray(vm, partials);
+		}
+	}
+
+	/** Wait for all, the chunk tasks, but no longer than vm's deadline */
+	protected static void await(VirtualMachine vm, ForkJoinTask<?> all, List<ForkJoinTask<?>> tasks, String operation) {
+		long nanos = vm.nanosLeft();
+		try {
+			if ( nanos==Long.MAX_VALUE ) all.join();
+			else all.get(Math.max(0, nanos), TimeUnit.NANOSECONDS);
+		}
+		catch (TimeoutException e) {
+			for (ForkJoinTask<?> t : tasks) t.cancel(false); // chunks already running stop at the same deadline
+			vm.error("ExecutionLimitExceeded", "ran longer than "+vm.maxNanos/1_000_000+"ms");
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			vm.error("InternalVMException", e, operation+" interrupted");
+		}
+		catch (ExecutionException e) { // chunks catch their own failures, so only a Java Error gets here
+			vm.error("InternalVMException", e, operation+" failed: "+e.getCause());
+		}
+	}
+
+	protected static List<Chunk> split(VirtualMachine vm, STObject[] elements, Map<STObject,Object> frozen) {
+		int n = elements.length;
+		int nchunks = Math.min(n, CHUNKS_PER_THREAD * ActorSystem.defaultPool().getParallelism());
+		List<Chunk> chunks = new ArrayList<>();
+		for (int c = 0; c < nchunks; c++) {
+			int from = (int)((long)n * c / nchunks);
+			int to = (int)((long)n * (c+1) / nchunks);
+			Object[] chunk = new Object[to-from];
+			for (int i = from; i < to; i++) {
+				chunk[i-from] = ActorMessage.freeze(vm, elements[i], frozen);
+			}
+			chunks.add(new Chunk(from, to, chunk));
+		}
+		return chunks;
+	}
+
+	protected static void run(VirtualMachine caller, BlockSnapshot snapshot, Chunk c, Object init, Primitive primitive) {
+		try {
+			VirtualMachine vm = caller.sibling();
+			BlockDescriptor blk = snapshot.thaw(vm);
+			Map<Object,STObject> thawed = new IdentityHashMap<>();
+			Map<STObject,Object> frozen = new IdentityHashMap<>();
+			switch ( primitive ) {
+				case Array_PARALLEL_DO :
+					for (Object e : c.elements) vm.value(blk, ActorMessage.thaw(vm, e, thawed));
+					break;
+				case Array_PARALLEL_COLLECT :
+					c.results = new Object[c.elements.length];
+					for (int i = 0; i < c.elements.length; i++) {
+						STObject result = vm.value(blk, ActorMessage.thaw(vm, c.elements[i], thawed));
+						c.results[i] = ActorMessage.freeze(vm, result, frozen);
+					}
+					break;
+				default :
+					STObject acc = ActorMessage.thaw(vm, init, thawed);
+					for (Object e : c.elements) acc = vm.value(blk, acc, ActorMessage.thaw(vm, e, thawed));
+					c.results = new Object[] {ActorMessage.freeze(vm, acc, frozen)};
+					break;
+			}
+		}
+		catch (RuntimeException e) {
+			c.failure = e;
+		}
+	}
+}
@@ -0,0 +1,268 @@
+package smalltalk.vm;
+
+import smalltalk.vm.primitive.BlockContext;
+import smalltalk.vm.primitive.STCompiledBlock;
+import smalltalk.vm.primitive.STProcess;
+import smalltalk.vm.primitive.STProcess.State;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/** Multiplexes Smalltalk {@link STProcess}es (green threads) over one
+ *  VM and one Java thread. Switching processes just saves
+ *  {@link VirtualMachine#ctx} in the active process and loads another
+ *  process' context chain.
+ *
+ *  The ready process of highest priority runs. A process that becomes
+ *  ready at a higher priority than the active one, such as by a signal,
+ *  preempts it at once. Processes of equal priority take turns of
+ *  {@link VirtualMachine#processQuantum} instructions; at the end of each
+ *  turn the scheduler also wakes processes whose {@link
+ *  smalltalk.vm.primitive.STDelay} has expired. The VM thread sleeps only
+ *  when every process is waiting on a delay. If every process waits on a
+ *  semaphore, nothing can wake them and the VM raises a Deadlock error.
+ *
+ *  A VM creates its scheduler the first time a program uses processes,
+ *  semaphores, or delays and from then on runs {@link
+ *  VirtualMachine#runScheduled}, which counts down each turn. Programs
+ *  that don't use processes never pay for that. The VM returns when main
+ *  returns, dropping any other processes.
+ */
+public class ProcessScheduler {
+	protected static final STCompiledBlock SWITCH_LOOPS =
+		new STCompiledBlock(null, "switchLoops", "ProcessScheduler>>switchLoops", 0, 0, null, false, 0, null, new byte[0], null);
+
+	protected final VirtualMachine vm;
+
+	protected STProcess active;
+
+	/** Ready processes by priority, each in FIFO order */
+	protected final List<Deque<STProcess>> ready = new ArrayList<>();
+
+	/** Processes waiting on a delay, earliest wake up first */
+	protected final PriorityQueue<Sleeper> sleeping = new PriorityQueue<>();
+
+	protected long nextSleeper;
+
+	/** Instructions left in the active process' turn */
+	public int quantumLeft;
+
+	/** True once the VM runs {@link VirtualMachine#runScheduled} */
+	protected boolean timeSliced;
+
+	/** Parks the active process' context while the VM changes loops */
+	protected final BlockContext switchLoops;
+
+	protected static class Sleeper implements Comparable<Sleeper> {
+		final long wakeAt; // System.nanoTime()
+		final long seq;    // FIFO among equal wakeAt
+		final STProcess process;
+
+		Sleeper(long wakeAt, long seq, STProcess process) {
+			this.wakeAt = wakeAt;
+			this.seq = seq;
+			this.process = process;
+		}
+
+		@Override
+		public int compareTo(Sleeper o) {
+			int c = Long.compare(wakeAt - o.wakeAt, 0);
+			return c!=0 ? c : Long.compare(seq, o.seq);
+		}
+	}
+
+	/** Make the currently running code the main process */
+	public ProcessScheduler(VirtualMachine vm) {
+		this.vm = vm;
+		for (int p = 0; p <= STProcess.HIGHEST_PRIORITY; p++) {
+			ready.add(new ArrayDeque<>());
+		}
+		active = new STProcess(vm, STProcess.USER_PRIORITY);
+		active.state = State.RUNNING;
+		switchLoops = new BlockContext(vm, SWITCH_LOOPS, vm.nil());
+		quantumLeft = vm.processQuantum;
+	}
+
+	public STProcess getActive() { return active; }
+
+	/** Start p, which was created suspended; ignore other processes */
+	public void resume(STProcess p) {
+		if ( p.state==State.SUSPENDED ) ready(p);
+	}
+
+	/** p can run again; it runs now if its priority is higher than
+	 *  the active process'
+	 */
+	public void ready(STProcess p) {
+		if ( p.priority > active.priority && vm.nestedCalls==0 ) {
+			active.state = State.READY;
+			ready.get(active.priority).addFirst(active); // continues its turn later
+			switchTo(p);
+		}
+		else {
+			p.state = State.READY;
+			ready.get(p.priority).addLast(p);
+		}
+	}
+
+	/** Let another ready process of the same or higher priority run */
+	public void yield() {
+		if ( vm.nestedCalls>0 ) return; // can't leave a VirtualMachine.call()
+		STProcess p = takeReady(active.priority);
+		if ( p!=null ) {
+			active.state = State.READY;
+			ready.get(active.priority).addLast(active);
+			switchTo(p);
+		}
+	}
+
+	/** The active process waits, on a semaphore, until someone calls
+	 *  {@link #ready} for it
+	 */
+	public void block() {
+		active.state = State.WAITING;
+		switchTo(next());
+	}
+
+	/** The active process waits for nanos */
+	public void sleep(long nanos) {
+		sleeping.add(new Sleeper(System.nanoTime() + nanos, nextSleeper++, active));
+		block();
+	}
+
+	public void terminate(STProcess p) {
+		State was = p.state;
+		p.state = State.TERMINATED;
+		switch ( was ) {
+			case RUNNING :
+				switchTo(next());
+				break;
+			case READY :
+				ready.get(p.priority).remove(p);
+				break;
+			case WAITING :
+				if ( p.waitingOn!=null ) p.waitingOn.waiting.remove(p);
+				sleeping.removeIf(s -> s.process==p);
+				break;
+		}
+		p.ctx = null;
+	}
+
+	public void setPriority(STProcess p, int priority) {
+		if ( p.state==State.READY && ready.get(p.priority).remove(p) ) {
+			ready.get(priority).addLast(p);
+		}
+		p.priority = priority;
+	}
+
+	/** Called by the VM when the active process' turn is over */
+	public void timeSliceEnded() {
+		quantumLeft = vm.processQuantum;
+		wakeSleepers();
+		this.yield();
+	}
+
+	/** Called at the end of any primitive that may have switched
+	 *  processes. The first time, get the VM out of an interpreter loop
+	 *  that doesn't count turns by making it run out of code; see
+	 *  {@link #loopExited}.
+	 */
+	public void primitiveDone() {
+		if ( !timeSliced && vm.listener==null && vm.nestedCalls==0 ) {
+			timeSliced = true;
+			active.ctx = vm.ctx;
+			vm.ctx = switchLoops;
+		}
+	}
+
+	/** The VM's interpreter loop ran out of code. Return true and set up
+	 *  the VM to continue if that's because it must switch loops or
+	 *  because a process other than main finished.
+	 */
+	public boolean loopExited() {
+		if ( vm.ctx==switchLoops ) {
+			vm.ctx = active.ctx;
+			active.ctx = null;
+			return true;
+		}
+		if ( active.end!=null && vm.ctx==active.end ) {
+			terminate(active);
+			return true;
+		}
+		return false;
+	}
+
+	/** Is home on the active process' invokingContext chain? */
+	public boolean isActive(BlockContext home) {
+		for (BlockContext c = vm.ctx; c!=null; c = c.invokingContext) {
+			if ( c==home ) return true;
+		}
+		return false;
+	}
+
+	protected void switchTo(STProcess p) {
+		if ( p==active ) { // woke up from a delay before anyone else could run
+			p.state = State.RUNNING;
+			return;
+		}
+		if ( vm.nestedCalls>0 ) {
+			vm.error("a process can't wait or end inside a method sent by a primitive");
+		}
+		if ( active.state!=State.TERMINATED ) active.ctx = vm.ctx;
+		active = p;
+		p.state = State.RUNNING;
+		vm.ctx = p.ctx;
+		p.ctx = null;
+		quantumLeft = vm.processQuantum;
+	}
+
+	/** Remove and return the first ready process of highest priority,
+	 *  at least minPriority, or null if there isn't one
+	 */
+	protected STProcess takeReady(int minPriority) {
+		for (int p = STProcess.HIGHEST_PRIORITY; p >= minPriority; p--) {
+			STProcess process = ready.get(p).pollFirst();
+			if ( process!=null ) return process;
+		}
+		return null;
+	}
+
+	/** The next process to run now that the active one can't, sleeping
+	 *  until a delay expires if no process is ready
+	 */
+	protected STProcess next() {
+		while ( true ) {
+			wakeSleepers();
+			STProcess p = takeReady(STProcess.LOWEST_PRIORITY);
+			if ( p!=null ) return p;
+			Sleeper first = sleeping.peek();
+			if ( first==null ) {
+				vm.error("Deadlock", "all processes are waiting on semaphores");
+			}
+			if ( vm.maxNanos>0 && first.wakeAt - vm.deadline > 0 ) {
+				vm.error("ExecutionLimitExceeded", "ran longer than "+vm.maxNanos/1_000_000+"ms");
+			}
+			try {
+				TimeUnit.NANOSECONDS.sleep(first.wakeAt - System.nanoTime());
+			}
+			catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				vm.error("InternalVMException", ie, "interrupted waiting on a Delay");
+			}
+		}
+	}
+
+	protected void wakeSleepers() {
+		if ( sleeping.isEmpty() ) return;
+		long now = System.nanoTime();
+		while ( !sleeping.isEmpty() && sleeping.peek().wakeAt - now <= 0 ) {
+			STProcess p = sleeping.poll().process;
+			p.state = State.READY;
+			ready.get(p.priority).addLast(p);
+		}
+	}
+}
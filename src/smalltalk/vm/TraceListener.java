@@ -0,0 +1,46 @@
+package smalltalk.vm;
+
+import org.antlr.symtab.Utils;
+import smalltalk.vm.primitive.BlockContext;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** Print each instruction as it executes followed by the chain of
+ *  active contexts, outermost first. This is what "Run -trace" does.
+ */
+public class TraceListener implements ExecutionListener {
+	protected final PrintStream out;
+
+	public TraceListener() {
+		this(System.out);
+	}
+
+	public TraceListener(PrintStream out) {
+		this.out = out;
+	}
+
+	@Override
+	public void instruction(BlockContext ctx, int ip, int opcode) {
+		String instr = Bytecode.disassembleInstruction(ctx.compiledBlock, ip);
+		out.printf("%-40s", instr);
+	}
+
+	@Override
+	public void instructionExecuted(BlockContext ctx) {
+		if ( ctx==null ) { // outermost method returned
+			out.println();
+			return;
+		}
+		BlockContext c = ctx;
+		List<String> a = new ArrayList<>();
+		while (c != null) {
+			a.add(c.toString());
+			c = c.invokingContext;
+		}
+		Collections.reverse(a);
+		out.println(Utils.join(a, ", "));
+	}
+}
@@ -0,0 +1,190 @@
+package smalltalk.vm;
+
+import org.antlr.symtab.MethodSymbol;
+import org.antlr.symtab.Scope;
+import org.antlr.symtab.Symbol;
+import smalltalk.compiler.STClass;
+import smalltalk.compiler.STMethod;
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.primitive.STCompiledBlock;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Find the classes and methods a program can reach from MainClass>>main
+ *  so that {@link Image#toBytes(Map)} can write an image without the rest
+ *  of image.st and any libraries. A VM started from the smaller image
+ *  decodes and allocates less.
+ *
+ *  Without types, a send can go to any class' method with that selector,
+ *  so a method is reachable if its class is and some reachable code sends
+ *  its selector. A class is reachable if reachable code names it, if it
+ *  is the superclass of a reachable class, or if the VM itself needs it;
+ *  see {@link #VM_CLASSES}.
+ *
+ *  Actors are sent messages by string, as in a send: 'result:' with: x,
+ *  so the string literals of code that sends one of {@link #ACTOR_SENDS}
+ *  count as sent selectors too. Likewise, Dictionary and Set send hash
+ *  and = to their keys from Java; see {@link #JAVA_SENDS}.
+ */
+public class TreeShaker {
+	/** Classes the VM looks up by name to create objects and run main */
+	public static final List<String> VM_CLASSES = Arrays.asList(
+		"Object", "UndefinedObject", "Boolean", "Character", "Integer", "Float",
+		"String", "Array", "Association", "BlockDescriptor", "Process", "TranscriptStream",
+		"MainClass"
+	);
+
+	/** Sends whose first argument, a string, is a selector the receiving actor sends */
+	public static final List<String> ACTOR_SENDS = Arrays.asList(
+		"send:", "send:with:", "send:with:with:"
+	);
+
+	/** Selectors the VM sends to objects of any class once the key class is live */
+	public static final Map<String,List<String>> JAVA_SENDS = new LinkedHashMap<>();
+	static {
+		JAVA_SENDS.put("Dictionary", Arrays.asList("hash", "="));
+		JAVA_SENDS.put("Set", Arrays.asList("hash", "="));
+	}
+
+	protected final STSymbolTable symtab;
+
+	/** Symbols are equal if their names are, so track them by identity */
+	protected final Set<STClass> liveClasses = Collections.newSetFromMap(new IdentityHashMap<>());
+	protected final Set<String> liveSelectors = new HashSet<>();
+	protected final Set<STMethod> liveMethods = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	/** Methods found reachable whose code hasn't been scanned yet */
+	protected final Deque<STMethod> work = new ArrayDeque<>();
+
+	public TreeShaker(STSymbolTable symtab) {
+		this.symtab = symtab;
+	}
+
+	public TreeShaker shake() {
+		for (String name : VM_CLASSES) {
+			Symbol s = symtab.GLOBALS.resolve(name);
+			if ( s instanceof STClass ) addClass((STClass)s);
+		}
+		addSelector("main");
+		while ( !work.isEmpty() ) {
+			STCompiledBlock method = work.pop().getCompiledBlock();
+			scan(method);
+			for (STCompiledBlock blk : method.blocks) scan(blk);
+		}
+		return this;
+	}
+
+	/** The reachable classes, in definition order, and their reachable methods */
+	public Map<STClass,List<STMethod>> getLiveCode() {
+		Map<STClass,List<STMethod>> code = new LinkedHashMap<>();
+		for (STClass cl : getClasses()) {
+			if ( !liveClasses.contains(cl) ) continue;
+			List<STMethod> methods = new ArrayList<>();
+			for (MethodSymbol m : cl.getDefinedMethods()) {
+				if ( liveMethods.contains(m) ) methods.add((STMethod)m);
+			}
+			code.put(cl, methods);
+		}
+		return code;
+	}
+
+	/** What the shaken image leaves out, by class and method */
+	public String report() {
+		List<String> removedClasses = new ArrayList<>();
+		List<String> removedMethods = new ArrayList<>();
+		int nclasses = 0, nmethods = 0;
+		for (STClass cl : getClasses()) {
+			nclasses++;
+			if ( !liveClasses.contains(cl) ) removedClasses.add(cl.getName());
+			for (MethodSymbol m : cl.getDefinedMethods()) {
+				nmethods++;
+				if ( !liveMethods.contains(m) ) {
+					removedMethods.add(cl.getName()+">>"+m.getName());
+				}
+			}
+		}
+		StringBuilder buf = new StringBuilder();
+		buf.append(String.format("kept %d of %d classes, %d of %d methods%n",
+								 liveClasses.size(), nclasses, liveMethods.size(), nmethods));
+		buf.append("removed classes: ").append(String.join(", ", removedClasses)).append('\n');
+		buf.append("removed methods: ").append(String.join(", ", removedMethods)).append('\n');
+		return buf.toString();
+	}
+
+	public Set<STClass> getLiveClasses() { return liveClasses; }
+
+	public Set<STMethod> getLiveMethods() { return liveMethods; }
+
+	protected List<STClass> getClasses() {
+		List<STClass> classes = new ArrayList<>();
+		for (Symbol s : symtab.getGlobalSymbols()) {
+			if ( s instanceof STClass ) classes.add((STClass)s);
+		}
+		return classes;
+	}
+
+	/** Record the selectors sent and the classes named by blk */
+	protected void scan(STCompiledBlock blk) {
+		byte[] code = blk.bytecode;
+		List<String> strings = new ArrayList<>();
+		boolean sendsToActor = false;
+		int ip = 0;
+		while ( code!=null && ip<code.length ) {
+			int opcode = code[ip];
+			switch ( opcode ) {
+				case Bytecode.SEND :
+				case Bytecode.SEND_SUPER :
+					String selector = blk.literals[Bytecode.getShort(code, ip+3)];
+					if ( ACTOR_SENDS.contains(selector) ) sendsToActor = true;
+					addSelector(selector);
+					break;
+				case Bytecode.PUSH_LITERAL :
+					strings.add(blk.literals[Bytecode.getShort(code, ip+1)]);
+					break;
+				case Bytecode.PUSH_GLOBAL :
+					Symbol s = symtab.GLOBALS.resolve(blk.literals[Bytecode.getShort(code, ip+1)]);
+					if ( s instanceof STClass ) addClass((STClass)s);
+					break;
+			}
+			ip += Bytecode.sizeOf(opcode);
+		}
+		if ( sendsToActor ) {
+			for (String str : strings) addSelector(str);
+		}
+	}
+
+	protected void addClass(STClass cl) {
+		if ( !liveClasses.add(cl) ) return;
+		Scope superClass = cl.getSuperClassScope();
+		if ( superClass instanceof STClass ) addClass((STClass)superClass);
+		for (MethodSymbol m : cl.getDefinedMethods()) {
+			if ( liveSelectors.contains(m.getName()) ) addMethod((STMethod)m);
+		}
+		List<String> sent = JAVA_SENDS.get(cl.getName());
+		if ( sent!=null ) {
+			for (String selector : sent) addSelector(selector);
+		}
+	}
+
+	protected void addSelector(String selector) {
+		if ( !liveSelectors.add(selector) ) return;
+		for (STClass cl : liveClasses.toArray(new STClass[liveClasses.size()])) {
+			Symbol m = cl.getSymbol(selector);
+			if ( m instanceof STMethod ) addMethod((STMethod)m);
+		}
+	}
+
+	protected void addMethod(STMethod m) {
+		if ( liveMethods.add(m) ) work.push(m);
+	}
+}
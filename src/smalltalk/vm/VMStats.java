@@ -0,0 +1,85 @@
+package smalltalk.vm;
+
+import smalltalk.vm.exceptions.VMException;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Runtime counters for a single {@link VirtualMachine}. Get a snapshot
+ *  with {@link VirtualMachine#getStats()} or watch live values via JMX
+ *  after {@link VirtualMachine#registerMBean()}.
+ *
+ *  Each VM owns its counters and only the thread running that VM updates
+ *  them, so they are plain fields: no atomics, no sharing, and no
+ *  contention between VMs running in different threads. Readers in other
+ *  threads, such as JMX, may see slightly stale values.
+ */
+public class VMStats implements VMStatsMXBean {
+	/** SEND and SEND_SUPER instructions executed */
+	public long sends;
+	/** Sends that resolved to a primitive method */
+	public long primitiveCalls;
+	public long methodCacheHits;
+	public long methodCacheMisses;
+	/** BlockContext objects created for methods and blocks */
+	public long contextsAllocated;
+	/** All Smalltalk objects created, including integers and strings */
+	public long objectsAllocated;
+	public long integersAllocated;
+	public long stringsAllocated;
+	/** Longest invokingContext chain seen */
+	public int maxContextDepth;
+	/** ^ executed within a block rather than directly within a method */
+	public long nonLocalReturns;
+
+	protected final Map<String,Long> exceptions = new ConcurrentHashMap<>();
+
+	public void exceptionThrown(VMException e) {
+		exceptions.merge(e.getClass().getSimpleName(), 1L, Long::sum);
+	}
+
+	/** Return a copy of the current counter values */
+	public VMStats snapshot() {
+		VMStats s = new VMStats();
+		s.sends = sends;
+		s.primitiveCalls = primitiveCalls;
+		s.methodCacheHits = methodCacheHits;
+		s.methodCacheMisses = methodCacheMisses;
+		s.contextsAllocated = contextsAllocated;
+		s.objectsAllocated = objectsAllocated;
+		s.integersAllocated = integersAllocated;
+		s.stringsAllocated = stringsAllocated;
+		s.maxContextDepth = maxContextDepth;
+		s.nonLocalReturns = nonLocalReturns;
+		s.exceptions.putAll(exceptions);
+		return s;
+	}
+
+	@Override public long getSends() { return sends; }
+	@Override public long getPrimitiveCalls() { return primitiveCalls; }
+	@Override public long getMethodCacheHits() { return methodCacheHits; }
+	@Override public long getMethodCacheMisses() { return methodCacheMisses; }
+	@Override public long getContextsAllocated() { return contextsAllocated; }
+	@Override public long getObjectsAllocated() { return objectsAllocated; }
+	@Override public long getIntegersAllocated() { return integersAllocated; }
+	@Override public long getStringsAllocated() { return stringsAllocated; }
+	@Override public int getMaxContextDepth() { return maxContextDepth; }
+	@Override public long getNonLocalReturns() { return nonLocalReturns; }
+	@Override public Map<String,Long> getExceptions() { return new TreeMap<>(exceptions); }
+
+	@Override
+	public String toString() {
+		return "sends="+sends+
+			", primitiveCalls="+primitiveCalls+
+			", methodCacheHits="+methodCacheHits+
+			", methodCacheMisses="+methodCacheMisses+
+			", contextsAllocated="+contextsAllocated+
+			", objectsAllocated="+objectsAllocated+
+			", integersAllocated="+integersAllocated+
+			", stringsAllocated="+stringsAllocated+
+			", maxContextDepth="+maxContextDepth+
+			", nonLocalReturns="+nonLocalReturns+
+			", exceptions="+getExceptions();
+	}
+}
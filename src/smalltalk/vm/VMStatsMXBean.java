@@ -0,0 +1,21 @@
+package smalltalk.vm;
+
+import java.util.Map;
+
+/** Management interface for one VM's live counters; see {@link VMStats}
+ *  and {@link VirtualMachine#registerMBean()}.
+ */
+public interface VMStatsMXBean {
+	long getSends();
+	long getPrimitiveCalls();
+	long getMethodCacheHits();
+	long getMethodCacheMisses();
+	long getContextsAllocated();
+	long getObjectsAllocated();
+	long getIntegersAllocated();
+	long getStringsAllocated();
+	int getMaxContextDepth();
+	long getNonLocalReturns();
+	/** Number of VMExceptions thrown by exception class simple name */
+	Map<String,Long> getExceptions();
+}
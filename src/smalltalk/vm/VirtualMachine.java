@@ -2,16 +2,22 @@ package smalltalk.vm;
 
 import org.antlr.symtab.ClassSymbol;
 import org.antlr.symtab.Symbol;
-
-import org.antlr.symtab.Utils;
 import smalltalk.compiler.STClass;
 import smalltalk.compiler.STSymbolTable;
+import smalltalk.events.ExecMainEvent;
+import smalltalk.events.SlowSendListener;
+import smalltalk.events.VMErrorEvent;
 import smalltalk.vm.exceptions.*;
 import smalltalk.vm.primitive.*;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A VM for a subset of Smalltalk.
@@ -19,9 +25,12 @@ import java.util.List;
  * 3 HUGE simplicity factors in this implementation: we ignore GC,
  * efficiency, and don't expose execution contexts to smalltalk programmers.
  * <p>
- * Because of the shared {@link SystemDictionary#objects} list (ThreadLocal)
- * in SystemDictionary, each VirtualMachine must run in its own thread
- * if you want multiple.
+ * Each VM has its own objects, globals ({@link #systemDict}), method
+ * cache, and stats, so a VM must be used by one thread at a time.
+ * Compiled code, however, is immutable and shared: VMs created from the
+ * same symbol table or {@link Image} share each class'
+ * {@link ClassLayout} and its {@link STCompiledBlock}s, so any number
+ * of VMs can run in parallel over one loaded image.
  */
 public class VirtualMachine {
       /**
@@ -36,37 +45,210 @@ public class VirtualMachine {
       public BlockContext ctx;
 
       /**
-       * Trace instructions and show stack during exec?
+       * Who is watching execution? null unless {@link #addListener} was
+       * called. If more than one listener is attached, this is a
+       * {@link MulticastListener}.
        */
-      public boolean trace = false;
+      public ExecutionListener listener;
 
-      public VirtualMachine(STSymbolTable symtab) {
+      protected final List<ExecutionListener> listeners = new ArrayList<>();
+
+      /**
+       * Counters for sends, allocations, etc... See {@link #getStats()}.
+       */
+      public final VMStats stats = new VMStats();
+
+      /**
+       * Size of the global method lookup cache; must be a power of 2.
+       */
+      public static final int METHOD_CACHE_SIZE = 1024;
+
+      /**
+       * A direct-mapped cache of (class, selector) -> method so that sends
+       * don't have to walk the superclass chain doing hash lookups. Like
+       * BlueBook p 662 in pdf. Entry i is valid if cachedClasses[i] is
+       * non-null.
+       */
+      protected final STMetaClassObject[] cachedClasses = new STMetaClassObject[METHOD_CACHE_SIZE];
+      protected final String[] cachedSelectors = new String[METHOD_CACHE_SIZE];
+      protected final STCompiledBlock[] cachedMethods = new STCompiledBlock[METHOD_CACHE_SIZE];
+
+      /**
+       * The string each string literal evaluates to, by block and literal
+       * index, so that a literal is one object, as in other Smalltalks.
+       * Strings are immutable so sharing them is safe. Compiled blocks
+       * are shared by VMs but strings belong to one.
+       */
+      protected final Map<STCompiledBlock,STString[]> literalStrings = new IdentityHashMap<>();
+
+      /**
+       * Stop each {@link #exec} with {@link ExecutionLimitExceeded} after
+       * this many instructions; 0 means no limit.
+       */
+      public long maxInstructions;
+
+      /**
+       * Stop each {@link #exec} with {@link ExecutionLimitExceeded} after
+       * this much wall time; 0 means no limit. The clock is read every
+       * {@link #CLOCK_CHECK_INTERVAL} instructions.
+       */
+      public long maxNanos;
+
+      public static final int CLOCK_CHECK_INTERVAL = 1024;
+
+      /**
+       * Contexts shown in the stack of a {@link VMException}; the rest
+       * are counted.
+       */
+      public static final int MAX_STACK_FRAMES = 100;
+
+      /**
+       * Instructions each process runs before others of its priority
+       * get a turn; see {@link ProcessScheduler}.
+       */
+      public int processQuantum = 1000;
 
+      /**
+       * Green threads; null until the program running in this exec()
+       * first uses a Process, Semaphore, or Delay.
+       */
+      protected ProcessScheduler scheduler;
+
+      /**
+       * The actor this VM runs; null until the program first uses actors.
+       * See {@link ActorSystem}.
+       */
+      protected Actor actor;
+
+      /**
+       * What this VM was created from, so {@link #sibling()} can make
+       * another VM running the same program; one of them is null.
+       */
+      protected final STSymbolTable symtab;
+      protected final Image image;
+
+      /**
+       * Instructions left and System.nanoTime() deadline for the current
+       * exec() when it is limited.
+       */
+      protected long instructionsLeft;
+      protected long deadline;
+      protected int untilClockCheck;
+
+      /**
+       * Set on a {@link #sibling()} of a VM with a deadline; every exec()
+       * keeps that deadline rather than starting its own.
+       */
+      protected boolean inheritedDeadline;
+
+      /**
+       * How many {@link #call}s are running inside primitives. While any
+       * are, the scheduler doesn't switch processes.
+       */
+      protected int nestedCalls;
+
+      private static final AtomicInteger nextID = new AtomicInteger(1);
+
+      /**
+       * Unique within the JVM; used to name this VM's MBean
+       */
+      public final int id = nextID.getAndIncrement();
+
+      protected ObjectName mbeanName;
+
+      public VirtualMachine(STSymbolTable symtab) {
+            this.symtab = symtab;
+            this.image = null;
             systemDict = new SystemDictionary(this);
-            for (Symbol s : symtab.GLOBALS.getSymbols()) {
+            for (Symbol s : symtab.getGlobalSymbols()) {
                   if (s instanceof ClassSymbol) {
                         systemDict.define(s.getName(),
                                 new STMetaClassObject(this, (STClass) s));
                   }
             }
-            STObject transcript = new STObject(systemDict.lookupClass("TranscriptStream"));
-            systemDict.define("Transcript", transcript);
+            definePredefinedObjects();
+      }
+
+      /**
+       * Create a VM from a precompiled image rather than a symbol table,
+       * which avoids parsing and compiling anything.
+       */
+      public VirtualMachine(Image image) {
+            this.symtab = null;
+            this.image = image;
+            systemDict = new SystemDictionary(this);
+            image.defineClasses(this);
+            definePredefinedObjects();
+      }
+
+      /**
+       * A new VM for the same program, with its own objects and globals.
+       * The two share compiled code. If this VM's exec() is limited, the
+       * new VM's are too: to the instructions this one has left and to
+       * the same deadline.
+       */
+      public VirtualMachine sibling() {
+            VirtualMachine vm = symtab!=null ? new VirtualMachine(symtab) : new VirtualMachine(image);
+            if ( maxInstructions>0 ) vm.maxInstructions = Math.max(1, instructionsLeft);
+            if ( maxNanos>0 ) {
+                  vm.maxNanos = maxNanos;
+                  vm.inheritedDeadline = true;
+                  vm.deadline = deadline;
+            }
+            return vm;
+      }
+
+      /**
+       * Nanoseconds left before this exec()'s deadline, or Long.MAX_VALUE
+       * if it has none.
+       */
+      public long nanosLeft() {
+            return maxNanos>0 ? deadline - System.nanoTime() : Long.MAX_VALUE;
+      }
+
+      protected void definePredefinedObjects() {
+            systemDict.define("NIL", new STNil(this)); // first; new objects' fields are nil
             systemDict.define("TRUE", new STBoolean(this, true));
             systemDict.define("FALSE", new STBoolean(this, false));
-            systemDict.define("NIL", new STNil(this));
-            // create system dictionary and predefined Transcript
-            // convert symbol table ClassSymbols to STMetaClassObjects
+            STObject transcript = new STObject(systemDict.lookupClass("TranscriptStream"));
+            systemDict.define("Transcript", transcript);
       }
 
       /**
-       * look up MainClass>>main and execute it
+       * look up MainClass>>main and execute it. When JFR is recording,
+       * this emits an {@link ExecMainEvent} and, if smalltalk.SlowSend
+       * is enabled, attaches a {@link SlowSendListener} for the duration.
        */
       public STObject execMain() {
             STMetaClassObject mainMetaClassObject = systemDict.lookupClass("MainClass");
             if (null != mainMetaClassObject) {
                   STObject mainObject = new STObject(mainMetaClassObject);
                   STCompiledBlock main = mainMetaClassObject.resolveMethod("main");
-                  return exec(mainObject, main);
+                  ExecMainEvent event = new ExecMainEvent();
+                  event.begin();
+                  SlowSendListener slowSends = null;
+                  if ( SlowSendListener.isEnabled() ) {
+                        slowSends = new SlowSendListener(id);
+                        addListener(slowSends);
+                  }
+                  try {
+                        return exec(mainObject, main);
+                  }
+                  finally {
+                        if ( actor!=null ) {
+                              actor.system.stop();
+                              actor = null;
+                        }
+                        if ( slowSends!=null ) removeListener(slowSends);
+                        event.end();
+                        if ( event.shouldCommit() ) {
+                              event.vm = id;
+                              event.sends = stats.sends;
+                              event.contextsAllocated = stats.contextsAllocated;
+                              event.objectsAllocated = stats.objectsAllocated;
+                              event.commit();
+                        }
+                  }
             } else return nil();
       }
 
@@ -79,190 +261,409 @@ public class VirtualMachine {
        * or return self/receiver if there's nothing on the stack.
        */
       public STObject exec(STObject self, STCompiledBlock method) {
+            return exec(self, method, new STObject[0]);
+      }
+
+      /**
+       * Same as {@link #exec(STObject, STCompiledBlock)} for a method that
+       * takes args.
+       */
+      public STObject exec(STObject self, STCompiledBlock method, STObject[] args) {
             ctx = null;
-            int firstArg;
-            int secondArg;
             BlockContext initialContext = new BlockContext(this, method, self);
+            System.arraycopy(args, 0, initialContext.locals, 0, args.length);
             pushContext(initialContext);
+            return execContext(initialContext);
+      }
+
+      /**
+       * Evaluate blk with args from Java, as value: would, and return its
+       * value. Like exec(), this starts a new execution. The block must
+       * not return from its method with ^.
+       */
+      public STObject value(BlockDescriptor blk, STObject... args) {
+            ctx = null;
+            BlockContext end = new BlockContext(this, STProcess.END, nil()); // blk returns into this
+            pushContext(end);
+            BlockContext blkContext = new BlockContext(this, blk);
+            System.arraycopy(args, 0, blkContext.locals, 0, args.length);
+            pushContext(blkContext);
+            execContext(blkContext);
+            return end.top();
+      }
+
+      /**
+       * Run from initialContext, which the caller made ctx, until the
+       * interpreter runs out of code or returns from the outermost method.
+       */
+      protected STObject execContext(BlockContext initialContext) {
+            instructionsLeft = maxInstructions>0 ? maxInstructions : Long.MAX_VALUE;
+            if ( !inheritedDeadline ) deadline = System.nanoTime() + maxNanos;
+            untilClockCheck = CLOCK_CHECK_INTERVAL;
+            scheduler = null;
+            if ( listener!=null ) listener.activated(initialContext);
+            while ( true ) {
+                  STObject result;
+                  if ( listener!=null ) result = runInstrumented();
+                  else if ( scheduler!=null ) result = runScheduled();
+                  else if ( maxInstructions>0 || maxNanos>0 ) result = runLimited();
+                  else result = run();
+                  if ( scheduler==null || ctx==null || !scheduler.loopExited() ) return result;
+            }
+      }
+
+      /**
+       * Send selector to receiver with args from Java and run until the
+       * method returns. Like exec(), this starts a new execution so it
+       * can't be called while the VM is running code.
+       */
+      public STObject send(STObject receiver, String selector, STObject... args) {
+            STCompiledBlock method = lookupMethod(receiver.getSTClass(), selector);
+            if ( method==null || method.isPrimitive() || method.nargs!=args.length ) {
+                  error("MessageNotUnderstood", receiver.getSTClass().getName()+" can't handle "+selector+
+                          " with "+args.length+" argument(s) sent from outside the VM");
+            }
+            return exec(receiver, method, args);
+      }
+
+      /**
+       * Send selector to receiver with args from inside a primitive, run
+       * the method to completion, and return its result. The interpreter
+       * runs nested inside the primitive, so the method can't switch
+       * processes: yields and preemption wait until the primitive is done
+       * and waiting on a semaphore or delay is an error. So is returning
+       * with ^ past the primitive.
+       */
+      public STObject call(STObject receiver, String selector, STObject... args) {
+            BlockContext caller = ctx;
+            caller.push(receiver);
+            for (STObject arg : args) caller.push(arg);
+            nestedCalls++;
+            try {
+                  send(args.length, selector);
+                  boolean limited = maxInstructions>0 || maxNanos>0;
+                  while ( ctx!=caller ) {
+                        if ( ctx==null || ctx.depth<=caller.depth || ctx.ip>=ctx.compiledBlock.bytecode.length ) {
+                              ctx = caller;
+                              error(selector+" returned past the primitive that sent it");
+                        }
+                        if ( limited ) checkLimits();
+                        ctx.prev_ip = ctx.ip;
+                        int op = ctx.compiledBlock.bytecode[ctx.ip++];
+                        execInstruction(op);
+                  }
+            }
+            finally {
+                  nestedCalls--;
+            }
+            return caller.pop();
+      }
+
+      /**
+       * Return the actor running this VM, creating an {@link ActorSystem}
+       * with this VM as its main actor on first use.
+       */
+      public Actor getActor() {
+            if ( actor==null ) actor = new ActorSystem(this).main;
+            return actor;
+      }
+
+      /**
+       * Return this exec()'s scheduler, creating it on first use with the
+       * code running now as the main process.
+       */
+      public ProcessScheduler getScheduler() {
+            if ( scheduler==null ) scheduler = new ProcessScheduler(this);
+            return scheduler;
+      }
+
+      /**
+       * The interpreter loop used when no listener is attached. It has
+       * no hooks at all; keep it that way.
+       */
+      protected STObject run() {
             while (ctx.ip < ctx.compiledBlock.bytecode.length) {
-                  if ( trace ) traceInstr();
                   ctx.prev_ip = ctx.ip;
                   int op = ctx.compiledBlock.bytecode[ctx.ip++];
-                  switch (op) {
-                        case Bytecode.BLOCK:
-                              int blockValue = consumeShort(ctx.ip);
-                              BlockDescriptor bd = new BlockDescriptor(ctx.enclosingMethodContext.compiledBlock.blocks[blockValue], ctx);
-                              ctx.push(bd);
-                              break;
-
-                        case Bytecode.BLOCK_RETURN:
-                              STObject s = ctx.pop();
-                              popContext();
-                              ctx.push(s);
-                              break;
-
-                        case Bytecode.DBG:
-                              int DbgValue = consumeShort(ctx.ip);
-                              ctx.currentFile = ctx.compiledBlock.literals[DbgValue];
-                              int DbgValue2 = consumeInt(ctx.ip);
-                              ctx.currentLine = DbgValue2>>8;
-                              ctx.currentCharPos = ( DbgValue2<<24)>>24;
-                              break;
-
-                        case Bytecode.FALSE:
-                              ctx.push(newBoolean(false));
-                              break;
-
-                        case Bytecode.NIL:
-                              ctx.push(nil());
-                              break;
-
-                        case Bytecode.PUSH_CHAR:
-                              ctx.push(newChar());
-                              break;
-
-                        case Bytecode.PUSH_INT:
-                              int push_int = consumeInt(ctx.ip);
-                              ctx.push(newInteger(push_int));
-                              break;
-
-                        case Bytecode.PUSH_FLOAT:
-                              Float push_float = Float.intBitsToFloat(consumeInt(ctx.ip));
-                              ctx.push(newFloat(push_float));
-                              break;
-
-                        case Bytecode.PUSH_FIELD:
-                              ctx.push(ctx.receiver.fields[consumeShort(ctx.ip)]);
-                              break;
-
-                        case Bytecode.PUSH_LOCAL:
-                              firstArg = consumeShort(ctx.ip);
-                              secondArg = consumeShort(ctx.ip);
-                              BlockContext tmpCtx = ctx;
-                              while (firstArg>0) {
-                                    tmpCtx = tmpCtx.enclosingContext;
-                                    firstArg--;
-                              }
-                              ctx.push(tmpCtx.locals[secondArg]);
-                              break;
+                  STObject result = execInstruction(op);
+                  if ( result!=null ) return result;
+            }
+            return ctx != null ? ctx.receiver : null;
+      }
 
-                        case Bytecode.PUSH_LITERAL:
-                              int literalIndex = consumeShort(ctx.ip);
-                              ctx.push(newString(ctx.compiledBlock.literals[literalIndex]));
-                              break;
+      /**
+       * Same as {@link #run()} but enforces {@link #maxInstructions} and
+       * {@link #maxNanos}.
+       */
+      protected STObject runLimited() {
+            while (ctx.ip < ctx.compiledBlock.bytecode.length) {
+                  checkLimits();
+                  ctx.prev_ip = ctx.ip;
+                  int op = ctx.compiledBlock.bytecode[ctx.ip++];
+                  STObject result = execInstruction(op);
+                  if ( result!=null ) return result;
+            }
+            return ctx != null ? ctx.receiver : null;
+      }
 
-                        case Bytecode.PUSH_GLOBAL:
-                              literalIndex = consumeShort(ctx.ip);
-                              ctx.push(systemDict.lookup(ctx.compiledBlock.literals[literalIndex]));
-                              break;
+      /**
+       * Same as {@link #runLimited()} but also ends the active process'
+       * turn every {@link #processQuantum} instructions. Used once the
+       * program starts using processes.
+       */
+      protected STObject runScheduled() {
+            ProcessScheduler s = scheduler;
+            boolean limited = maxInstructions>0 || maxNanos>0;
+            while (ctx.ip < ctx.compiledBlock.bytecode.length) {
+                  if ( --s.quantumLeft<=0 ) {
+                        s.timeSliceEnded();
+                        continue;
+                  }
+                  if ( limited ) checkLimits();
+                  ctx.prev_ip = ctx.ip;
+                  int op = ctx.compiledBlock.bytecode[ctx.ip++];
+                  STObject result = execInstruction(op);
+                  if ( result!=null ) return result;
+            }
+            return ctx != null ? ctx.receiver : null;
+      }
 
-                        case Bytecode.PUSH_ARRAY:
-                              int arrayIndex = consumeShort(ctx.ip);
-                              ctx.push(newArray(this, arrayIndex));
-                              break;
+      /**
+       * Count an instruction against the limits of this exec() and
+       * stop execution if it's over either one.
+       */
+      protected void checkLimits() {
+            if ( --instructionsLeft<0 ) {
+                  error("ExecutionLimitExceeded", "executed more than "+maxInstructions+" instructions");
+            }
+            if ( --untilClockCheck==0 ) {
+                  untilClockCheck = CLOCK_CHECK_INTERVAL;
+                  if ( maxNanos>0 && System.nanoTime()-deadline>0 ) {
+                        error("ExecutionLimitExceeded", "ran longer than "+maxNanos/1_000_000+"ms");
+                  }
+            }
+      }
 
-                        case Bytecode.POP:
-                              ctx.pop();
-                              break;
-
-                        case Bytecode.RETURN:
-                              STObject retValue = ctx.pop();
-                              if (ctx.enclosingMethodContext.enclosingContext != BlockContext.RETURNED) {
-                                    ctx = ctx.enclosingMethodContext;
-                                    ctx.enclosingContext = BlockContext.RETURNED;
-                                    popContext();
-                                    if (ctx == null) {
-                                          return retValue;
-                                    } else {
-                                          ctx.push(retValue);
-                                    }
-                              } else {
-                                    error("BlockCannotReturn", ctx.compiledBlock.enclosingClass.getName() + ">>" +
-                                            ctx.compiledBlock.name + " can't trigger return again from method " +
-                                            ctx.enclosingMethodContext.compiledBlock.qualifiedName);
-                              }
-                              break;
-
-                        case Bytecode.SELF:
-                              ctx.push(ctx.receiver);
-                              break;
-
-                        case Bytecode.STORE_FIELD:
-                              int fieldsValue = consumeShort(ctx.ip);
-                              ctx.receiver.fields[fieldsValue] = ctx.top();
-                              break;
-
-                        case Bytecode.STORE_LOCAL:
-                              firstArg = consumeShort(ctx.ip);
-                              secondArg = consumeShort(ctx.ip);
-                              tmpCtx = ctx;
-                              while (firstArg > 0) {
-                                    tmpCtx = tmpCtx.enclosingContext;
-                                    firstArg--;
+      /**
+       * Same as {@link #run()} but notifies {@link #listener} around each
+       * instruction. Context switches are detected by comparing the active
+       * context before and after each instruction: no instruction both
+       * pushes and pops contexts, so either the new context was invoked by
+       * the old one or we unwound to one of the old one's invokers.
+       */
+      protected STObject runInstrumented() {
+            ExecutionListener l = listener;
+            boolean limited = maxInstructions>0 || maxNanos>0;
+            while (ctx.ip < ctx.compiledBlock.bytecode.length) {
+                  if ( scheduler!=null && --scheduler.quantumLeft<=0 ) {
+                        scheduler.timeSliceEnded();
+                        continue;
+                  }
+                  if ( limited ) checkLimits();
+                  BlockContext before = ctx;
+                  int ip = ctx.ip;
+                  byte[] code = ctx.compiledBlock.bytecode;
+                  int op = code[ip];
+                  l.instruction(ctx, ip, op);
+                  if ( op==Bytecode.SEND || op==Bytecode.SEND_SUPER ) {
+                        int nArgs = Bytecode.getShort(code, ip + 1);
+                        String selector = ctx.compiledBlock.literals[Bytecode.getShort(code, ip + 3)];
+                        l.send(ctx, ctx.stack[ctx.sp - nArgs], selector, nArgs);
+                  }
+                  ctx.prev_ip = ctx.ip;
+                  ctx.ip++;
+                  STObject result = execInstruction(op);
+                  if ( ctx!=before ) {
+                        if ( ctx!=null && ctx.invokingContext==before ) {
+                              l.activated(ctx);
+                        }
+                        else {
+                              for (BlockContext c = before; c!=null && c!=ctx; c = c.invokingContext) {
+                                    l.returned(c);
                               }
-                              tmpCtx.locals[secondArg] = ctx.top();
-                              break;
-
-                        case Bytecode.SEND:
-                              int nArgs = consumeShort(ctx.ip);
-                              int Index = consumeShort(ctx.ip);
-                              STObject recv = ctx.stack[ctx.sp - nArgs];
-                              String msgName = ctx.compiledBlock.literals[Index];
-                              STCompiledBlock blk = recv.getSTClass().resolveMethod(msgName);
-                              if(!(recv instanceof STMetaClassObject) && blk.isClassMethod){
-                                          throw new ClassMessageSentToInstance(msgName+" is a class method sent to instance of "+recv.metaclass.getName(), getVMStackString());
+                        }
+                  }
+                  l.instructionExecuted(ctx);
+                  if ( result!=null ) return result;
+            }
+            return ctx != null ? ctx.receiver : null;
+      }
+
+      /**
+       * Execute a single instruction whose opcode has already been
+       * consumed; ctx.ip points at the first operand, if any. Returns
+       * null unless the outermost method returned, in which case it
+       * returns the value of that method.
+       */
+      protected STObject execInstruction(int op) {
+            int firstArg;
+            int secondArg;
+            switch (op) {
+                  case Bytecode.BLOCK:
+                        int blockValue = consumeShort(ctx.ip);
+                        BlockDescriptor bd = new BlockDescriptor(ctx.enclosingMethodContext.compiledBlock.blocks[blockValue], ctx);
+                        ctx.push(bd);
+                        break;
+
+                  case Bytecode.BLOCK_RETURN:
+                        STObject s = ctx.pop();
+                        popContext();
+                        ctx.push(s);
+                        break;
+
+                  case Bytecode.DBG:
+                        int DbgValue = consumeShort(ctx.ip);
+                        ctx.currentFile = ctx.compiledBlock.literals[DbgValue];
+                        int DbgValue2 = consumeInt(ctx.ip);
+                        ctx.currentLine = DbgValue2>>8;
+                        ctx.currentCharPos = ( DbgValue2<<24)>>24;
+                        break;
+
+                  case Bytecode.FALSE:
+                        ctx.push(newBoolean(false));
+                        break;
+
+                  case Bytecode.NIL:
+                        ctx.push(nil());
+                        break;
+
+                  case Bytecode.PUSH_CHAR:
+                        ctx.push(newChar());
+                        break;
+
+                  case Bytecode.PUSH_INT:
+                        int push_int = consumeInt(ctx.ip);
+                        ctx.push(newInteger(push_int));
+                        break;
+
+                  case Bytecode.PUSH_FLOAT:
+                        Float push_float = Float.intBitsToFloat(consumeInt(ctx.ip));
+                        ctx.push(newFloat(push_float));
+                        break;
+
+                  case Bytecode.PUSH_FIELD:
+                        ctx.push(ctx.receiver.fields[consumeShort(ctx.ip)]);
+                        break;
+
+                  case Bytecode.PUSH_LOCAL:
+                        firstArg = consumeShort(ctx.ip);
+                        secondArg = consumeShort(ctx.ip);
+                        BlockContext tmpCtx = ctx;
+                        while (firstArg>0) {
+                              tmpCtx = tmpCtx.enclosingContext;
+                              firstArg--;
+                        }
+                        ctx.push(tmpCtx.locals[secondArg]);
+                        break;
+
+                  case Bytecode.PUSH_LITERAL:
+                        int literalIndex = consumeShort(ctx.ip);
+                        ctx.push(literalString(ctx.compiledBlock, literalIndex));
+                        break;
+
+                  case Bytecode.PUSH_GLOBAL:
+                        literalIndex = consumeShort(ctx.ip);
+                        ctx.push(systemDict.lookup(ctx.compiledBlock.literals[literalIndex]));
+                        break;
+
+                  case Bytecode.PUSH_ARRAY:
+                        int arrayIndex = consumeShort(ctx.ip);
+                        ctx.push(newArray(this, arrayIndex));
+                        break;
+
+                  case Bytecode.POP:
+                        ctx.pop();
+                        break;
+
+                  case Bytecode.RETURN:
+                        STObject retValue = ctx.pop();
+                        if (ctx.enclosingMethodContext != ctx) {
+                              stats.nonLocalReturns++;
+                              if ( scheduler!=null && !scheduler.isActive(ctx.enclosingMethodContext) ) {
+                                    error("BlockCannotReturn", ctx.compiledBlock.className + ">>" +
+                                            ctx.compiledBlock.name + " can't return from method " +
+                                            ctx.enclosingMethodContext.compiledBlock.qualifiedName +
+                                            " in another process");
                               }
-                              if (blk.isPrimitive()) {
-                                    STObject result = blk.primitive.perform(ctx, nArgs);
-                                    if (result != null) ctx.push(result);
+                        }
+                        if (ctx.enclosingMethodContext.enclosingContext != BlockContext.RETURNED) {
+                              ctx = ctx.enclosingMethodContext;
+                              ctx.enclosingContext = BlockContext.RETURNED;
+                              popContext();
+                              if (ctx == null) {
+                                    return retValue;
                               } else {
-                                    if (recv instanceof  STMetaClassObject && !blk.isClassMethod) {
-                                          throw  new MessageNotUnderstood(msgName+" is an instance method sent to class object "+ ((STMetaClassObject) recv).getName(), getVMStackString());
-                                    }
-                                    BlockContext newCtx = new BlockContext(this, blk, recv);
-                                    newCtx.enclosingMethodContext = newCtx;
-                                    for (int index = nArgs; index > 0; index--) newCtx.locals[index - 1] = ctx.pop();
-                                    ctx.pop();
-                                    pushContext(newCtx);
+                                    ctx.push(retValue);
                               }
-                              break;
-
-                        case Bytecode.SEND_SUPER:
-                              firstArg = consumeShort(ctx.ip);//
-                              STObject receiver = ctx.stack[ctx.sp - firstArg];
-                              secondArg = consumeShort(ctx.ip);
-                              String msg = ctx.compiledBlock.literals[secondArg];
-                              STCompiledBlock methodBlk;
-                              methodBlk = receiver.getSTClass().superClass.resolveMethod(msg);
-                              if (methodBlk.isClassMethod && !(receiver instanceof STMetaClassObject)) {
-                                    error("ClassMessageSentToInstance", msg + " is a class method sent to instance of " + receiver.getSTClass().getName());
-                              } else if (!methodBlk.isClassMethod && receiver instanceof STMetaClassObject) {
-                                    error("MessageNotUnderstood", msg + " is an instance method sent to class object " + receiver.getSTClass().getName());
+                        } else {
+                              error("BlockCannotReturn", ctx.compiledBlock.className + ">>" +
+                                      ctx.compiledBlock.name + " can't trigger return again from method " +
+                                      ctx.enclosingMethodContext.compiledBlock.qualifiedName);
+                        }
+                        break;
+
+                  case Bytecode.SELF:
+                        ctx.push(ctx.receiver);
+                        break;
+
+                  case Bytecode.STORE_FIELD:
+                        int fieldsValue = consumeShort(ctx.ip);
+                        ctx.receiver.fields[fieldsValue] = ctx.top();
+                        break;
+
+                  case Bytecode.STORE_LOCAL:
+                        firstArg = consumeShort(ctx.ip);
+                        secondArg = consumeShort(ctx.ip);
+                        tmpCtx = ctx;
+                        while (firstArg > 0) {
+                              tmpCtx = tmpCtx.enclosingContext;
+                              firstArg--;
+                        }
+                        tmpCtx.locals[secondArg] = ctx.top();
+                        break;
+
+                  case Bytecode.SEND:
+                        int nArgs = consumeShort(ctx.ip);
+                        int Index = consumeShort(ctx.ip);
+                        send(nArgs, ctx.compiledBlock.literals[Index]);
+                        break;
+
+                  case Bytecode.SEND_SUPER:
+                        firstArg = consumeShort(ctx.ip);//
+                        STObject receiver = ctx.stack[ctx.sp - firstArg];
+                        secondArg = consumeShort(ctx.ip);
+                        String msg = ctx.compiledBlock.literals[secondArg];
+                        stats.sends++;
+                        STCompiledBlock methodBlk;
+                        methodBlk = lookupMethod(receiver.getSTClass().superClass, msg);
+                        if (methodBlk.isClassMethod && !(receiver instanceof STMetaClassObject)) {
+                              error("ClassMessageSentToInstance", msg + " is a class method sent to instance of " + receiver.getSTClass().getName());
+                        } else if (!methodBlk.isClassMethod && receiver instanceof STMetaClassObject) {
+                              error("MessageNotUnderstood", msg + " is an instance method sent to class object " + receiver.getSTClass().getName());
+                        }
+
+                        if (methodBlk.isPrimitive()) {
+                              stats.primitiveCalls++;
+                              STObject result = methodBlk.primitive.perform(ctx, firstArg);
+                              if (result != null) {
+                                    ctx.push(result);
                               }
-
-                              if (methodBlk.isPrimitive()) {
-                                    STObject result = methodBlk.primitive.perform(ctx, firstArg);
-                                    if (result != null) {
-                                          ctx.push(result);
-                                    }
-                              } else {
-                                    BlockContext currentCtx = new BlockContext(this, methodBlk, receiver);
-                                    for (int i = firstArg - 1; i >= 0; i--) {
-                                          currentCtx.locals[i] = ctx.pop();
-                                    }
-                                    ctx.pop();
-                                    pushContext(currentCtx);
+                        } else {
+                              BlockContext currentCtx = new BlockContext(this, methodBlk, receiver);
+                              for (int i = firstArg - 1; i >= 0; i--) {
+                                    currentCtx.locals[i] = ctx.pop();
                               }
-                              break;
+                              ctx.pop();
+                              pushContext(currentCtx);
+                        }
+                        break;
 
-                        case Bytecode.TRUE:
-                              ctx.push(newBoolean(true));
-                              break;
+                  case Bytecode.TRUE:
+                        ctx.push(newBoolean(true));
+                        break;
 
-                  }
-                  if ( trace ) traceStack();
             }
-            return ctx != null ? ctx.receiver : null;
+            return null;
       }
 
       private STObject newArray(VirtualMachine vm, int num) {
@@ -273,49 +674,189 @@ public class VirtualMachine {
             return new STArray(vm, stObjects);
       }
 
+      /**
+       * Send msgName to the receiver under the nArgs arguments on top of
+       * ctx's operand stack, as a SEND instruction does. A primitive
+       * leaves its result on the stack; otherwise ctx becomes the context
+       * of the method invoked.
+       */
+      public void send(int nArgs, String msgName) {
+            STObject recv = ctx.stack[ctx.sp - nArgs];
+            stats.sends++;
+            STCompiledBlock blk = lookupMethod(recv.getSTClass(), msgName);
+            if(!(recv instanceof STMetaClassObject) && blk.isClassMethod){
+                  error("ClassMessageSentToInstance", msgName+" is a class method sent to instance of "+recv.metaclass.getName());
+            }
+            if (blk.isPrimitive()) {
+                  stats.primitiveCalls++;
+                  STObject result = blk.primitive.perform(ctx, nArgs);
+                  if (result != null) ctx.push(result);
+            } else {
+                  if (recv instanceof  STMetaClassObject && !blk.isClassMethod) {
+                        error("MessageNotUnderstood", msgName+" is an instance method sent to class object "+ ((STMetaClassObject) recv).getName());
+                  }
+                  BlockContext newCtx = new BlockContext(this, blk, recv);
+                  newCtx.enclosingMethodContext = newCtx;
+                  for (int index = nArgs; index > 0; index--) newCtx.locals[index - 1] = ctx.pop();
+                  ctx.pop();
+                  pushContext(newCtx);
+            }
+      }
+
       public void error(String type, String msg) throws VMException {
             error(type, null, msg);
       }
 
       public void error(String type, Exception e, String msg) throws VMException {
             String stack = getVMStackString();
+            VMException ex;
             switch (type) {
                   case "MessageNotUnderstood":
-                        throw new MessageNotUnderstood(msg, stack);
+                        ex = new MessageNotUnderstood(msg, stack);
+                        break;
                   case "ClassMessageSentToInstance":
-                        throw new ClassMessageSentToInstance(msg, stack);
+                        ex = new ClassMessageSentToInstance(msg, stack);
+                        break;
                   case "IndexOutOfRange":
-                        throw new IndexOutOfRange(msg, stack);
+                        ex = new IndexOutOfRange(msg, stack);
+                        break;
                   case "BlockCannotReturn":
-                        throw new BlockCannotReturn(msg, stack);
+                        ex = new BlockCannotReturn(msg, stack);
+                        break;
                   case "StackUnderflow":
-                        throw new StackUnderflow(msg, stack);
+                        ex = new StackUnderflow(msg, stack);
+                        break;
                   case "UndefinedGlobal":
-                        throw new UndefinedGlobal(msg, stack);
+                        ex = new UndefinedGlobal(msg, stack);
+                        break;
                   case "MismatchedBlockArg":
-                        throw new MismatchedBlockArg(msg, stack);
+                        ex = new MismatchedBlockArg(msg, stack);
+                        break;
                   case "InternalVMException":
-                        throw new InternalVMException(e, msg, stack);
+                        ex = new InternalVMException(e, msg, stack);
+                        break;
                   case "UnknownClass":
-                        throw new UnknownClass(msg, stack);
+                        ex = new UnknownClass(msg, stack);
+                        break;
                   case "TypeError":
-                        throw new TypeError(msg, stack);
+                        ex = new TypeError(msg, stack);
+                        break;
                   case "UnknownField":
-                        throw new UnknownField(msg, stack);
+                        ex = new UnknownField(msg, stack);
+                        break;
+                  case "ExecutionLimitExceeded":
+                        ex = new ExecutionLimitExceeded(msg, stack);
+                        break;
+                  case "Deadlock":
+                        ex = new Deadlock(msg, stack);
+                        break;
+                  case "ActorFailed":
+                        ex = new ActorFailed(msg, stack);
+                        break;
+                  case "CompileError":
+                        ex = new CompileError(msg, stack);
+                        break;
                   default:
-                        throw new VMException(msg, stack);
+                        ex = new VMException(msg, stack);
+                        break;
+            }
+            stats.exceptionThrown(ex);
+            VMErrorEvent event = new VMErrorEvent();
+            if ( event.isEnabled() ) {
+                  event.vm = id;
+                  event.type = ex.getClass().getSimpleName();
+                  event.message = msg;
+                  event.vmStack = stack;
+                  event.commit();
             }
+            throw ex;
       }
 
       public void error(String msg) throws VMException {
             error("unknown", msg);
       }
 
+      /**
+       * Start notifying l of execution events. Attaching any listener
+       * switches exec() to the instrumented interpreter loop.
+       */
+      public void addListener(ExecutionListener l) {
+            listeners.add(l);
+            updateListener();
+      }
+
+      public void removeListener(ExecutionListener l) {
+            listeners.remove(l);
+            updateListener();
+      }
+
+      private void updateListener() {
+            if ( listeners.isEmpty() ) listener = null;
+            else if ( listeners.size()==1 ) listener = listeners.get(0);
+            else listener = new MulticastListener(listeners);
+      }
+
       public void pushContext(BlockContext ctx) {
             ctx.invokingContext = this.ctx;
+            ctx.depth = this.ctx==null ? 1 : this.ctx.depth + 1;
+            if ( ctx.depth > stats.maxContextDepth ) stats.maxContextDepth = ctx.depth;
             this.ctx = ctx;
       }
 
+      /**
+       * Find the method for selector starting at class cl, consulting the
+       * method cache first.
+       */
+      public STCompiledBlock lookupMethod(STMetaClassObject cl, String selector) {
+            int i = (cl.hashCode() ^ selector.hashCode()) & (METHOD_CACHE_SIZE - 1);
+            if ( cachedClasses[i]==cl && selector.equals(cachedSelectors[i]) ) {
+                  stats.methodCacheHits++;
+                  return cachedMethods[i];
+            }
+            stats.methodCacheMisses++;
+            STCompiledBlock m = cl.resolveMethod(selector);
+            if ( m!=null ) {
+                  cachedClasses[i] = cl;
+                  cachedSelectors[i] = selector;
+                  cachedMethods[i] = m;
+            }
+            return m;
+      }
+
+      /**
+       * Return a copy of this VM's counters
+       */
+      public VMStats getStats() {
+            return stats.snapshot();
+      }
+
+      /**
+       * Expose this VM's live counters in the platform MBean server as
+       * smalltalk:type=VirtualMachine,id=N. Long-running VMs should call
+       * {@link #unregisterMBean()} when done.
+       */
+      public ObjectName registerMBean() {
+            try {
+                  mbeanName = new ObjectName("smalltalk:type=VirtualMachine,id="+id);
+                  ManagementFactory.getPlatformMBeanServer().registerMBean(stats, mbeanName);
+                  return mbeanName;
+            }
+            catch (JMException jme) {
+                  throw new RuntimeException("can't register MBean for VM "+id, jme);
+            }
+      }
+
+      public void unregisterMBean() {
+            if ( mbeanName==null ) return;
+            try {
+                  ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+                  mbeanName = null;
+            }
+            catch (JMException jme) {
+                  throw new RuntimeException("can't unregister MBean for VM "+id, jme);
+            }
+      }
+
       public void popContext() {
             ctx = ctx.invokingContext;
       }
@@ -360,6 +901,17 @@ public class VirtualMachine {
             return new STString(this, s);
       }
 
+      /** The string that literal i of blk evaluates to */
+      protected STString literalString(STCompiledBlock blk, int i) {
+            STString[] strings = literalStrings.get(blk);
+            if ( strings==null ) {
+                  strings = new STString[blk.literals.length];
+                  literalStrings.put(blk, strings);
+            }
+            if ( strings[i]==null ) strings[i] = newString(blk.literals[i]);
+            return strings[i];
+      }
+
       public STBoolean newBoolean(boolean b) {
             return (STBoolean)systemDict.lookup(String.valueOf(b).toUpperCase());
       }
@@ -393,31 +945,15 @@ public class VirtualMachine {
 
       // D e b u g g i n g
 
-      void trace() {
-            traceInstr();
-            traceStack();
-      }
-
-      void traceInstr() {
-            String instr = Bytecode.disassembleInstruction(ctx.compiledBlock, ctx.ip);
-            System.out.printf("%-40s", instr);
-      }
-
-      void traceStack() {
-            BlockContext c = ctx;
-            List<String> a = new ArrayList<>();
-            while (c != null) {
-                  a.add(c.toString());
-                  c = c.invokingContext;
-            }
-            Collections.reverse(a);
-            System.out.println(Utils.join(a, ", "));
-      }
-
       public String getVMStackString() {
             StringBuilder stack = new StringBuilder();
             BlockContext c = ctx;
-            while (c != null) {
+            int frames = 0;
+            while (c != null && c.compiledBlock.bytecode.length > 0) { // stop at a process' end
+                  if ( frames++ == MAX_STACK_FRAMES ) { // recursive loops can nest millions deep
+                        stack.append("    ... ").append(c.depth).append(" more\n");
+                        break;
+                  }
                   int ip = c.prev_ip;
                   if (ip < 0) ip = c.ip;
                   String instr = Bytecode.disassembleInstruction(c.compiledBlock, ip);
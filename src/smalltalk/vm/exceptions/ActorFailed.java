@@ -0,0 +1,8 @@
+package smalltalk.vm.exceptions;
+
+/** An actor hit an error handling a message; reported to the main program */
+public class ActorFailed extends VMException {
+	public ActorFailed(String message, String stackTrace) {
+		super(message, stackTrace);
+	}
+}
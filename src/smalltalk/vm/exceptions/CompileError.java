@@ -0,0 +1,10 @@
+package smalltalk.vm.exceptions;
+
+/** A lazily compiled method's code couldn't be generated; see
+ *  {@link smalltalk.compiler.Compiler#lazy}
+ */
+public class CompileError extends VMException {
+	public CompileError(String message, String stackTrace) {
+		super(message, stackTrace);
+	}
+}
@@ -0,0 +1,8 @@
+package smalltalk.vm.exceptions;
+
+/** Every process is waiting on a semaphore so none can ever run */
+public class Deadlock extends VMException {
+	public Deadlock(String message, String stackTrace) {
+		super(message, stackTrace);
+	}
+}
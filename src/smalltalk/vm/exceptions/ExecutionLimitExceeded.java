@@ -0,0 +1,10 @@
+package smalltalk.vm.exceptions;
+
+/** Execution ran past {@link smalltalk.vm.VirtualMachine#maxInstructions}
+ *  or {@link smalltalk.vm.VirtualMachine#maxNanos}
+ */
+public class ExecutionLimitExceeded extends VMException {
+	public ExecutionLimitExceeded(String message, String stackTrace) {
+		super(message, stackTrace);
+	}
+}
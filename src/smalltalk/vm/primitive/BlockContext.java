@@ -67,6 +67,11 @@ public class BlockContext {
 	/** The operand stack pointer for this context; points at stack top */
 	public int sp = -1;
 
+	/** How many contexts are on the invokingContext chain, including this
+	 *  one; set by {@link VirtualMachine#pushContext}.
+	 */
+	public int depth;
+
 	// ----- BLOCK CONTEXT INFO -----
 
 	/*  The following two fields are used only by block executions.
@@ -159,6 +164,7 @@ public class BlockContext {
 		this.vm=vm;
 		this.compiledBlock=compiledBlock;
 		this.receiver=receiver;
+		vm.stats.contextsAllocated++;
 		this.stack = new STObject[INITIAL_STACK_SIZE];
 		for (int i=0;i<INITIAL_STACK_SIZE;i++){
 			stack[i]=vm.nil();
@@ -199,6 +205,7 @@ public class BlockContext {
 		this.vm=vm;
 		this.receiver=descriptor.receiver;
 		this.compiledBlock=descriptor.block;
+		vm.stats.contextsAllocated++;
 		stack = new STObject[INITIAL_STACK_SIZE];
 		locals = new STObject[descriptor.block.nargs+descriptor.block.nlocals];
 		enclosingContext = descriptor.enclosingContext;
@@ -221,7 +228,7 @@ public class BlockContext {
 			if(i<stack.length)
 				newStack[i]=stack[i];
 			else
-				newStack[i]=new STNil(this.vm);
+				newStack[i]=vm.nil();
 		}
 		return newStack;
 	}
@@ -231,17 +238,20 @@ public class BlockContext {
 	}
 	public STObject top() { return stack[sp]; }
 
-	/** If there is no enclosing context, we must be a method. */
-	public boolean isBlock() { return false; }
+	/** Method contexts are their own enclosingMethodContext; blocks point
+	 *  at the method that defined them. (We can't use enclosingContext as
+	 *  it's set to RETURNED once a method returns.)
+	 */
+	public boolean isBlock() { return enclosingMethodContext!=this; }
 
 	@Override
 	public String toString() {
 		StringBuilder buf = new StringBuilder();
 		BlockContext c = this;
-		STMetaClassObject enclosingClass = c.compiledBlock.enclosingClass;
+		String className = c.compiledBlock.className;
 		String s;
-		if ( enclosingClass!=null ) {
-			s = enclosingClass.name + ">>" + c.compiledBlock.name + c.vm.pLocals(c) + c.vm.pContextWorkStack(c);
+		if ( className!=null ) {
+			s = className + ">>" + c.compiledBlock.name + c.vm.pLocals(c) + c.vm.pContextWorkStack(c);
 		}
 		else {
 			s = c.compiledBlock.qualifiedName + c.vm.pLocals(c) + c.vm.pContextWorkStack(c);
@@ -0,0 +1,96 @@
+package smalltalk.vm.primitive;
+
+import org.antlr.symtab.FieldSymbol;
+import org.antlr.symtab.MethodSymbol;
+import smalltalk.compiler.STClass;
+import smalltalk.compiler.STMethod;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/** The part of a class that doesn't depend on the VM running it: name,
+ *  superclass name, fields (including inherited ones), and compiled
+ *  methods. Each VM wraps a layout in its own {@link STMetaClassObject}
+ *  but all VMs running the same code share one layout and therefore one
+ *  {@link STCompiledBlock} per method.
+ *
+ *  A method's code is loaded the first time any VM asks for it, such as
+ *  from an {@link smalltalk.vm.Image} or by generating code for a method
+ *  compiled lazily. Loading is thread-safe and happens at most once;
+ *  otherwise a layout never changes.
+ */
+public class ClassLayout {
+	public final String name;
+	public final String superClassName;
+
+	/** Unmodifiable */
+	public final List<String> fields;
+
+	/** Selectors in definition order */
+	public final List<String> selectors;
+
+	/** How to get the code for each selector */
+	protected final Map<String,Supplier<STCompiledBlock>> loaders;
+
+	protected final Map<String,STCompiledBlock> methods = new ConcurrentHashMap<>();
+
+	/** loaders must be in definition order */
+	public ClassLayout(String name, String superClassName, List<String> fields,
+					   LinkedHashMap<String,Supplier<STCompiledBlock>> loaders)
+	{
+		this.name = name;
+		this.superClassName = superClassName;
+		this.fields = Collections.unmodifiableList(new ArrayList<>(fields));
+		this.selectors = Collections.unmodifiableList(new ArrayList<>(loaders.keySet()));
+		this.loaders = loaders;
+	}
+
+	/** A layout whose methods come from the symbols in classSymbol;
+	 *  see {@link STMethod#getCompiledBlock}.
+	 */
+	public ClassLayout(STClass classSymbol) {
+		this(classSymbol.getName(), classSymbol.getSuperClassName(), fieldNames(classSymbol), loaders(classSymbol));
+	}
+
+	/** Return the code for selector, loading it if no VM has yet, or
+	 *  null if this class doesn't define selector.
+	 */
+	public STCompiledBlock getMethod(String selector) {
+		STCompiledBlock blk = methods.get(selector);
+		if ( blk!=null ) return blk;
+		Supplier<STCompiledBlock> loader = loaders.get(selector);
+		if ( loader==null ) return null;
+		return methods.computeIfAbsent(selector, s -> loader.get());
+	}
+
+	/** True if selector's code has been loaded */
+	public boolean isLoaded(String selector) {
+		return methods.containsKey(selector);
+	}
+
+	protected static List<String> fieldNames(STClass classSymbol) {
+		List<String> fields = new ArrayList<>();
+		for (FieldSymbol f : classSymbol.getFields()) {
+			fields.add(f.getName());
+		}
+		return fields;
+	}
+
+	protected static LinkedHashMap<String,Supplier<STCompiledBlock>> loaders(STClass classSymbol) {
+		LinkedHashMap<String,Supplier<STCompiledBlock>> loaders = new LinkedHashMap<>();
+		for (MethodSymbol m : classSymbol.getDefinedMethods()) {
+			loaders.put(m.getName(), ((STMethod)m)::getCompiledBlock);
+		}
+		return loaders;
+	}
+
+	@Override
+	public String toString() {
+		return "layout "+name;
+	}
+}
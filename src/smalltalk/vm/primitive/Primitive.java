@@ -1,5 +1,6 @@
 package smalltalk.vm.primitive;
 
+import smalltalk.vm.ParallelArrays;
 import smalltalk.vm.VirtualMachine;
 
 /** This is the list of primitive methods (like "native" in java
@@ -67,11 +68,71 @@ public enum Primitive {
 	BlockDescriptor_VALUE(BlockDescriptor::perform),
 	BlockDescriptor_VALUE_1_ARG(BlockDescriptor::perform),
 	BlockDescriptor_VALUE_2_ARGS(BlockDescriptor::perform),
+	BlockDescriptor_NEWPROCESS(STProcess::perform),
+
+	Process_Class_YIELD(STProcess::perform),
+	Process_Class_ACTIVE(STProcess::perform),
+	Process_RESUME(STProcess::perform),
+	Process_TERMINATE(STProcess::perform),
+	Process_PRIORITY(STProcess::perform),
+	Process_PRIORITY_SET(STProcess::perform),
+	Process_ISTERMINATED(STProcess::perform),
+
+	Semaphore_Class_NEW(STSemaphore::perform),
+	Semaphore_WAIT(STSemaphore::perform),
+	Semaphore_SIGNAL(STSemaphore::perform),
+
+	Delay_Class_FOR_MILLISECONDS(STDelay::perform),
+	Delay_WAIT(STDelay::perform),
+
+	Actor_Class_SPAWN(STActor::perform),
+	Actor_Class_CURRENT(STActor::perform),
+	Actor_Class_RECEIVE(STActor::perform),
+	Actor_SEND(STActor::perform),
+	Actor_SEND_WITH(STActor::perform),
+	Actor_SEND_WITH_WITH(STActor::perform),
 
 	Array_Class_NEW(STArray::perform),
 	Array_SIZE(STArray::perform),
 	Array_AT(STArray::perform),
 	Array_AT_PUT(STArray::perform),
+	Array_PARALLEL_DO(ParallelArrays::perform),
+	Array_PARALLEL_COLLECT(ParallelArrays::perform),
+	Array_PARALLEL_INJECT_CHUNKS(ParallelArrays::perform),
+
+	Dictionary_Class_NEW(STDictionary::perform),
+	IdentityDictionary_Class_NEW(STDictionary::perform),
+	Dictionary_AT(STDictionary::perform),
+	Dictionary_AT_PUT(STDictionary::perform),
+	Dictionary_INCLUDES_KEY(STDictionary::perform),
+	Dictionary_REMOVE_KEY(STDictionary::perform),
+	Dictionary_SIZE(STDictionary::perform),
+	Dictionary_KEYS(STDictionary::perform),
+	Dictionary_VALUES(STDictionary::perform),
+	Dictionary_ASSOCIATIONS(STDictionary::perform),
+	Dictionary_REMOVE_ALL(STDictionary::perform),
+
+	Set_Class_NEW(STSet::perform),
+	Set_ADD(STSet::perform),
+	Set_INCLUDES(STSet::perform),
+	Set_REMOVE(STSet::perform),
+	Set_SIZE(STSet::perform),
+	Set_ASARRAY(STSet::perform),
+	Set_REMOVE_ALL(STSet::perform),
+
+	OrderedCollection_Class_NEW(STOrderedCollection::perform),
+	OrderedCollection_ADD_FIRST(STOrderedCollection::perform),
+	OrderedCollection_ADD_LAST(STOrderedCollection::perform),
+	OrderedCollection_REMOVE_FIRST(STOrderedCollection::perform),
+	OrderedCollection_REMOVE_LAST(STOrderedCollection::perform),
+	OrderedCollection_FIRST(STOrderedCollection::perform),
+	OrderedCollection_LAST(STOrderedCollection::perform),
+	OrderedCollection_AT(STOrderedCollection::perform),
+	OrderedCollection_AT_PUT(STOrderedCollection::perform),
+	OrderedCollection_SIZE(STOrderedCollection::perform),
+	OrderedCollection_ASARRAY(STOrderedCollection::perform),
+	OrderedCollection_REMOVE_ALL(STOrderedCollection::perform),
+	OrderedCollection_DO(STOrderedCollection::perform),
 
 	TranscriptStream_SHOW(VirtualMachine::TranscriptStream_SHOW)
 	;
@@ -0,0 +1,74 @@
+package smalltalk.vm.primitive;
+
+import smalltalk.vm.Actor;
+import smalltalk.vm.ActorMessage;
+import smalltalk.vm.ActorSystem;
+import smalltalk.vm.VirtualMachine;
+
+/** Backs Smalltalk class Actor: this VM's handle on an {@link Actor},
+ *  which may run in any VM of the {@link ActorSystem}. Sending to it
+ *  queues a copy of the message and returns at once.
+ */
+public class STActor extends STObject {
+	public final Actor actor;
+
+	public STActor(VirtualMachine vm, Actor actor) {
+		super(vm.lookupClass("Actor"));
+		this.actor = actor;
+	}
+
+	public static STObject perform(BlockContext ctx, int nArgs, Primitive primitive) {
+		VirtualMachine vm = ctx.vm;
+		vm.assertNumOperands(nArgs+1); // ensure args + receiver
+		int firstArg = ctx.sp - nArgs + 1;
+		STObject receiver = ctx.stack[firstArg-1];
+		Actor self = vm.getActor();
+		switch ( primitive ) {
+			case Actor_Class_SPAWN :
+				STObject cl = ctx.stack[firstArg];
+				if ( !(cl instanceof STMetaClassObject) ) {
+					vm.error("TypeError", "spawn: expects a class not "+cl.getSTClass().getName());
+				}
+				ctx.sp -= 2;
+				return new STActor(vm, self.system.spawn(vm, ((STMetaClassObject)cl).getName()));
+			case Actor_Class_CURRENT :
+				ctx.sp--;
+				return new STActor(vm, self);
+			case Actor_Class_RECEIVE :
+				if ( !self.isMain() ) {
+					vm.error("only the main program can receive:; actors get messages through their behavior");
+				}
+				STObject handler = ctx.stack[firstArg];
+				ActorMessage m = null;
+				try {
+					m = self.receive();
+				}
+				catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					vm.error("InternalVMException", ie, "interrupted waiting for a message");
+				}
+				STObject[] args = m.thaw(vm);
+				// Send the message to handler in place of this primitive
+				ctx.sp -= 2;
+				ctx.push(handler);
+				for (STObject arg : args) ctx.push(arg);
+				vm.send(args.length, m.selector);
+				return null;
+			case Actor_SEND :
+			case Actor_SEND_WITH :
+			case Actor_SEND_WITH_WITH :
+				String selector = ((STString)ctx.stack[firstArg]).s;
+				STObject[] sendArgs = new STObject[nArgs-1];
+				System.arraycopy(ctx.stack, firstArg+1, sendArgs, 0, sendArgs.length);
+				((STActor)receiver).actor.deliver(ActorMessage.freeze(vm, selector, sendArgs));
+				ctx.sp -= nArgs+1;
+				return receiver;
+		}
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return "an Actor";
+	}
+}
@@ -60,7 +60,7 @@ public class STArray extends STObject {
 		for(STObject o:elements){
 			arrayStr+=(o.toString()+". ");
 		}
-		arrayStr = arrayStr.substring(0,arrayStr.length()-2);
+		if (!arrayStr.isEmpty()) arrayStr = arrayStr.substring(0,arrayStr.length()-2);
 		return  "{"+arrayStr+"}";
 	}
 }
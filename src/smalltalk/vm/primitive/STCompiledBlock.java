@@ -2,8 +2,10 @@ package smalltalk.vm.primitive;
 
 import org.antlr.symtab.Scope;
 import org.antlr.symtab.Utils;
+import org.antlr.v4.runtime.ParserRuleContext;
 import org.stringtemplate.v4.ST;
 import smalltalk.compiler.STBlock;
+import smalltalk.compiler.STClass;
 import smalltalk.compiler.STMethod;
 import smalltalk.compiler.STPrimitiveMethod;
 import smalltalk.vm.Bytecode;
@@ -22,11 +24,11 @@ import java.util.List;
  *  method.
  *
  *  All blocks can reference literals method names and string literals ref'd within.
- *  These are stored in the literals field. The associated STString objects
- *  are cached in literalsAsSTStrings.
+ *  These are stored in the literals field.
  *
- *  This object has a reference to the lexically enclosing class' metaclass,
- *  which is set by {@link STMetaClassObject} during construction.
+ *  Nothing in this object changes after construction, and it refers to
+ *  no VM, so any number of {@link smalltalk.vm.VirtualMachine}s on any
+ *  threads can share it. Don't modify the arrays.
  */
 public class STCompiledBlock {
 	public static final String testStringTemplate =
@@ -41,7 +43,9 @@ public class STCompiledBlock {
 			    "    <blocks; separator={<\\n>}>" +
 			    "<endif>";
 
-	/** currently unused, but would be used to serialize a compiled block to disk */
+	/** A readable dump of the block; see {@link smalltalk.vm.Image} for the
+	 *  binary form used to save compiled code to disk.
+	 */
 	public static final String serializeTemplate =
 		  "name: <name>\n" +
 			    "qualifiedName: <qualifiedName>\n" +
@@ -55,22 +59,21 @@ public class STCompiledBlock {
 			    "<endif>";
 
 	/** The simple name for a block or method like at:put: or foo:-local0 */
-	public String name;
+	public final String name;
 
 	/** The fully qualified name for this block or method like foo>>x or T>>x */
-	public String qualifiedName;
+	public final String qualifiedName;
 
-	/** Of which class is this block a member? */
-	public STMetaClassObject enclosingClass;
+	/** Of which class is this block a member? A name, not a metaclass,
+	 *  since each VM has its own metaclass objects.
+	 */
+	public final String className;
 
 	/** The set of strings and symbols referenced by the {@link #bytecode} field. */
-	public String[]   literals;
-
-	/** Cache STString objects for literals */
-	public STString[] literalsAsSTStrings;
+	public final String[]   literals;
 
 	/** The byte code instructions for this specific block, if not primitive. */
-	public byte[]     bytecode;
+	public final byte[]     bytecode;
 
 	/** If this is a compiled method, not just a block, this is the list
 	 *  of all nested blocks within the method. The BLOCK instruction refers to
@@ -79,7 +82,7 @@ public class STCompiledBlock {
 	 *
 	 *  This is unused for [...] blocks (i.e., not methods).
 	 */
-	public STCompiledBlock[] blocks;
+	public final STCompiledBlock[] blocks;
 
 	/** The fixed number of arguments taken by this method */
 	public final int nargs;
@@ -95,7 +98,14 @@ public class STCompiledBlock {
 	/** True if method was defined as class method in Smalltalk */
 	public final boolean isClassMethod;
 
-	public STCompiledBlock(STBlock blk) {
+	/** The line within the source file where this block or method starts;
+	 *  0 if unknown. Used for reporting, e.g., by profilers.
+	 */
+	public final int line;
+
+	public STCompiledBlock(STBlock blk, byte[] bytecode, String[] literals) {
+		this.bytecode = bytecode;
+		this.literals = literals;
 		isClassMethod = blk.isMethod()&&((STMethod)blk).isClassMethod;
 		if(isClassMethod){
 			name = "static "+blk.getName();
@@ -104,6 +114,11 @@ public class STCompiledBlock {
 		}
 
 		this.qualifiedName = blk.getQualifiedName(">>");
+		Scope s = blk;
+		while ( s!=null && !(s instanceof STClass) ) s = s.getEnclosingScope();
+		className = s!=null ? s.getName() : null;
+		ParserRuleContext tree = blk.getDefNode();
+		line = tree!=null && tree.getStart()!=null ? tree.getStart().getLine() : 0;
 		this.nargs=blk.nargs();
 		this.nlocals=blk.nlocals();
 
@@ -121,11 +136,31 @@ public class STCompiledBlock {
 				blocks[blockIndex]=((STBlock)stBlocks.get(i)).compiledBlock;
 			}
 		}
+		else {
+			blocks = null;
+		}
 
 	}
 
-	public void initialLiteralAsStrings(){
-		literalsAsSTStrings = new STString[literals.length];
+	/** Create a block from its parts rather than from a symbol, such as
+	 *  when loading an {@link smalltalk.vm.Image}. blocks is null
+	 *  unless this is a method.
+	 */
+	public STCompiledBlock(String className, String name, String qualifiedName,
+						   int nargs, int nlocals, Primitive primitive, boolean isClassMethod,
+						   int line, String[] literals, byte[] bytecode, STCompiledBlock[] blocks)
+	{
+		this.className = className;
+		this.name = name;
+		this.qualifiedName = qualifiedName;
+		this.nargs = nargs;
+		this.nlocals = nlocals;
+		this.primitive = primitive;
+		this.isClassMethod = isClassMethod;
+		this.line = line;
+		this.literals = literals;
+		this.bytecode = bytecode;
+		this.blocks = blocks;
 	}
 
 	public boolean isPrimitive() { return primitive!=null; }
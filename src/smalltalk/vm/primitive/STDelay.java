@@ -0,0 +1,44 @@
+package smalltalk.vm.primitive;
+
+import smalltalk.vm.ProcessScheduler;
+import smalltalk.vm.VirtualMachine;
+
+import java.util.concurrent.TimeUnit;
+
+/** Backs Smalltalk class Delay. wait suspends the active process, not
+ *  the VM, for a number of milliseconds; other processes run meanwhile.
+ */
+public class STDelay extends STObject {
+	public final long nanos;
+
+	public STDelay(VirtualMachine vm, long millis) {
+		super(vm.lookupClass("Delay"));
+		this.nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	public static STObject perform(BlockContext ctx, int nArgs, Primitive primitive) {
+		VirtualMachine vm = ctx.vm;
+		vm.assertNumOperands(nArgs+1); // ensure args + receiver
+		int firstArg = ctx.sp - nArgs + 1;
+		STObject receiver = ctx.stack[firstArg-1];
+		switch ( primitive ) {
+			case Delay_Class_FOR_MILLISECONDS :
+				int millis = ((STInteger)ctx.stack[firstArg]).v;
+				ctx.sp -= 2;
+				return new STDelay(vm, millis);
+			case Delay_WAIT :
+				ctx.sp--;
+				ctx.push(receiver); // before the switch
+				ProcessScheduler scheduler = vm.getScheduler();
+				scheduler.sleep(((STDelay)receiver).nanos);
+				scheduler.primitiveDone();
+				break;
+		}
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return "a Delay";
+	}
+}
@@ -0,0 +1,264 @@
+package smalltalk.vm.primitive;
+
+import smalltalk.vm.VirtualMachine;
+
+import java.util.Arrays;
+
+/** Backs Smalltalk classes Dictionary and IdentityDictionary and, through
+ *  {@link STSet}, Set. A hash table with open addressing: index holds,
+ *  for each slot, 1 + the position of an entry in keys/values/hashes,
+ *  which stay in insertion order so iteration is in insertion order.
+ *  Linear probing; the table doubles when over half its slots have been
+ *  used, and removed entries are squeezed out then.
+ *
+ *  Strings, integers, floats, and characters are hashed and compared in
+ *  Java, as are nil, booleans, classes, and objects whose classes don't
+ *  override hash or =, which compare by identity. Only for other keys
+ *  does the table send hash and = back into Smalltalk.
+ *
+ *  An IdentityDictionary compares keys with ==, except that integers and
+ *  characters with the same value are the same key, as if they were
+ *  immediate values.
+ */
+public class STDictionary extends STObject {
+	public static final int INITIAL_CAPACITY = 8; // slots; a power of 2
+
+	protected static final int EMPTY = 0;
+	protected static final int REMOVED = -1;
+
+	public final boolean identity;
+
+	protected int[] index = new int[INITIAL_CAPACITY];
+
+	/** Entries, in insertion order; a removed entry's key is null */
+	protected STObject[] keys = new STObject[INITIAL_CAPACITY / 2];
+	protected STObject[] values; // null for a set
+	protected int[] hashes = new int[INITIAL_CAPACITY / 2];
+
+	/** Entries appended so far, including removed ones */
+	protected int used;
+
+	protected int size;
+
+	public STDictionary(STMetaClassObject metaclass, boolean identity, boolean hasValues) {
+		super(metaclass);
+		this.identity = identity;
+		if ( hasValues ) values = new STObject[keys.length];
+	}
+
+	public static STObject perform(BlockContext ctx, int nArgs, Primitive primitive) {
+		VirtualMachine vm = ctx.vm;
+		vm.assertNumOperands(nArgs+1); // ensure args + receiver
+		int firstArg = ctx.sp - nArgs + 1;
+		STObject receiver = ctx.stack[firstArg-1];
+		if ( primitive==Primitive.Dictionary_Class_NEW || primitive==Primitive.IdentityDictionary_Class_NEW ) {
+			ctx.sp--;
+			return new STDictionary((STMetaClassObject)receiver,
+									primitive==Primitive.IdentityDictionary_Class_NEW, true);
+		}
+		STDictionary d = (STDictionary)receiver;
+		STObject key = nArgs>0 ? ctx.stack[firstArg] : null;
+		STObject result;
+		int e;
+		switch ( primitive ) {
+			case Dictionary_AT :
+				e = d.find(vm, key);
+				result = e>=0 ? d.values[e] : vm.nil();
+				break;
+			case Dictionary_AT_PUT :
+				STObject value = ctx.stack[firstArg+1];
+				e = d.add(vm, key); // before reading values, which add may replace
+				d.values[e] = value;
+				result = value;
+				break;
+			case Dictionary_INCLUDES_KEY :
+				result = vm.newBoolean(d.find(vm, key)>=0);
+				break;
+			case Dictionary_REMOVE_KEY :
+				e = d.remove(vm, key);
+				result = e>=0 ? d.values[e] : vm.nil();
+				if ( e>=0 ) d.values[e] = null;
+				break;
+			case Dictionary_SIZE :
+				result = vm.newInteger(d.size);
+				break;
+			case Dictionary_KEYS :
+				result = new STArray(vm, d.entries(d.keys));
+				break;
+			case Dictionary_VALUES :
+				result = new STArray(vm, d.entries(d.values));
+				break;
+			case Dictionary_ASSOCIATIONS :
+				result = new STArray(vm, d.associations(vm));
+				break;
+			case Dictionary_REMOVE_ALL :
+				d.removeAll();
+				result = d;
+				break;
+			default :
+				result = vm.nil();
+				break;
+		}
+		ctx.sp -= nArgs+1;
+		return result;
+	}
+
+	/** Return key's entry or -1 */
+	public int find(VirtualMachine vm, STObject key) {
+		int h = hash(vm, key);
+		int mask = index.length - 1;
+		for (int slot = h & mask; ; slot = (slot + 1) & mask) {
+			int i = index[slot];
+			if ( i==EMPTY ) return -1;
+			if ( i!=REMOVED ) {
+				int e = i - 1;
+				if ( hashes[e]==h && equal(vm, keys[e], key) ) return e;
+			}
+		}
+	}
+
+	/** Return key's entry, adding one if it's not there */
+	public int add(VirtualMachine vm, STObject key) {
+		int e = find(vm, key);
+		if ( e>=0 ) return e;
+		if ( (used + 1) * 2 > index.length ) resize();
+		int h = hash(vm, key);
+		int mask = index.length - 1;
+		int slot = h & mask;
+		while ( index[slot]!=EMPTY ) slot = (slot + 1) & mask; // removed slots stay used until resize
+		if ( used==keys.length ) {
+			keys = Arrays.copyOf(keys, used * 2);
+			hashes = Arrays.copyOf(hashes, used * 2);
+			if ( values!=null ) values = Arrays.copyOf(values, used * 2);
+		}
+		e = used++;
+		keys[e] = key;
+		hashes[e] = h;
+		index[slot] = e + 1;
+		size++;
+		return e;
+	}
+
+	/** Remove key and return its old entry, or -1 if it's not there */
+	public int remove(VirtualMachine vm, STObject key) {
+		int h = hash(vm, key);
+		int mask = index.length - 1;
+		for (int slot = h & mask; ; slot = (slot + 1) & mask) {
+			int i = index[slot];
+			if ( i==EMPTY ) return -1;
+			if ( i!=REMOVED ) {
+				int e = i - 1;
+				if ( hashes[e]==h && equal(vm, keys[e], key) ) {
+					index[slot] = REMOVED;
+					keys[e] = null;
+					size--;
+					return e;
+				}
+			}
+		}
+	}
+
+	public void removeAll() {
+		index = new int[INITIAL_CAPACITY];
+		keys = new STObject[INITIAL_CAPACITY / 2];
+		hashes = new int[INITIAL_CAPACITY / 2];
+		if ( values!=null ) values = new STObject[keys.length];
+		used = 0;
+		size = 0;
+	}
+
+	/** Squeeze out removed entries and rebuild index with room for twice
+	 *  the live entries
+	 */
+	protected void resize() {
+		int capacity = INITIAL_CAPACITY;
+		while ( capacity < size * 4 ) capacity *= 2;
+		int[] newIndex = new int[capacity];
+		int mask = capacity - 1;
+		int n = 0;
+		for (int e = 0; e < used; e++) {
+			if ( keys[e]==null ) continue;
+			keys[n] = keys[e];
+			hashes[n] = hashes[e];
+			if ( values!=null ) values[n] = values[e];
+			int slot = hashes[n] & mask;
+			while ( newIndex[slot]!=EMPTY ) slot = (slot + 1) & mask;
+			newIndex[slot] = n + 1;
+			n++;
+		}
+		Arrays.fill(keys, n, used, null);
+		if ( values!=null ) Arrays.fill(values, n, used, null);
+		used = n;
+		index = newIndex;
+	}
+
+	/** The live elements of keys or values, in insertion order */
+	protected STObject[] entries(STObject[] a) {
+		STObject[] result = new STObject[size];
+		int n = 0;
+		for (int e = 0; e < used; e++) {
+			if ( keys[e]!=null ) result[n++] = a[e];
+		}
+		return result;
+	}
+
+	protected STObject[] associations(VirtualMachine vm) {
+		STMetaClassObject association = vm.lookupClass("Association");
+		int key = association.fields.indexOf("_key");
+		int value = association.fields.indexOf("_value");
+		STObject[] result = new STObject[size];
+		int n = 0;
+		for (int e = 0; e < used; e++) {
+			if ( keys[e]==null ) continue;
+			STObject a = new STObject(association);
+			a.fields[key] = keys[e];
+			a.fields[value] = values[e];
+			result[n++] = a;
+		}
+		return result;
+	}
+
+	protected int hash(VirtualMachine vm, STObject key) {
+		int h;
+		if ( key instanceof STString ) h = ((STString)key).s.hashCode();
+		else if ( key instanceof STInteger ) h = ((STInteger)key).v;
+		else if ( key instanceof STCharacter ) h = ((STCharacter)key).c;
+		else if ( key instanceof STFloat && !identity ) h = Float.hashCode(((STFloat)key).v);
+		else if ( identity || usesIdentity(vm, key) ) h = System.identityHashCode(key);
+		else {
+			STObject hash = vm.call(key, "hash");
+			if ( !(hash instanceof STInteger) ) {
+				vm.error("TypeError", key.getSTClass().getName()+">>hash answered "+hash+" not an Integer");
+			}
+			h = ((STInteger)hash).v;
+		}
+		return h ^ (h >>> 16); // spread high bits into the slot mask
+	}
+
+	protected boolean equal(VirtualMachine vm, STObject stored, STObject key) {
+		if ( STObject.same(stored, key) ) return true;
+		if ( identity || key instanceof STInteger || key instanceof STCharacter ) return false;
+		if ( key instanceof STString ) {
+			return stored instanceof STString && ((STString)stored).s.equals(((STString)key).s);
+		}
+		if ( key instanceof STFloat ) {
+			return stored instanceof STFloat && ((STFloat)stored).v==((STFloat)key).v;
+		}
+		if ( usesIdentity(vm, key) ) return false;
+		STObject eq = vm.call(key, "=", stored);
+		return eq instanceof STBoolean && ((STBoolean)eq).b;
+	}
+
+	/** Do key's hash and = compare by identity, as Object's do? */
+	protected static boolean usesIdentity(VirtualMachine vm, STObject key) {
+		if ( key instanceof STNil || key instanceof STBoolean || key instanceof STMetaClassObject ) return true;
+		STMetaClassObject cl = key.getSTClass();
+		return vm.lookupMethod(cl, "hash").primitive==Primitive.Object_HASH &&
+			   vm.lookupMethod(cl, "=").className.equals("Object");
+	}
+
+	@Override
+	public String toString() {
+		return "a "+getSTClass().getName();
+	}
+}
@@ -9,6 +9,7 @@ public class STInteger extends STObject {
 	public STInteger(VirtualMachine vm, int v) {
 		super(vm.lookupClass("Integer"));
 		this.v = v;
+		vm.stats.integersAllocated++;
 	}
 
 	public static STObject perform(BlockContext ctx, int nArgs, Primitive primitive) {
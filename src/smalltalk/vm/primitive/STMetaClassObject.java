@@ -1,13 +1,10 @@
 package smalltalk.vm.primitive;
 
-import org.antlr.symtab.FieldSymbol;
-import org.antlr.symtab.MethodSymbol;
 import org.stringtemplate.v4.ST;
 import smalltalk.compiler.STClass;
-import smalltalk.compiler.STMethod;
 import smalltalk.vm.VirtualMachine;
+import smalltalk.vm.exceptions.CompileError;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,33 +22,50 @@ public class STMetaClassObject extends STObject {
 	public final String name;
 	public final STMetaClassObject superClass;
 
+	/** Shared with every other VM running this class */
+	public final ClassLayout layout;
+
+	/** Same list as {@link ClassLayout#fields} */
 	public final List<String> fields;
-	public final Map<String,STCompiledBlock> methods;
+
+	/** This VM's cache of the methods it has looked up in {@link #layout} */
+	public final Map<String,STCompiledBlock> methods = new HashMap<>();
 
 	public STMetaClassObject(VirtualMachine vm, STClass classSymbol) {
+		this(vm, classSymbol.getLayout());
+	}
+
+	/** Create vm's metaclass for layout; layout's superclass must
+	 *  already be defined in vm.
+	 */
+	public STMetaClassObject(VirtualMachine vm, ClassLayout layout) {
 		super(null); // metaclass for a metaclass is 'this' but 'this' doesn't exist yet; see override of getSTClass()
 		this.vm = vm;
+		this.layout = layout;
+		name = layout.name;
+		superClass = vm.systemDict.lookupClass(layout.superClassName);
+		fields = layout.fields; // includes inherited fields
+	}
 
-		name = classSymbol.getName();
-		superClass = vm.systemDict.lookupClass(classSymbol.getSuperClassName());
-
-		fields = new ArrayList<>();
-		// make space for ALL fields, including inherited ones
-		for (FieldSymbol f : classSymbol.getFields()) {
-			fields.add(f.getName());
+	/** Get method name from the layout, which decodes it from an image
+	 *  or generates its code if no VM has asked for it yet
+	 */
+	protected STCompiledBlock loadMethod(String name) {
+		STCompiledBlock blk = null;
+		try {
+			blk = layout.getMethod(name);
 		}
-		// for all methods defined in classSymbol, map method name to its compiled method
-		methods = new HashMap<>();
-		for (MethodSymbol m : classSymbol.getDefinedMethods()) {
-			methods.put(m.getName(), ((STMethod)m).compiledBlock);
+		catch (CompileError e) { // from the compiler, which has no VM stack to show
+			vm.error("CompileError", e.getMessage());
 		}
+		if ( blk!=null ) methods.put(name, blk);
+		return blk;
+	}
 
-		// set enclosingClass for all nested blocks within method
-		for (STCompiledBlock blk : methods.values()){
-			blk.enclosingClass = this;
-			for (STCompiledBlock blk1 : blk.blocks){
-				blk1.enclosingClass = this;
-			}
+	/** Load any methods not looked up yet, in definition order */
+	public void loadAllMethods() {
+		for (String name : layout.selectors) {
+			if ( !methods.containsKey(name) ) loadMethod(name);
 		}
 	}
 
@@ -84,6 +98,9 @@ public class STMetaClassObject extends STObject {
 	public STCompiledBlock resolveMethod(String name) {
 //		return methods.get(name);
 		STCompiledBlock block = methods.get(name);
+		if(null == block){
+			block = loadMethod(name);
+		}
 		if(null == block){
 			block = superClass.resolveMethod(name);
 		}
@@ -105,6 +122,7 @@ public class STMetaClassObject extends STObject {
 		template.add("name", name);
 		template.add("superClass", superClass);
 		template.add("fields", fields);
+		loadAllMethods();
 		template.add("methods", map(methods.values(), STCompiledBlock::toTestString));
 		return template.render();
 	}
@@ -23,10 +23,14 @@ public class STObject {
 		if(metaclass!=null){
 			fields = new STObject[metaclass.fields.size()];
 			for(int i=0;i<fields.length;i++){
-				fields[i]=new STNil(metaclass.vm);
+				fields[i]=metaclass.vm.nil();
 			}
 		}else
 			fields=null;
+		if ( metaclass!=null ) {
+			metaclass.vm.stats.objectsAllocated++;
+			if ( metaclass.vm.listener!=null ) metaclass.vm.listener.allocated(this);
+		}
 		// Create empty slot for each field directly defined by metaclass
 		// plus any fields inherited from super class.
 		// Note: native backing objects like STBoolean do not have smalltalk-visible fields
@@ -82,7 +86,7 @@ public class STObject {
 				STObject y = ctx.stack[firstArg]; // get right operand (first arg)
 				//System.out.println("SAME "+x+", "+y);
 				ctx.sp -= 2;
-				result = vm.newBoolean(x.toString() == y.toString());
+				result = vm.newBoolean(same(x, y));
 				break;
 			case Object_HASH:
 				ctx.pop();
@@ -92,6 +96,21 @@ public class STObject {
 		return result;
 	}
 
+	/** Smalltalk ==: the same object, where integers and characters with
+	 *  the same value count as the same object, as if they were immediate
+	 *  values. nil, true, and false are already one object per VM.
+	 */
+	public static boolean same(STObject x, STObject y) {
+		if ( x==y ) return true;
+		if ( x instanceof STInteger ) {
+			return y instanceof STInteger && ((STInteger)x).v==((STInteger)y).v;
+		}
+		if ( x instanceof STCharacter ) {
+			return y instanceof STCharacter && ((STCharacter)x).c==((STCharacter)y).c;
+		}
+		return false;
+	}
+
 	@Override
 	public String toString() {
 		if ( metaclass==null ) return "<no classdef>";
@@ -0,0 +1,215 @@
+package smalltalk.vm.primitive;
+
+import smalltalk.vm.Bytecode;
+import smalltalk.vm.VirtualMachine;
+
+/** Backs Smalltalk class OrderedCollection: a growable circular buffer,
+ *  so adding and removing at either end takes amortized constant time
+ *  and indexing takes constant time. One array slot per element, where
+ *  a LinkedList needs a Link object per element.
+ *
+ *  do: runs the block once per element without a nested interpreter
+ *  loop and without recursion. The primitive pushes a small driver
+ *  context, {@link #DO_LOOP}, whose one instruction sends do: to an
+ *  {@link Iteration}; each time the block returns into the driver, that
+ *  send steps to the next element. A ^ in the block unwinds past the
+ *  driver like any other context, and processes can switch inside the
+ *  block as usual.
+ */
+public class STOrderedCollection extends STObject {
+	public static final int INITIAL_CAPACITY = 8; // a power of 2
+
+	/** The driver for do:, "send 1, 'do:'" to the Iteration on its stack */
+	public static final STCompiledBlock DO_LOOP =
+		new STCompiledBlock("OrderedCollection", "do:", "OrderedCollection>>do:", 0, 0, null, false, 0,
+							new String[] {"do:"}, new byte[] {Bytecode.SEND, 0, 1, 0, 0}, null);
+
+	/** The state of a do: in progress; the receiver of {@link #DO_LOOP} */
+	protected static class Iteration extends STObject {
+		final STOrderedCollection collection;
+		final BlockDescriptor blk;
+		int next; // index of the element to pass next
+
+		Iteration(VirtualMachine vm, STOrderedCollection collection, BlockDescriptor blk) {
+			super(vm.lookupClass("OrderedCollection")); // not a subclass, which might override do:
+			this.collection = collection;
+			this.blk = blk;
+		}
+
+		@Override
+		public String toString() {
+			return "a do: over "+collection;
+		}
+	}
+
+	protected STObject[] elements = new STObject[INITIAL_CAPACITY];
+
+	/** Where the first element is in elements */
+	protected int first;
+
+	protected int size;
+
+	public STOrderedCollection(STMetaClassObject metaclass) {
+		super(metaclass);
+	}
+
+	public static STObject perform(BlockContext ctx, int nArgs, Primitive primitive) {
+		VirtualMachine vm = ctx.vm;
+		vm.assertNumOperands(nArgs+1); // ensure args + receiver
+		int firstArg = ctx.sp - nArgs + 1;
+		STObject receiver = ctx.stack[firstArg-1];
+		if ( primitive==Primitive.OrderedCollection_Class_NEW ) {
+			ctx.sp--;
+			return new STOrderedCollection((STMetaClassObject)receiver);
+		}
+		if ( primitive==Primitive.OrderedCollection_DO ) {
+			do_(vm, ctx, receiver, ctx.stack[firstArg]);
+			return null;
+		}
+		STOrderedCollection c = (STOrderedCollection)receiver;
+		STObject x = nArgs>0 ? ctx.stack[firstArg] : null;
+		STObject result;
+		switch ( primitive ) {
+			case OrderedCollection_ADD_FIRST :
+				c.addFirst(x);
+				result = x;
+				break;
+			case OrderedCollection_ADD_LAST :
+				c.addLast(x);
+				result = x;
+				break;
+			case OrderedCollection_REMOVE_FIRST :
+				c.checkNotEmpty(vm, "removeFirst");
+				result = c.removeFirst();
+				break;
+			case OrderedCollection_REMOVE_LAST :
+				c.checkNotEmpty(vm, "removeLast");
+				result = c.removeLast();
+				break;
+			case OrderedCollection_FIRST :
+				c.checkNotEmpty(vm, "first");
+				result = c.at(0);
+				break;
+			case OrderedCollection_LAST :
+				c.checkNotEmpty(vm, "last");
+				result = c.at(c.size-1);
+				break;
+			case OrderedCollection_AT :
+				result = c.at(c.index(vm, x));
+				break;
+			case OrderedCollection_AT_PUT :
+				result = ctx.stack[firstArg+1];
+				c.elements[(c.first + c.index(vm, x)) & (c.elements.length-1)] = result;
+				break;
+			case OrderedCollection_SIZE :
+				result = vm.newInteger(c.size);
+				break;
+			case OrderedCollection_ASARRAY :
+				STObject[] a = new STObject[c.size];
+				for (int i = 0; i < c.size; i++) a[i] = c.at(i);
+				result = new STArray(vm, a);
+				break;
+			case OrderedCollection_REMOVE_ALL :
+				c.elements = new STObject[INITIAL_CAPACITY];
+				c.first = 0;
+				c.size = 0;
+				result = c;
+				break;
+			default :
+				result = vm.nil();
+				break;
+		}
+		ctx.sp -= nArgs+1;
+		return result;
+	}
+
+	/** Start a do: sent in ctx by pushing the driver context, or, sent
+	 *  by the driver, pass the next element to the block; the argument is
+	 *  then the block's last result. Like any instruction, each send
+	 *  either invokes one context or returns from one.
+	 */
+	protected static void do_(VirtualMachine vm, BlockContext ctx, STObject receiver, STObject arg) {
+		ctx.sp -= 2;
+		if ( !(receiver instanceof Iteration) ) {
+			if ( !(arg instanceof BlockDescriptor) ) {
+				vm.error("TypeError", "do: expects a block not "+arg.getSTClass().getName());
+			}
+			BlockDescriptor blk = (BlockDescriptor)arg;
+			if ( blk.block.nargs!=1 ) {
+				vm.error("MismatchedBlockArg", "do: expects a block of 1 argument(s)");
+			}
+			BlockContext loop = new BlockContext(vm, DO_LOOP, new Iteration(vm, (STOrderedCollection)receiver, blk));
+			loop.push(loop.receiver);
+			loop.push(vm.nil()); // as if the block had run once already
+			vm.pushContext(loop);
+			return;
+		}
+		Iteration it = (Iteration)receiver;
+		if ( it.next >= it.collection.size ) { // done; answer the collection
+			vm.popContext();
+			vm.ctx.push(it.collection);
+			return;
+		}
+		ctx.ip = 0; // send to it again when the block returns
+		ctx.push(it);
+		BlockContext blkCtx = new BlockContext(vm, it.blk);
+		vm.pushContext(blkCtx);
+		blkCtx.locals[0] = it.collection.at(it.next++);
+	}
+
+	public STObject at(int i) {
+		return elements[(first + i) & (elements.length-1)];
+	}
+
+	public void addFirst(STObject x) {
+		if ( size==elements.length ) grow();
+		first = (first - 1) & (elements.length-1);
+		elements[first] = x;
+		size++;
+	}
+
+	public void addLast(STObject x) {
+		if ( size==elements.length ) grow();
+		elements[(first + size) & (elements.length-1)] = x;
+		size++;
+	}
+
+	public STObject removeFirst() {
+		STObject x = elements[first];
+		elements[first] = null;
+		first = (first + 1) & (elements.length-1);
+		size--;
+		return x;
+	}
+
+	public STObject removeLast() {
+		int i = (first + size - 1) & (elements.length-1);
+		STObject x = elements[i];
+		elements[i] = null;
+		size--;
+		return x;
+	}
+
+	/** Double the buffer, moving the elements to its start */
+	protected void grow() {
+		STObject[] bigger = new STObject[elements.length * 2];
+		int n = elements.length - first; // elements from first to the end
+		System.arraycopy(elements, first, bigger, 0, n);
+		System.arraycopy(elements, 0, bigger, n, first);
+		elements = bigger;
+		first = 0;
+	}
+
+	/** The 0-based index for Smalltalk index i */
+	protected int index(VirtualMachine vm, STObject i) {
+		int index = ((STInteger)i).v;
+		if ( index < 1 || index > size ) {
+			vm.error("IndexOutOfRange", "index "+index+" not in 1.."+size);
+		}
+		return index - 1;
+	}
+
+	protected void checkNotEmpty(VirtualMachine vm, String operation) {
+		if ( size==0 ) vm.error("IndexOutOfRange", operation+" of an empty "+getSTClass().getName());
+	}
+}
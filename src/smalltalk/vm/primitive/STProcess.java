@@ -0,0 +1,113 @@
+package smalltalk.vm.primitive;
+
+import smalltalk.vm.ProcessScheduler;
+import smalltalk.vm.VirtualMachine;
+
+/** A green thread, backing Smalltalk class Process. A process is a chain
+ *  of {@link BlockContext}s that the VM's {@link ProcessScheduler} swaps
+ *  in and out of {@link VirtualMachine#ctx}; no Java thread is involved.
+ *
+ *  A process made from a block starts with a context for that block
+ *  whose invokingContext is {@link #end}, a context with no code. When
+ *  the block returns, the VM finds itself in end and the process is
+ *  done. The program's main method runs in a process without an end
+ *  context.
+ */
+public class STProcess extends STObject {
+	public enum State { SUSPENDED, READY, RUNNING, WAITING, TERMINATED }
+
+	public static final int LOWEST_PRIORITY = 1;
+	public static final int USER_PRIORITY = 4;
+	public static final int HIGHEST_PRIORITY = 8;
+
+	/** End of every process made from a block; see {@link #end} */
+	public static final STCompiledBlock END =
+		new STCompiledBlock(null, "end", "Process>>end", 0, 0, null, false, 0, null, new byte[0], null);
+
+	public State state = State.SUSPENDED;
+
+	public int priority;
+
+	/** Where this process continues when next it runs; null while it is
+	 *  running, as the VM's ctx is then the truth.
+	 */
+	public BlockContext ctx;
+
+	/** The context this process' block returns to; null for main */
+	public final BlockContext end;
+
+	/** Non-null while this process waits on a semaphore */
+	public STSemaphore waitingOn;
+
+	/** The process running main */
+	public STProcess(VirtualMachine vm, int priority) {
+		super(vm.lookupClass("Process"));
+		this.priority = priority;
+		this.end = null;
+	}
+
+	/** A suspended process that evaluates block */
+	public STProcess(VirtualMachine vm, BlockDescriptor block, int priority) {
+		super(vm.lookupClass("Process"));
+		this.priority = priority;
+		end = new BlockContext(vm, END, vm.nil());
+		ctx = new BlockContext(vm, block);
+		ctx.invokingContext = end;
+		ctx.depth = 1;
+	}
+
+	public static STObject perform(BlockContext ctx, int nArgs, Primitive primitive) {
+		VirtualMachine vm = ctx.vm;
+		vm.assertNumOperands(nArgs+1); // ensure args + receiver
+		int firstArg = ctx.sp - nArgs + 1;
+		STObject receiver = ctx.stack[firstArg-1];
+		ProcessScheduler scheduler = vm.getScheduler();
+		STProcess p;
+		switch ( primitive ) {
+			case BlockDescriptor_NEWPROCESS :
+				ctx.sp--;
+				return new STProcess(vm, (BlockDescriptor)receiver, scheduler.getActive().priority);
+			case Process_Class_ACTIVE :
+				ctx.sp--;
+				return scheduler.getActive();
+			case Process_PRIORITY :
+				ctx.sp--;
+				return vm.newInteger(((STProcess)receiver).priority);
+			case Process_ISTERMINATED :
+				ctx.sp--;
+				return vm.newBoolean(((STProcess)receiver).state==State.TERMINATED);
+			case Process_PRIORITY_SET :
+				int priority = ((STInteger)ctx.stack[firstArg]).v;
+				if ( priority<LOWEST_PRIORITY || priority>HIGHEST_PRIORITY ) {
+					vm.error("IndexOutOfRange", "priority "+priority+" not in "+LOWEST_PRIORITY+".."+HIGHEST_PRIORITY);
+				}
+				ctx.sp -= 2;
+				scheduler.setPriority((STProcess)receiver, priority);
+				return receiver;
+		}
+		// The rest can switch processes so push the result onto the
+		// sender's stack before the switch, not after
+		ctx.sp--;
+		ctx.push(receiver);
+		switch ( primitive ) {
+			case Process_Class_YIELD :
+				scheduler.yield();
+				break;
+			case Process_RESUME :
+				scheduler.resume((STProcess)receiver);
+				break;
+			case Process_TERMINATE :
+				p = (STProcess)receiver;
+				if ( p.end==null ) vm.error("can't terminate the main process");
+				scheduler.terminate(p);
+				break;
+		}
+		scheduler.primitiveDone();
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return "a Process";
+	}
+}
@@ -0,0 +1,69 @@
+package smalltalk.vm.primitive;
+
+import smalltalk.vm.ProcessScheduler;
+import smalltalk.vm.VirtualMachine;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/** Backs Smalltalk class Semaphore. wait takes a signal if there is one
+ *  and otherwise blocks the active process until another process sends
+ *  signal. Waiting processes resume in FIFO order.
+ */
+public class STSemaphore extends STObject {
+	/** Signals sent that no wait has taken yet */
+	public int signals;
+
+	public final Deque<STProcess> waiting = new ArrayDeque<>();
+
+	public STSemaphore(VirtualMachine vm) {
+		super(vm.lookupClass("Semaphore"));
+	}
+
+	public static STObject perform(BlockContext ctx, int nArgs, Primitive primitive) {
+		VirtualMachine vm = ctx.vm;
+		vm.assertNumOperands(nArgs+1); // ensure args + receiver
+		int firstArg = ctx.sp - nArgs + 1;
+		STObject receiver = ctx.stack[firstArg-1];
+		if ( primitive==Primitive.Semaphore_Class_NEW ) {
+			ctx.sp--;
+			return new STSemaphore(vm);
+		}
+		// wait and signal can switch processes so push the result onto
+		// the sender's stack before the switch, not after
+		ctx.sp--;
+		ctx.push(receiver);
+		STSemaphore s = (STSemaphore)receiver;
+		ProcessScheduler scheduler = vm.getScheduler();
+		switch ( primitive ) {
+			case Semaphore_WAIT :
+				if ( s.signals>0 ) {
+					s.signals--;
+				}
+				else {
+					STProcess p = scheduler.getActive();
+					p.waitingOn = s;
+					s.waiting.addLast(p);
+					scheduler.block();
+				}
+				break;
+			case Semaphore_SIGNAL :
+				STProcess p = s.waiting.pollFirst();
+				if ( p!=null ) {
+					p.waitingOn = null;
+					scheduler.ready(p);
+				}
+				else {
+					s.signals++;
+				}
+				break;
+		}
+		scheduler.primitiveDone();
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return "a Semaphore";
+	}
+}
@@ -0,0 +1,51 @@
+package smalltalk.vm.primitive;
+
+import smalltalk.vm.VirtualMachine;
+
+/** Backs Smalltalk class Set: an {@link STDictionary} with keys only */
+public class STSet extends STDictionary {
+	public STSet(STMetaClassObject metaclass) {
+		super(metaclass, false, false);
+	}
+
+	public static STObject perform(BlockContext ctx, int nArgs, Primitive primitive) {
+		VirtualMachine vm = ctx.vm;
+		vm.assertNumOperands(nArgs+1); // ensure args + receiver
+		int firstArg = ctx.sp - nArgs + 1;
+		STObject receiver = ctx.stack[firstArg-1];
+		if ( primitive==Primitive.Set_Class_NEW ) {
+			ctx.sp--;
+			return new STSet((STMetaClassObject)receiver);
+		}
+		STSet set = (STSet)receiver;
+		STObject x = nArgs>0 ? ctx.stack[firstArg] : null;
+		STObject result;
+		switch ( primitive ) {
+			case Set_ADD :
+				set.add(vm, x);
+				result = x;
+				break;
+			case Set_INCLUDES :
+				result = vm.newBoolean(set.find(vm, x)>=0);
+				break;
+			case Set_REMOVE :
+				result = set.remove(vm, x)>=0 ? x : vm.nil();
+				break;
+			case Set_SIZE :
+				result = vm.newInteger(set.size);
+				break;
+			case Set_ASARRAY :
+				result = new STArray(vm, set.entries(set.keys));
+				break;
+			case Set_REMOVE_ALL :
+				set.removeAll();
+				result = set;
+				break;
+			default :
+				result = vm.nil();
+				break;
+		}
+		ctx.sp -= nArgs+1;
+		return result;
+	}
+}
@@ -13,6 +13,7 @@ public class STString extends STObject {
 	public STString(VirtualMachine vm, String s) {
 		super(vm.lookupClass("String"));
 		this.s = s;
+		vm.stats.stringsAllocated++;
 	}
 
 	public static STObject perform(BlockContext ctx, int nArgs, Primitive primitive) {
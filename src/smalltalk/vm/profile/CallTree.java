@@ -0,0 +1,79 @@
+package smalltalk.vm.profile;
+
+import smalltalk.vm.primitive.STCompiledBlock;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** A calling context tree: one node per distinct chain of methods and
+ *  blocks starting from the outermost method. What {@link #self} counts
+ *  depends on the profiler: bytecodes executed for {@link Profiler} and
+ *  samples for {@link SamplingProfiler}.
+ */
+public class CallTree {
+	/** null for the root node */
+	public final STCompiledBlock block;
+	public final CallTree parent;
+
+	/** Count attributed to this node while it was the innermost context */
+	public long self;
+
+	protected final Map<STCompiledBlock,CallTree> children = new LinkedHashMap<>();
+
+	public CallTree() { this(null, null); }
+
+	public CallTree(STCompiledBlock block, CallTree parent) {
+		this.block = block;
+		this.parent = parent;
+	}
+
+	public CallTree child(STCompiledBlock blk) {
+		CallTree t = children.get(blk);
+		if ( t==null ) {
+			t = new CallTree(blk, this);
+			children.put(blk, t);
+		}
+		return t;
+	}
+
+	public Collection<CallTree> getChildren() { return children.values(); }
+
+	public long total() {
+		long n = self;
+		for (CallTree t : children.values()) n += t.total();
+		return n;
+	}
+
+	/** Write the tree in the "collapsed stack" format understood by
+	 *  flamegraph.pl and speedscope: one line per node with a non-zero
+	 *  self count, frames separated by ';' followed by a space and the count.
+	 *  E.g., "MainClass>>main:1;T>>f:3 42".
+	 */
+	public void writeCollapsed(PrintWriter out) {
+		List<String> path = new ArrayList<>();
+		for (CallTree t : children.values()) t.writeCollapsed(out, path);
+		out.flush();
+	}
+
+	protected void writeCollapsed(PrintWriter out, List<String> path) {
+		path.add(label(block));
+		if ( self>0 ) {
+			out.print(String.join(";", path));
+			out.print(' ');
+			out.println(self);
+		}
+		for (CallTree t : children.values()) t.writeCollapsed(out, path);
+		path.remove(path.size()-1);
+	}
+
+	/** How we identify a method or block in reports: qualified name plus
+	 *  the line where it's defined, like T>>f-block0:12.
+	 */
+	public static String label(STCompiledBlock blk) {
+		return blk.qualifiedName+":"+blk.line;
+	}
+}
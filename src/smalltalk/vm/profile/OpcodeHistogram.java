@@ -0,0 +1,155 @@
+package smalltalk.vm.profile;
+
+import smalltalk.vm.Bytecode;
+import smalltalk.vm.ExecutionListener;
+import smalltalk.vm.primitive.BlockContext;
+import smalltalk.vm.primitive.STCompiledBlock;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Count the dynamic instruction mix: executions per opcode, per pair of
+ *  consecutively executed opcodes, and per (opcode, compiled block). Use
+ *  it to pick superinstructions and special selectors from real
+ *  workloads. Attach with {@link smalltalk.vm.VirtualMachine#addListener}.
+ *
+ *  Pairs follow the dynamic instruction stream so the pair for a send
+ *  is (send, first instruction of the invoked method).
+ */
+public class OpcodeHistogram implements ExecutionListener {
+	public static final int NUM_OPCODES = Bytecode.instructions.length;
+	public static final int MAX_PAIRS_IN_REPORT = 20;
+
+	protected final long[] counts = new long[NUM_OPCODES];
+	protected final long[] pairs = new long[NUM_OPCODES*NUM_OPCODES];
+	protected final Map<STCompiledBlock,long[]> blockCounts = new IdentityHashMap<>();
+	protected long sends;
+
+	protected int prevOpcode = -1;
+	protected STCompiledBlock lastBlock; // cache since most instructions stay in same block
+	protected long[] lastBlockCounts;
+
+	@Override
+	public void instruction(BlockContext ctx, int ip, int opcode) {
+		counts[opcode]++;
+		if ( prevOpcode>=0 ) pairs[prevOpcode*NUM_OPCODES + opcode]++;
+		prevOpcode = opcode;
+		if ( opcode==Bytecode.SEND || opcode==Bytecode.SEND_SUPER ) sends++;
+		if ( ctx.compiledBlock!=lastBlock ) {
+			lastBlock = ctx.compiledBlock;
+			lastBlockCounts = blockCounts.get(lastBlock);
+			if ( lastBlockCounts==null ) {
+				lastBlockCounts = new long[NUM_OPCODES];
+				blockCounts.put(lastBlock, lastBlockCounts);
+			}
+		}
+		lastBlockCounts[opcode]++;
+	}
+
+	public long getCount(int opcode) { return counts[opcode]; }
+
+	public long getPairCount(int first, int second) { return pairs[first*NUM_OPCODES + second]; }
+
+	public long getCount(int opcode, STCompiledBlock blk) {
+		long[] c = blockCounts.get(blk);
+		return c!=null ? c[opcode] : 0;
+	}
+
+	public long getBytecodesExecuted() {
+		long n = 0;
+		for (long c : counts) n += c;
+		return n;
+	}
+
+	public long getSends() { return sends; }
+
+	/** Includes the send instruction itself */
+	public double getBytecodesPerSend() {
+		return sends>0 ? (double)getBytecodesExecuted()/sends : 0.0;
+	}
+
+	public String report() {
+		long total = getBytecodesExecuted();
+		StringBuilder buf = new StringBuilder();
+		buf.append(String.format("%d bytecodes, %d sends, %.2f bytecodes/send%n",
+								 total, sends, getBytecodesPerSend()));
+		buf.append(String.format("%-15s %12s %7s%n", "opcode", "count", "%"));
+		for (Entry e : sorted(opcodeEntries())) {
+			buf.append(String.format("%-15s %12d %6.2f%%%n", e.first, e.count, 100.0*e.count/total));
+		}
+		buf.append(String.format("%n%-31s %12s %7s%n", "opcode pair", "count", "%"));
+		List<Entry> pairEntries = sorted(pairEntries());
+		for (Entry e : pairEntries.subList(0, Math.min(MAX_PAIRS_IN_REPORT, pairEntries.size()))) {
+			buf.append(String.format("%-15s %-15s %12d %6.2f%%%n", e.first, e.second, e.count, 100.0*e.count/total));
+		}
+		return buf.toString();
+	}
+
+	/** Dump all counts as CSV with columns kind,first,second,count where
+	 *  kind is opcode, pair, or block. For block rows, second is the
+	 *  block's qualifiedName:line.
+	 */
+	public void writeCSV(PrintWriter out) {
+		out.println("kind,first,second,count");
+		for (Entry e : sorted(opcodeEntries())) {
+			out.println("opcode,"+e.first+",,"+e.count);
+		}
+		for (Entry e : sorted(pairEntries())) {
+			out.println("pair,"+e.first+","+e.second+","+e.count);
+		}
+		List<Entry> blockEntries = new ArrayList<>();
+		for (Map.Entry<STCompiledBlock,long[]> b : blockCounts.entrySet()) {
+			long[] c = b.getValue();
+			for (int op = 0; op<NUM_OPCODES; op++) {
+				if ( c[op]>0 ) blockEntries.add(new Entry(opcodeName(op), CallTree.label(b.getKey()), c[op]));
+			}
+		}
+		for (Entry e : sorted(blockEntries)) {
+			out.println("block,"+e.first+",\""+e.second+"\","+e.count);
+		}
+		out.flush();
+	}
+
+	protected List<Entry> opcodeEntries() {
+		List<Entry> entries = new ArrayList<>();
+		for (int op = 0; op<NUM_OPCODES; op++) {
+			if ( counts[op]>0 ) entries.add(new Entry(opcodeName(op), null, counts[op]));
+		}
+		return entries;
+	}
+
+	protected List<Entry> pairEntries() {
+		List<Entry> entries = new ArrayList<>();
+		for (int i = 0; i<pairs.length; i++) {
+			if ( pairs[i]>0 ) {
+				entries.add(new Entry(opcodeName(i/NUM_OPCODES), opcodeName(i%NUM_OPCODES), pairs[i]));
+			}
+		}
+		return entries;
+	}
+
+	protected static List<Entry> sorted(List<Entry> entries) {
+		entries.sort((a,b) -> Long.compare(b.count, a.count));
+		return entries;
+	}
+
+	public static String opcodeName(int opcode) {
+		Bytecode.Instruction I = Bytecode.instructions[opcode];
+		return I!=null ? I.name : String.valueOf(opcode);
+	}
+
+	protected static class Entry {
+		final String first;
+		final String second;
+		final long count;
+
+		Entry(String first, String second, long count) {
+			this.first = first;
+			this.second = second;
+			this.count = count;
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package smalltalk.vm.profile;
+
+import smalltalk.vm.ExecutionListener;
+import smalltalk.vm.primitive.BlockContext;
+import smalltalk.vm.primitive.STCompiledBlock;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** An exact, instrumenting profiler. Attach to a VM with
+ *  {@link smalltalk.vm.VirtualMachine#addListener} before calling exec.
+ *  It counts invocations, bytecodes executed within each method or block
+ *  (self), bytecodes executed while a method or block is anywhere on the
+ *  invocation stack (total), and wall time spent in each.
+ *
+ *  Totals for recursive methods count only the outermost activation so
+ *  they're not counted twice.
+ */
+public class Profiler implements ExecutionListener {
+	public static class MethodProfile {
+		public final STCompiledBlock block;
+		public long invocations;
+		public long selfBytecodes;
+		public long totalBytecodes;
+		public long totalNanos;
+		int activeFrames; // how many activations are on the stack
+
+		public MethodProfile(STCompiledBlock block) { this.block = block; }
+	}
+
+	/** Tracks one active context; we mirror the VM's invocation stack */
+	protected static class Frame {
+		final BlockContext ctx;
+		final MethodProfile profile;
+		final CallTree node;
+		final long startBytecodes;
+		final long startNanos;
+
+		Frame(BlockContext ctx, MethodProfile profile, CallTree node, long startBytecodes) {
+			this.ctx = ctx;
+			this.profile = profile;
+			this.node = node;
+			this.startBytecodes = startBytecodes;
+			this.startNanos = System.nanoTime();
+		}
+	}
+
+	protected final Map<STCompiledBlock,MethodProfile> profiles = new IdentityHashMap<>();
+	protected final CallTree root = new CallTree();
+	protected final Deque<Frame> stack = new ArrayDeque<>();
+
+	/** Total bytecodes executed */
+	protected long bytecodes;
+
+	@Override
+	public void activated(BlockContext ctx) {
+		if ( ctx.invokingContext==null ) stack.clear(); // new exec(); toss frames left by an exception
+		MethodProfile p = getProfile(ctx.compiledBlock);
+		p.invocations++;
+		p.activeFrames++;
+		CallTree parent = stack.isEmpty() ? root : stack.peek().node;
+		stack.push(new Frame(ctx, p, parent.child(ctx.compiledBlock), bytecodes));
+	}
+
+	@Override
+	public void instruction(BlockContext ctx, int ip, int opcode) {
+		bytecodes++;
+		Frame top = stack.peek();
+		if ( top==null || top.ctx!=ctx ) return;
+		top.profile.selfBytecodes++;
+		top.node.self++;
+	}
+
+	@Override
+	public void returned(BlockContext ctx) {
+		Frame top = stack.peek();
+		if ( top==null || top.ctx!=ctx ) return;
+		stack.pop();
+		MethodProfile p = top.profile;
+		p.activeFrames--;
+		if ( p.activeFrames==0 ) {
+			p.totalBytecodes += bytecodes - top.startBytecodes;
+			p.totalNanos += System.nanoTime() - top.startNanos;
+		}
+	}
+
+	public MethodProfile getProfile(STCompiledBlock blk) {
+		MethodProfile p = profiles.get(blk);
+		if ( p==null ) {
+			p = new MethodProfile(blk);
+			profiles.put(blk, p);
+		}
+		return p;
+	}
+
+	/** All profiles sorted by total bytecodes, most expensive first */
+	public List<MethodProfile> getProfiles() {
+		List<MethodProfile> all = new ArrayList<>(profiles.values());
+		all.sort((a,b) -> Long.compare(b.totalBytecodes, a.totalBytecodes));
+		return all;
+	}
+
+	public long getBytecodesExecuted() { return bytecodes; }
+
+	/** Call tree whose counts are bytecodes executed */
+	public CallTree getCallTree() { return root; }
+
+	public String report() {
+		StringBuilder buf = new StringBuilder();
+		buf.append(String.format("%-50s %10s %12s %12s %10s%n",
+								 "method:line", "calls", "self bc", "total bc", "total ms"));
+		for (MethodProfile p : getProfiles()) {
+			buf.append(String.format("%-50s %10d %12d %12d %10.3f%n",
+									 CallTree.label(p.block), p.invocations,
+									 p.selfBytecodes, p.totalBytecodes,
+									 p.totalNanos/1_000_000.0));
+		}
+		return buf.toString();
+	}
+}
@@ -0,0 +1,125 @@
+package smalltalk.vm.profile;
+
+import smalltalk.vm.VirtualMachine;
+import smalltalk.vm.primitive.BlockContext;
+import smalltalk.vm.primitive.STCompiledBlock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/** A low-overhead profiler that periodically walks the invokingContext
+ *  chain of a running VM from a separate thread. Unlike {@link Profiler},
+ *  it attaches no listener so the VM keeps running its uninstrumented
+ *  interpreter loop.
+ *
+ *  The sampler reads VM state without synchronization so a sample might
+ *  see a context chain that is slightly out of date. That's fine for
+ *  statistics; it's the usual sampling profiler trade-off.
+ */
+public class SamplingProfiler {
+	public static final long DEFAULT_INTERVAL_MICROS = 1000;
+	public static final int MAX_STACK_DEPTH = 2048;
+
+	protected final VirtualMachine vm;
+	protected final long intervalNanos;
+
+	protected final CallTree root = new CallTree();
+	protected final Map<STCompiledBlock,long[]> selfAndTotal = new IdentityHashMap<>();
+	protected long samples;
+
+	protected volatile boolean running;
+	protected Thread sampler;
+
+	public SamplingProfiler(VirtualMachine vm) {
+		this(vm, DEFAULT_INTERVAL_MICROS);
+	}
+
+	public SamplingProfiler(VirtualMachine vm, long intervalMicros) {
+		this.vm = vm;
+		this.intervalNanos = TimeUnit.MICROSECONDS.toNanos(intervalMicros);
+	}
+
+	public void start() {
+		running = true;
+		sampler = new Thread(this::sampleLoop, "smalltalk-sampler");
+		sampler.setDaemon(true);
+		sampler.start();
+	}
+
+	public void stop() {
+		running = false;
+		try {
+			sampler.join();
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	protected void sampleLoop() {
+		while ( running ) {
+			LockSupport.parkNanos(intervalNanos);
+			sample();
+		}
+	}
+
+	/** Record one stack sample; synchronized only against report readers */
+	protected synchronized void sample() {
+		List<STCompiledBlock> blocks = new ArrayList<>();
+		BlockContext c = vm.ctx;
+		while ( c!=null && blocks.size()<MAX_STACK_DEPTH ) {
+			blocks.add(c.compiledBlock);
+			c = c.invokingContext;
+		}
+		if ( blocks.isEmpty() ) return;
+		samples++;
+		Collections.reverse(blocks);
+		CallTree node = root;
+		for (STCompiledBlock blk : blocks) {
+			node = node.child(blk);
+		}
+		node.self++;
+		getCounts(blocks.get(blocks.size()-1))[0]++;
+		for (STCompiledBlock blk : new HashSet<>(blocks)) { // recursion counts once
+			getCounts(blk)[1]++;
+		}
+	}
+
+	protected long[] getCounts(STCompiledBlock blk) {
+		long[] counts = selfAndTotal.get(blk);
+		if ( counts==null ) {
+			counts = new long[2];
+			selfAndTotal.put(blk, counts);
+		}
+		return counts;
+	}
+
+	public synchronized long getSamples() { return samples; }
+
+	/** Call tree whose counts are samples */
+	public synchronized CallTree getCallTree() { return root; }
+
+	public synchronized String report() {
+		List<Map.Entry<STCompiledBlock,long[]>> entries = new ArrayList<>(selfAndTotal.entrySet());
+		entries.sort((a,b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+		StringBuilder buf = new StringBuilder();
+		buf.append(String.format("%d samples every %dus%n", samples, intervalNanos/1000));
+		buf.append(String.format("%-50s %10s %8s %10s %8s%n",
+								 "method:line", "self", "self%", "total", "total%"));
+		for (Map.Entry<STCompiledBlock,long[]> e : entries) {
+			long self = e.getValue()[0];
+			long total = e.getValue()[1];
+			buf.append(String.format("%-50s %10d %7.1f%% %10d %7.1f%%%n",
+									 CallTree.label(e.getKey()),
+									 self, 100.0*self/samples,
+									 total, 100.0*total/samples));
+		}
+		return buf.toString();
+	}
+}
@@ -2,7 +2,6 @@ package smalltalk.test;
 
 import org.antlr.symtab.GlobalScope;
 import org.antlr.v4.runtime.ANTLRInputStream;
-import org.antlr.v4.runtime.ParserRuleContext;
 import smalltalk.Run;
 import smalltalk.compiler.Compiler;
 import smalltalk.compiler.STSymbolTable;
@@ -10,27 +9,40 @@ import smalltalk.vm.VirtualMachine;
 import smalltalk.vm.primitive.STMetaClassObject;
 import smalltalk.vm.primitive.STObject;
 
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
 import static junit.framework.TestCase.assertEquals;
 
 public class BaseTest {
+	/** The image and test libraries; enough code to compare compiler modes on */
+	public static final List<String> IMAGE_FILES = Arrays.asList(
+		"resources/smalltalk/image.st",
+		"smalltalk/test/linkedlist.st",
+		"smalltalk/test/dict.st");
+
 	public GlobalScope parseAndGetGlobalScope(String input) {
 		return parseAndDefineSymbols(input).getSymbolTable().GLOBALS;
 	}
 
+	/** Compile input, keeping its parse tree so tests can look at the
+	 *  symbols the compiler hung on it
+	 */
 	public CompilerWithHooks parseAndDefineSymbols(String input) {
 		CompilerWithHooks compiler = new CompilerWithHooks();
-		ParserRuleContext tree = compiler.parseClasses(new ANTLRInputStream(input));
-		if ( tree!=null ) {
-			compiler.defSymbols(tree);
-			compiler.resolveSymbols(tree);
-		}
+		compiler.releaseTrees = false;
+		compiler.compile(new ANTLRInputStream(input));
 		return compiler;
 	}
 
 	public void execAndCheck(String input, String expecting,
 							 boolean withLinkedList, boolean withDict,
 							 boolean trace, boolean genDbg) {
-		STSymbolTable symtab = Run.compileCore(genDbg);
+		STSymbolTable symtab = Run.overlayCore(genDbg);
 		if ( withLinkedList ) {
 			Run.compile(symtab, "smalltalk/test/linkedlist.st", genDbg);
 		}
@@ -103,4 +115,29 @@ public class BaseTest {
 		}
 		return code.toString();
 	}
+
+	/** Compile {@link #IMAGE_FILES} with debugging info and the options
+	 *  set by configure and return the code of every class
+	 */
+	public String compileAndDump(Consumer<Compiler> configure) throws IOException {
+		Compiler c = new Compiler();
+		c.genDbg = true;
+		configure.accept(c);
+		List<ANTLRInputStream> inputs = new ArrayList<>();
+		for (String f : IMAGE_FILES) {
+			URL url = Run.getImageURL(f);
+			ANTLRInputStream input = new ANTLRInputStream(url.openStream());
+			input.name = url.getFile();
+			inputs.add(input);
+		}
+		STSymbolTable symtab = c.compile(inputs);
+		assertEquals("[]", c.errors.toString());
+		StringBuilder buf = new StringBuilder();
+		for (STObject o : new VirtualMachine(symtab).systemDict.getObjects()) {
+			if ( o instanceof STMetaClassObject ) {
+				buf.append(((STMetaClassObject)o).toTestString());
+			}
+		}
+		return buf.toString();
+	}
 }
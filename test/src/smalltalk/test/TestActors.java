@@ -0,0 +1,146 @@
+package smalltalk.test;
+
+import org.junit.Test;
+import smalltalk.SmalltalkExecutor;
+import smalltalk.vm.exceptions.ActorFailed;
+import smalltalk.vm.exceptions.Deadlock;
+import smalltalk.vm.exceptions.ExecutionLimitExceeded;
+import smalltalk.vm.exceptions.TypeError;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestActors extends BaseTest {
+	public static final String WORKER =
+		"class Worker [\n" +
+		"    fib: n [ n < 2 ifTrue: [^n]. ^(self fib: n - 1) + (self fib: n - 2) ]\n" +
+		"    fib: n replyTo: a [ a send: 'result:' with: (self fib: n) ]\n" +
+		"]\n" +
+		"class Results [\n" +
+		"    result: x [ ^x ]\n" +
+		"]\n";
+
+	@Test public void testRequestReply() {
+		String input = WORKER +
+			"| w |\n" +
+			"w := Actor spawn: Worker.\n" +
+			"w send: 'fib:replyTo:' with: 15 with: Actor current.\n" +
+			"^Actor receive: Results new";
+		execAndCheck(input, "610", false);
+	}
+
+	@Test public void testManyActors() {
+		String input = WORKER +
+			"| sum |\n" +
+			"1 to: 8 do: [:i | (Actor spawn: Worker) send: 'fib:replyTo:' with: i with: Actor current].\n" +
+			"sum := 0.\n" +
+			"1 to: 8 do: [:i | sum := sum + (Actor receive: Results new)].\n" +
+			"^sum";
+		execAndCheck(input, "54", false); // fib 1..8
+	}
+
+	@Test public void testActorState() {
+		String input =
+			"class Counter [\n" +
+			"    |n|\n" +
+			"    initialize [ n := 0 ]\n" +
+			"    add: k [ n := n + k ]\n" +
+			"    report: a [ a send: 'count:' with: n ]\n" +
+			"]\n" +
+			"class Results [ count: x [ ^x ] ]\n" +
+			"| c |\n" +
+			"c := Actor spawn: Counter.\n" +
+			"1 to: 100 do: [:i | c send: 'add:' with: i].\n" +
+			"c send: 'report:' with: Actor current.\n" +
+			"^Actor receive: Results new";
+		execAndCheck(input, "5050", false); // messages from one sender arrive in order
+	}
+
+	@Test public void testActorsTalkToEachOther() {
+		String input = WORKER +
+			"class Forwarder [\n" +
+			"    |to|\n" +
+			"    to: a [ to := a ]\n" +
+			"    result: x [ to send: 'result:' with: x + 1 ]\n" +
+			"]\n" +
+			"| f |\n" +
+			"f := Actor spawn: Forwarder.\n" +
+			"f send: 'to:' with: Actor current.\n" +
+			"(Actor spawn: Worker) send: 'fib:replyTo:' with: 10 with: f.\n" +
+			"^Actor receive: Results new";
+		execAndCheck(input, "56", false);
+	}
+
+	@Test public void testMessagesAreCopies() {
+		String input =
+			"class Box [ |val| v [ ^val ] v: x [ val := x ] ]\n" +
+			"class Mutator [\n" +
+			"    change: a replyTo: r [ (a at: 1) v: 99. a at: 2 put: 'x'. r send: 'got:' with: a ]\n" +
+			"]\n" +
+			"class Results [ got: a [ ^a ] ]\n" +
+			"| b a copy |\n" +
+			"b := Box new. b v: 1.\n" +
+			"a := {b. 'y'. b}.\n" +
+			"(Actor spawn: Mutator) send: 'change:replyTo:' with: a with: Actor current.\n" +
+			"copy := Actor receive: Results new.\n" +
+			"^{b v. a at: 2. (copy at: 1) v. copy at: 2. (copy at: 1) == (copy at: 3). copy == a}";
+		execAndCheck(input, "{1. y. 99. x. true. false}", false);
+	}
+
+	@Test public void testBlocksCantBeSent() {
+		String input =
+			"class Results [ ]\n" +
+			"(Actor spawn: Results) send: 'value:' with: [1]";
+		try {
+			execAndCheck(input, "", false);
+			fail("expecting TypeError");
+		}
+		catch (TypeError te) {
+			assertEquals("can't copy BlockDescriptor to another VM", te.getMessage());
+		}
+	}
+
+	@Test public void testActorFailure() {
+		String input =
+			"class Bad [ go [ ^nil foo ] ]\n" +
+			"class Results [ ]\n" +
+			"(Actor spawn: Bad) send: 'go'.\n" +
+			"^Actor receive: Results new";
+		try {
+			execAndCheck(input, "", false);
+			fail("expecting ActorFailed");
+		}
+		catch (ActorFailed af) {
+			assertTrue(af.getMessage(), af.getMessage().startsWith("actor Bad failed: "));
+		}
+	}
+
+	@Test public void testDeadlock() {
+		String input =
+			"class Results [ ]\n" +
+			"^Actor receive: Results new";
+		try {
+			execAndCheck(input, "", false);
+			fail("expecting Deadlock");
+		}
+		catch (Deadlock d) {
+			assertEquals("main is waiting for a message but no actor has mail", d.getMessage());
+		}
+	}
+
+	@Test public void testReceiveStopsAtTimeLimit() throws Exception {
+		String input =
+			"class Spinner [ spin: a [ 1 to: 100000000 do: [:i | ]. a send: 'result:' with: 1 ] ]\n" +
+			"class Results [ result: x [ ^x ] ]\n" +
+			"(Actor spawn: Spinner) send: 'spin:' with: Actor current.\n" +
+			"^Actor receive: Results new";
+		try (SmalltalkExecutor executor = new SmalltalkExecutor(1)) {
+			long start = System.nanoTime();
+			Throwable t = TestSmalltalkExecutor.failure(executor.submit(input, 0, 300));
+			long ms = (System.nanoTime() - start) / 1_000_000;
+			assertTrue(t instanceof ExecutionLimitExceeded);
+			assertTrue("took "+ms+"ms for a 300ms limit", ms < 2000);
+		}
+	}
+}
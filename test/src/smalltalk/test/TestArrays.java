@@ -72,7 +72,7 @@ public class TestArrays extends BaseTest {
 			"n := 0.\n" +
 			"a := a filter: [:x | x<4].\n" +
 			"^a asString";
-		String expecting = "LinkedList(1. 2. 3)";
+		String expecting = "OrderedCollection(1. 2. 3)";
 		execAndCheckWithLinkedList(input, expecting);
 	}
 
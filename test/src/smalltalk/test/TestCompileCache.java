@@ -0,0 +1,82 @@
+package smalltalk.test;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.junit.Test;
+import smalltalk.Run;
+import smalltalk.compiler.CompileCache;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.VirtualMachine;
+import smalltalk.vm.primitive.STMetaClassObject;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestCompileCache extends BaseTest {
+	static final String prog =
+		"class A [ |x| f [ x := 1. ^[x + 1] value ] ]\n" +
+		"class B : A [ g [ ^self f * 10 ] ]\n" +
+		"class C [ h [ ^'h' ] ]\n" +
+		"^{B new g. C new h}";
+
+	public VirtualMachine compile(CompileCache cache, String input) {
+		STSymbolTable symtab = Run.overlayCore(true);
+		Compiler c = new Compiler(symtab);
+		c.genDbg = true;
+		c.cache = cache;
+		c.compile(new ANTLRInputStream(input));
+		assertEquals("[]", c.errors.toString());
+		return new VirtualMachine(symtab);
+	}
+
+	public String dump(VirtualMachine vm) {
+		StringBuilder buf = new StringBuilder();
+		for (String name : new String[] {"A", "B", "C", "MainClass"}) {
+			STMetaClassObject c = vm.lookupClass(name);
+			buf.append(c.toTestString());
+		}
+		return buf.toString();
+	}
+
+	public CompileCache newCache() throws Exception {
+		File dir = Files.createTempDirectory("stcache").toFile();
+		dir.deleteOnExit();
+		return new CompileCache(dir);
+	}
+
+	@Test public void testSecondCompileHitsCache() throws Exception {
+		CompileCache cache = newCache();
+		VirtualMachine first = compile(cache, prog);
+		assertEquals(0, cache.getHits());
+		assertEquals(4, cache.getMisses()); // A, B, C, MainClass
+		VirtualMachine second = compile(cache, prog);
+		assertEquals(4, cache.getHits());
+		assertEquals(4, cache.getMisses());
+		assertEquals(dump(compile(null, prog)), dump(second));
+		assertEquals("{20. h}", second.execMain().toString());
+		assertEquals(first.execMain().toString(), second.execMain().toString());
+	}
+
+	@Test public void testEditRecompilesClassAndSubclasses() throws Exception {
+		CompileCache cache = newCache();
+		compile(cache, prog);
+		String edited = prog.replace("x := 1.", "x := 2.");
+		VirtualMachine vm = compile(cache, edited);
+		assertEquals(2, cache.getHits()); // C and MainClass
+		assertEquals(6, cache.getMisses()); // 4 + A and B
+		assertEquals("{30. h}", vm.execMain().toString());
+	}
+
+	@Test public void testCorruptEntryIsRecompiled() throws Exception {
+		CompileCache cache = newCache();
+		compile(cache, prog);
+		for (File f : cache.dir.listFiles()) {
+			Files.write(f.toPath(), new byte[] {1, 2, 3});
+		}
+		VirtualMachine vm = compile(cache, prog);
+		assertEquals(0, cache.getHits());
+		assertEquals("{20. h}", vm.execMain().toString());
+	}
+}
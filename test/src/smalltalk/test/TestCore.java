@@ -176,7 +176,7 @@ public class TestCore extends BaseTest {
 		0007:  push_int       5                 MainClass>>main[][5]
 		0012:  send           0, 'hash'         MainClass>>main[][], Integer>>hash[][]
 		0000:  self                             MainClass>>main[][], Integer>>hash[][5]
-		0001:  dbg 'image.st', 129:10           MainClass>>main[][], Integer>>hash[][5]
+		0001:  dbg 'image.st', 132:10           MainClass>>main[][], Integer>>hash[][5]
 		0008:  return                           MainClass>>main[][5]
 		0017:  dbg '<string>', 1:0              MainClass>>main[][5]
 		0024:  return
@@ -243,6 +243,13 @@ public class TestCore extends BaseTest {
 		execAndCheck(input, expecting);
 	}
 
+	@Test public void testEmptyArrayLiteral() {
+		String input =
+			  "^{} size";
+		String expecting = "0";
+		execAndCheck(input, expecting);
+	}
+
 	@Test public void testArrayLiteralBiggerThanDefaultOperandStackSizeOf10() {
 		/*
 		0000:  push_int       1                 MainClass>>main[][1]
@@ -507,6 +514,22 @@ public class TestCore extends BaseTest {
 		execAndCheck(input, expecting);
 	}
 
+	@Test public void testObjectIdentityOfSameObject() {
+		String input =
+			"| o |\n" +
+			"o := Object new.\n" +
+			"^{o == o. o == Object new. o ~~ o}";
+		String expecting = "{true. false. false}";
+		execAndCheck(input, expecting);
+		input =
+			"| a |\n" +
+			"a := Array new: 2.\n" +
+			"1 to: 2 do: [:i | a at: i put: 'x', ''].\n" + // equal strings made at run time
+			"^{(a at: 1) == (a at: 2). ('a', 'b') == ('a', 'b'). 3 == 3. 3 == 4. $a == $a. nil == nil. true == true. nil == false. 3 == $c}";
+		expecting = "{false. false. true. false. true. true. true. false. false}";
+		execAndCheck(input, expecting);
+	}
+
 	@Test public void testChar() {
 		/*
 		0000:  dbg '<string>', 2:0              MainClass>>main[nil][]
@@ -606,13 +629,13 @@ public class TestCore extends BaseTest {
 		0001:  block          0                 MainClass>>main[][true, main-block0]
 		0004:  dbg '<string>', 1:7              MainClass>>main[][true, main-block0]
 		0011:  send           1, 'ifFalse:'     MainClass>>main[][], Boolean>>ifFalse:[main-block0][]
-		0000:  dbg 'image.st', 100:24           MainClass>>main[][], Boolean>>ifFalse:[main-block0][]
+		0000:  dbg 'image.st', 103:24           MainClass>>main[][], Boolean>>ifFalse:[main-block0][]
 		0007:  self                             MainClass>>main[][], Boolean>>ifFalse:[main-block0][true]
 		0008:  send           0, 'not'          MainClass>>main[][], Boolean>>ifFalse:[main-block0][false]
 		0013:  push_local     0, 0              MainClass>>main[][], Boolean>>ifFalse:[main-block0][false, main-block0]
-		0018:  dbg 'image.st', 100:28           MainClass>>main[][], Boolean>>ifFalse:[main-block0][false, main-block0]
+		0018:  dbg 'image.st', 103:28           MainClass>>main[][], Boolean>>ifFalse:[main-block0][false, main-block0]
 		0025:  send           1, 'ifTrue:'      MainClass>>main[][], Boolean>>ifFalse:[main-block0][nil]
-		0030:  dbg 'image.st', 100:18           MainClass>>main[][], Boolean>>ifFalse:[main-block0][nil]
+		0030:  dbg 'image.st', 103:18           MainClass>>main[][], Boolean>>ifFalse:[main-block0][nil]
 		0037:  return                           MainClass>>main[][nil]
 		0016:  dbg '<string>', 1:0              MainClass>>main[][nil]
 		0023:  return
@@ -620,16 +643,16 @@ public class TestCore extends BaseTest {
 		0001:  block          0                 MainClass>>main[][false, main-block0]
 		0004:  dbg '<string>', 1:8              MainClass>>main[][false, main-block0]
 		0011:  send           1, 'ifFalse:'     MainClass>>main[][], Boolean>>ifFalse:[main-block0][]
-		0000:  dbg 'image.st', 100:24           MainClass>>main[][], Boolean>>ifFalse:[main-block0][]
+		0000:  dbg 'image.st', 103:24           MainClass>>main[][], Boolean>>ifFalse:[main-block0][]
 		0007:  self                             MainClass>>main[][], Boolean>>ifFalse:[main-block0][false]
 		0008:  send           0, 'not'          MainClass>>main[][], Boolean>>ifFalse:[main-block0][true]
 		0013:  push_local     0, 0              MainClass>>main[][], Boolean>>ifFalse:[main-block0][true, main-block0]
-		0018:  dbg 'image.st', 100:28           MainClass>>main[][], Boolean>>ifFalse:[main-block0][true, main-block0]
+		0018:  dbg 'image.st', 103:28           MainClass>>main[][], Boolean>>ifFalse:[main-block0][true, main-block0]
 		0025:  send           1, 'ifTrue:'      MainClass>>main[][], Boolean>>ifFalse:[main-block0][], MainClass>>main-block0[][]
 		0000:  push_int       99                MainClass>>main[][], Boolean>>ifFalse:[main-block0][], MainClass>>main-block0[][99]
 		0005:  dbg '<string>', 1:19             MainClass>>main[][], Boolean>>ifFalse:[main-block0][], MainClass>>main-block0[][99]
 		0012:  block_return                     MainClass>>main[][], Boolean>>ifFalse:[main-block0][99]
-		0030:  dbg 'image.st', 100:18           MainClass>>main[][], Boolean>>ifFalse:[main-block0][99]
+		0030:  dbg 'image.st', 103:18           MainClass>>main[][], Boolean>>ifFalse:[main-block0][99]
 		0037:  return                           MainClass>>main[][99]
 		0016:  dbg '<string>', 1:0              MainClass>>main[][99]
 		0023:  return
@@ -646,14 +669,14 @@ public class TestCore extends BaseTest {
 		0009:  send           1, 'and:'         MainClass>>main[][], Boolean>>and:[true][]
 		0000:  self                             MainClass>>main[][], Boolean>>and:[true][true]
 		0001:  block          0                 MainClass>>main[][], Boolean>>and:[true][true, and:-block0]
-		0004:  dbg 'image.st', 102:12           MainClass>>main[][], Boolean>>and:[true][true, and:-block0]
+		0004:  dbg 'image.st', 105:12           MainClass>>main[][], Boolean>>and:[true][true, and:-block0]
 		0011:  send           1, 'ifTrue:'      MainClass>>main[][], Boolean>>and:[true][], Boolean>>and:-block0[][]
 		0000:  push_local     1, 0              MainClass>>main[][], Boolean>>and:[true][], Boolean>>and:-block0[][true]
 		0005:  block          1                 MainClass>>main[][], Boolean>>and:[true][], Boolean>>and:-block0[][true, and:-block1]
-		0008:  dbg 'image.st', 102:24           MainClass>>main[][], Boolean>>and:[true][], Boolean>>and:-block0[][true, and:-block1]
+		0008:  dbg 'image.st', 105:24           MainClass>>main[][], Boolean>>and:[true][], Boolean>>and:-block0[][true, and:-block1]
 		0015:  send           1, 'ifTrue:'      MainClass>>main[][], Boolean>>and:[true][], Boolean>>and:-block0[][], Boolean>>and:-block1[][]
 		0000:  true                             MainClass>>main[][], Boolean>>and:[true][], Boolean>>and:-block0[][], Boolean>>and:-block1[][true]
-		0001:  dbg 'image.st', 102:33           MainClass>>main[][], Boolean>>and:[true][], Boolean>>and:-block0[][], Boolean>>and:-block1[][true]
+		0001:  dbg 'image.st', 105:33           MainClass>>main[][], Boolean>>and:[true][], Boolean>>and:-block0[][], Boolean>>and:-block1[][true]
 		0008:  return                           MainClass>>main[][true]
 		0014:  dbg '<string>', 1:0              MainClass>>main[][true]
 		0021:  return
@@ -663,17 +686,17 @@ public class TestCore extends BaseTest {
 		0009:  send           1, 'and:'         MainClass>>main[][], Boolean>>and:[false][]
 		0000:  self                             MainClass>>main[][], Boolean>>and:[false][true]
 		0001:  block          0                 MainClass>>main[][], Boolean>>and:[false][true, and:-block0]
-		0004:  dbg 'image.st', 102:12           MainClass>>main[][], Boolean>>and:[false][true, and:-block0]
+		0004:  dbg 'image.st', 105:12           MainClass>>main[][], Boolean>>and:[false][true, and:-block0]
 		0011:  send           1, 'ifTrue:'      MainClass>>main[][], Boolean>>and:[false][], Boolean>>and:-block0[][]
 		0000:  push_local     1, 0              MainClass>>main[][], Boolean>>and:[false][], Boolean>>and:-block0[][false]
 		0005:  block          1                 MainClass>>main[][], Boolean>>and:[false][], Boolean>>and:-block0[][false, and:-block1]
-		0008:  dbg 'image.st', 102:24           MainClass>>main[][], Boolean>>and:[false][], Boolean>>and:-block0[][false, and:-block1]
+		0008:  dbg 'image.st', 105:24           MainClass>>main[][], Boolean>>and:[false][], Boolean>>and:-block0[][false, and:-block1]
 		0015:  send           1, 'ifTrue:'      MainClass>>main[][], Boolean>>and:[false][], Boolean>>and:-block0[][nil]
-		0020:  dbg 'image.st', 102:40           MainClass>>main[][], Boolean>>and:[false][], Boolean>>and:-block0[][nil]
+		0020:  dbg 'image.st', 105:40           MainClass>>main[][], Boolean>>and:[false][], Boolean>>and:-block0[][nil]
 		0027:  block_return                     MainClass>>main[][], Boolean>>and:[false][nil]
 		0016:  pop                              MainClass>>main[][], Boolean>>and:[false][]
 		0017:  false                            MainClass>>main[][], Boolean>>and:[false][false]
-		0018:  dbg 'image.st', 103:7            MainClass>>main[][], Boolean>>and:[false][false]
+		0018:  dbg 'image.st', 106:7            MainClass>>main[][], Boolean>>and:[false][false]
 		0025:  return                           MainClass>>main[][false]
 		0014:  dbg '<string>', 1:0              MainClass>>main[][false]
 		0021:  return
@@ -683,11 +706,11 @@ public class TestCore extends BaseTest {
 		0009:  send           1, 'and:'         MainClass>>main[][], Boolean>>and:[true][]
 		0000:  self                             MainClass>>main[][], Boolean>>and:[true][false]
 		0001:  block          0                 MainClass>>main[][], Boolean>>and:[true][false, and:-block0]
-		0004:  dbg 'image.st', 102:12           MainClass>>main[][], Boolean>>and:[true][false, and:-block0]
+		0004:  dbg 'image.st', 105:12           MainClass>>main[][], Boolean>>and:[true][false, and:-block0]
 		0011:  send           1, 'ifTrue:'      MainClass>>main[][], Boolean>>and:[true][nil]
 		0016:  pop                              MainClass>>main[][], Boolean>>and:[true][]
 		0017:  false                            MainClass>>main[][], Boolean>>and:[true][false]
-		0018:  dbg 'image.st', 103:7            MainClass>>main[][], Boolean>>and:[true][false]
+		0018:  dbg 'image.st', 106:7            MainClass>>main[][], Boolean>>and:[true][false]
 		0025:  return                           MainClass>>main[][false]
 		0014:  dbg '<string>', 1:0              MainClass>>main[][false]
 		0021:  return
@@ -697,11 +720,11 @@ public class TestCore extends BaseTest {
 		0009:  send           1, 'and:'         MainClass>>main[][], Boolean>>and:[false][]
 		0000:  self                             MainClass>>main[][], Boolean>>and:[false][false]
 		0001:  block          0                 MainClass>>main[][], Boolean>>and:[false][false, and:-block0]
-		0004:  dbg 'image.st', 102:12           MainClass>>main[][], Boolean>>and:[false][false, and:-block0]
+		0004:  dbg 'image.st', 105:12           MainClass>>main[][], Boolean>>and:[false][false, and:-block0]
 		0011:  send           1, 'ifTrue:'      MainClass>>main[][], Boolean>>and:[false][nil]
 		0016:  pop                              MainClass>>main[][], Boolean>>and:[false][]
 		0017:  false                            MainClass>>main[][], Boolean>>and:[false][false]
-		0018:  dbg 'image.st', 103:7            MainClass>>main[][], Boolean>>and:[false][false]
+		0018:  dbg 'image.st', 106:7            MainClass>>main[][], Boolean>>and:[false][false]
 		0025:  return                           MainClass>>main[][false]
 		0014:  dbg '<string>', 1:0              MainClass>>main[][false]
 		0021:  return
@@ -720,10 +743,10 @@ public class TestCore extends BaseTest {
 		0009:  send           1, 'or:'          MainClass>>main[][], Boolean>>or:[true][]
 		0000:  self                             MainClass>>main[][], Boolean>>or:[true][true]
 		0001:  block          0                 MainClass>>main[][], Boolean>>or:[true][true, or:-block0]
-		0004:  dbg 'image.st', 106:12           MainClass>>main[][], Boolean>>or:[true][true, or:-block0]
+		0004:  dbg 'image.st', 109:12           MainClass>>main[][], Boolean>>or:[true][true, or:-block0]
 		0011:  send           1, 'ifTrue:'      MainClass>>main[][], Boolean>>or:[true][], Boolean>>or:-block0[][]
 		0000:  true                             MainClass>>main[][], Boolean>>or:[true][], Boolean>>or:-block0[][true]
-		0001:  dbg 'image.st', 106:22           MainClass>>main[][], Boolean>>or:[true][], Boolean>>or:-block0[][true]
+		0001:  dbg 'image.st', 109:22           MainClass>>main[][], Boolean>>or:[true][], Boolean>>or:-block0[][true]
 		0008:  return                           MainClass>>main[][true]
 		0014:  dbg '<string>', 1:0              MainClass>>main[][true]
 		0021:  return
@@ -733,10 +756,10 @@ public class TestCore extends BaseTest {
 		0009:  send           1, 'or:'          MainClass>>main[][], Boolean>>or:[false][]
 		0000:  self                             MainClass>>main[][], Boolean>>or:[false][true]
 		0001:  block          0                 MainClass>>main[][], Boolean>>or:[false][true, or:-block0]
-		0004:  dbg 'image.st', 106:12           MainClass>>main[][], Boolean>>or:[false][true, or:-block0]
+		0004:  dbg 'image.st', 109:12           MainClass>>main[][], Boolean>>or:[false][true, or:-block0]
 		0011:  send           1, 'ifTrue:'      MainClass>>main[][], Boolean>>or:[false][], Boolean>>or:-block0[][]
 		0000:  true                             MainClass>>main[][], Boolean>>or:[false][], Boolean>>or:-block0[][true]
-		0001:  dbg 'image.st', 106:22           MainClass>>main[][], Boolean>>or:[false][], Boolean>>or:-block0[][true]
+		0001:  dbg 'image.st', 109:22           MainClass>>main[][], Boolean>>or:[false][], Boolean>>or:-block0[][true]
 		0008:  return                           MainClass>>main[][true]
 		0014:  dbg '<string>', 1:0              MainClass>>main[][true]
 		0021:  return
@@ -746,15 +769,15 @@ public class TestCore extends BaseTest {
 		0009:  send           1, 'or:'          MainClass>>main[][], Boolean>>or:[true][]
 		0000:  self                             MainClass>>main[][], Boolean>>or:[true][false]
 		0001:  block          0                 MainClass>>main[][], Boolean>>or:[true][false, or:-block0]
-		0004:  dbg 'image.st', 106:12           MainClass>>main[][], Boolean>>or:[true][false, or:-block0]
+		0004:  dbg 'image.st', 109:12           MainClass>>main[][], Boolean>>or:[true][false, or:-block0]
 		0011:  send           1, 'ifTrue:'      MainClass>>main[][], Boolean>>or:[true][nil]
 		0016:  pop                              MainClass>>main[][], Boolean>>or:[true][]
 		0017:  push_local     0, 0              MainClass>>main[][], Boolean>>or:[true][true]
 		0022:  block          1                 MainClass>>main[][], Boolean>>or:[true][true, or:-block1]
-		0025:  dbg 'image.st', 107:9            MainClass>>main[][], Boolean>>or:[true][true, or:-block1]
+		0025:  dbg 'image.st', 110:9            MainClass>>main[][], Boolean>>or:[true][true, or:-block1]
 		0032:  send           1, 'ifTrue:'      MainClass>>main[][], Boolean>>or:[true][], Boolean>>or:-block1[][]
 		0000:  true                             MainClass>>main[][], Boolean>>or:[true][], Boolean>>or:-block1[][true]
-		0001:  dbg 'image.st', 107:19           MainClass>>main[][], Boolean>>or:[true][], Boolean>>or:-block1[][true]
+		0001:  dbg 'image.st', 110:19           MainClass>>main[][], Boolean>>or:[true][], Boolean>>or:-block1[][true]
 		0008:  return                           MainClass>>main[][true]
 		0014:  dbg '<string>', 1:0              MainClass>>main[][true]
 		0021:  return
@@ -764,16 +787,16 @@ public class TestCore extends BaseTest {
 		0009:  send           1, 'or:'          MainClass>>main[][], Boolean>>or:[false][]
 		0000:  self                             MainClass>>main[][], Boolean>>or:[false][false]
 		0001:  block          0                 MainClass>>main[][], Boolean>>or:[false][false, or:-block0]
-		0004:  dbg 'image.st', 106:12           MainClass>>main[][], Boolean>>or:[false][false, or:-block0]
+		0004:  dbg 'image.st', 109:12           MainClass>>main[][], Boolean>>or:[false][false, or:-block0]
 		0011:  send           1, 'ifTrue:'      MainClass>>main[][], Boolean>>or:[false][nil]
 		0016:  pop                              MainClass>>main[][], Boolean>>or:[false][]
 		0017:  push_local     0, 0              MainClass>>main[][], Boolean>>or:[false][false]
 		0022:  block          1                 MainClass>>main[][], Boolean>>or:[false][false, or:-block1]
-		0025:  dbg 'image.st', 107:9            MainClass>>main[][], Boolean>>or:[false][false, or:-block1]
+		0025:  dbg 'image.st', 110:9            MainClass>>main[][], Boolean>>or:[false][false, or:-block1]
 		0032:  send           1, 'ifTrue:'      MainClass>>main[][], Boolean>>or:[false][nil]
 		0037:  pop                              MainClass>>main[][], Boolean>>or:[false][]
 		0038:  false                            MainClass>>main[][], Boolean>>or:[false][false]
-		0039:  dbg 'image.st', 108:7            MainClass>>main[][], Boolean>>or:[false][false]
+		0039:  dbg 'image.st', 111:7            MainClass>>main[][], Boolean>>or:[false][false]
 		0046:  return                           MainClass>>main[][false]
 		0014:  dbg '<string>', 1:0              MainClass>>main[][false]
 		0021:  return
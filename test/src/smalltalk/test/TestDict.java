@@ -6,9 +6,9 @@ public class TestDict extends BaseTest {
 	@Test public void testEmpty() {
 		String input =
 			"| d |\n" +
-			"d := Dictionary new.\n" +
+			"d := BucketDictionary new.\n" +
 			"^d asString.";
-		String expecting = "Dictionary()";
+		String expecting = "BucketDictionary()";
 		execAndCheckWithDict(input, expecting);
 	}
 
@@ -36,16 +36,16 @@ public class TestDict extends BaseTest {
 	@Test public void testFromListAssoc() {
 		String input =
 			"|d|\n" +
-			"d := Dictionary newFrom: {'hi' -> 34. 'mom'->99}.\n" +
+			"d := BucketDictionary newFrom: {'hi' -> 34. 'mom'->99}.\n" +
 			"^d asString\n";
-		String expecting = "Dictionary(mom->99. hi->34)";
+		String expecting = "BucketDictionary(mom->99. hi->34)";
 		execAndCheckWithDict(input, expecting);
 	}
 
 	@Test public void testKeys() {
 		String input =
 			"|d|\n" +
-			"d := Dictionary newFrom: {'hi' -> 34. 'mom'->99}.\n" +
+			"d := BucketDictionary newFrom: {'hi' -> 34. 'mom'->99}.\n" +
 			"^d keys asString\n";
 		String expecting = "Array(mom. hi)";
 		execAndCheckWithDict(input, expecting);
@@ -54,7 +54,7 @@ public class TestDict extends BaseTest {
 	@Test public void testValues() {
 		String input =
 			"|d|\n" +
-			"d := Dictionary newFrom: {'hi' -> 34. 'mom'->99}.\n" +
+			"d := BucketDictionary newFrom: {'hi' -> 34. 'mom'->99}.\n" +
 			"^d values asString\n";
 		String expecting = "Array(99. 34)"; // ordered not guaranteed
 		execAndCheckWithDict(input, expecting);
@@ -63,7 +63,7 @@ public class TestDict extends BaseTest {
 	@Test public void testAt() {
 		String input =
 			"|d|\n" +
-			"d := Dictionary newFrom: {'hi' -> 34. 'mom'->99}.\n" +
+			"d := BucketDictionary newFrom: {'hi' -> 34. 'mom'->99}.\n" +
 			"^{d at: 'hi'. d at: 'mom'}\n";
 		String expecting = "{34. 99}"; // ordered not guaranteed
 		execAndCheckWithDict(input, expecting);
@@ -0,0 +1,102 @@
+package smalltalk.test;
+
+import org.junit.Test;
+import smalltalk.Run;
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.ExecutionListener;
+import smalltalk.vm.TraceListener;
+import smalltalk.vm.VirtualMachine;
+import smalltalk.vm.primitive.BlockContext;
+import smalltalk.vm.primitive.STInteger;
+import smalltalk.vm.primitive.STObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestExecutionListener extends BaseTest {
+	static class Recorder implements ExecutionListener {
+		int instructions, activations, blockActivations, returns, integers;
+		List<String> sends = new ArrayList<>();
+
+		@Override
+		public void instruction(BlockContext ctx, int ip, int opcode) { instructions++; }
+		@Override
+		public void send(BlockContext ctx, STObject receiver, String selector, int nArgs) { sends.add(selector); }
+		@Override
+		public void activated(BlockContext ctx) {
+			activations++;
+			if ( ctx.isBlock() ) blockActivations++;
+		}
+		@Override
+		public void returned(BlockContext ctx) { returns++; }
+		@Override
+		public void allocated(STObject o) { if ( o instanceof STInteger ) integers++; }
+	}
+
+	public STObject execWithListener(String input, ExecutionListener listener) {
+		STSymbolTable symtab = Run.compileCore(false);
+		Run.compileString(symtab, input, false);
+		VirtualMachine vm = new VirtualMachine(symtab);
+		vm.addListener(listener);
+		return vm.execMain();
+	}
+
+	@Test public void testSendsAndAllocations() {
+		String input = "^3 + 4";
+		Recorder r = new Recorder();
+		STObject result = execWithListener(input, r);
+		assertEquals("7", result.toString());
+		assertEquals("[+]", r.sends.toString());
+		assertEquals(3, r.integers); // 3, 4, and 7
+		assertEquals(4, r.instructions); // push_int, push_int, send, return
+		assertEquals(1, r.activations); // main
+		assertEquals(1, r.returns);
+	}
+
+	@Test public void testBlockActivation() {
+		String input = "^[:x | x] value: 99";
+		Recorder r = new Recorder();
+		STObject result = execWithListener(input, r);
+		assertEquals("99", result.toString());
+		assertEquals(2, r.activations);
+		assertEquals(1, r.blockActivations);
+		assertEquals(2, r.returns);
+	}
+
+	@Test public void testNonLocalReturnUnwindsAllContexts() {
+		String input =
+			"class T [\n" +
+			"    f [ self g: [^99]. ^1]\n" +
+			"    g: blk [ blk value. ^2 ]\n" +
+			"]\n" +
+			"^T new f";
+		Recorder r = new Recorder();
+		STObject result = execWithListener(input, r);
+		assertEquals("99", result.toString());
+		assertEquals(r.activations, r.returns);
+	}
+
+	@Test public void testSameResultWithAndWithoutListener() {
+		String input =
+			"| sum |\n" +
+			"sum := 0.\n" +
+			"1 to: 10 do: [:i | sum := sum + i].\n" +
+			"^sum";
+		execAndCheck(input, "55");
+		assertEquals("55", execWithListener(input, new Recorder()).toString());
+	}
+
+	@Test public void testTrace() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		STObject result = execWithListener("^[99] value", new TraceListener(new PrintStream(bytes)));
+		assertEquals("99", result.toString());
+		String trace = bytes.toString();
+		assertTrue(trace.contains("send           0, 'value'"));
+		assertTrue(trace.contains("MainClass>>main[][], MainClass>>main-block0[][99]"));
+	}
+}
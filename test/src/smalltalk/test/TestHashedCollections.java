@@ -0,0 +1,186 @@
+package smalltalk.test;
+
+import org.junit.Test;
+import smalltalk.vm.exceptions.VMException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TestHashedCollections extends BaseTest {
+	@Test public void testStringIntegerAndCharacterKeys() {
+		String input =
+			"| d |\n" +
+			"d := Dictionary new.\n" +
+			"d at: 'a' put: 1. d at: 2 put: 'two'. d at: $c put: 2.5.\n" +
+			"^{d at: 'a'. d at: 2. d at: $c. d at: 'missing'. d size}";
+		execAndCheck(input, "{1. two. 2.5. nil. 3}", false);
+	}
+
+	@Test public void testEqualStringsAreTheSameKey() {
+		String input =
+			"| d |\n" +
+			"d := Dictionary new.\n" +
+			"d at: 'ab' put: 1.\n" +
+			"d at: 'a', 'b' put: 2.\n" +
+			"^{d size. d at: 'ab'}";
+		execAndCheck(input, "{1. 2}", false);
+	}
+
+	@Test public void testGrow() {
+		String input =
+			"| d ok |\n" +
+			"d := Dictionary new.\n" +
+			"1 to: 1000 do: [:i | d at: i put: i * i].\n" +
+			"ok := true.\n" +
+			"1 to: 1000 do: [:i | (d at: i) = (i * i) ifFalse: [ok := false]].\n" +
+			"^{d size. ok. d at: 1001}";
+		execAndCheck(input, "{1000. true. nil}", false);
+	}
+
+	@Test public void testRemoveKey() {
+		String input =
+			"| d r |\n" +
+			"d := Dictionary new.\n" +
+			"1 to: 100 do: [:i | d at: i put: i].\n" +
+			"1 to: 100 do: [:i | (i mod: 2) = 1 ifTrue: [d removeKey: i]].\n" +
+			"r := d removeKey: 1.\n" +
+			"d at: 1 put: 'back'.\n" +
+			"^{d size. r. d at: 1. d at: 2. d includesKey: 3. d includesKey: 4}";
+		execAndCheck(input, "{51. nil. back. 2. false. true}", false);
+	}
+
+	@Test public void testInsertionOrder() {
+		String input =
+			"| d |\n" +
+			"d := Dictionary new.\n" +
+			"d at: 'z' put: 1. d at: 'a' put: 2. d at: 'm' put: 3. d at: 'a' put: 4.\n" +
+			"d removeKey: 'z'. d at: 'z' put: 5.\n" +
+			"^d asString";
+		execAndCheck(input, "Dictionary(a->4. m->3. z->5)", false);
+	}
+
+	@Test public void testAtIfAbsentAndKeysAndValuesDo() {
+		String input =
+			"| d s |\n" +
+			"d := Dictionary newFrom: {1 -> 10. 2 -> 20}.\n" +
+			"s := 0.\n" +
+			"d keysAndValuesDo: [:k :v | s := s + (k * v)].\n" +
+			"^{s. d at: 3 ifAbsent: ['none']. d at: 2 ifAbsent: ['none']}";
+		execAndCheck(input, "{50. none. 20}", false);
+	}
+
+	@Test public void testUserDefinedHashAndEquals() {
+		String input =
+			"class Point2 [\n" +
+			"    |px py|\n" +
+			"    class x: ax y: ay [ ^self new setX: ax y: ay ]\n" +
+			"    setX: ax y: ay [ px := ax. py := ay ]\n" +
+			"    x [ ^px ]\n" +
+			"    y [ ^py ]\n" +
+			"    = p [ ^px = p x and: py = p y ]\n" +
+			"    hash [ ^px * 31 + py ]\n" +
+			"]\n" +
+			"| d |\n" +
+			"d := Dictionary new.\n" +
+			"d at: (Point2 x: 1 y: 2) put: 'a'.\n" +
+			"d at: (Point2 x: 1 y: 2) put: 'b'.\n" +
+			"d at: (Point2 x: 2 y: 1) put: 'c'.\n" +
+			"^{d size. d at: (Point2 x: 1 y: 2). d at: (Point2 x: 2 y: 1)}";
+		execAndCheck(input, "{2. b. c}", false);
+	}
+
+	@Test public void testObjectsWithoutHashAreIdentityKeys() {
+		String input =
+			"class Thing [ ]\n" +
+			"| d t |\n" +
+			"d := Dictionary new.\n" +
+			"t := Thing new.\n" +
+			"d at: t put: 1. d at: Thing new put: 2.\n" +
+			"^{d size. d at: t. d at: Thing new}";
+		execAndCheck(input, "{2. 1. nil}", false);
+	}
+
+	@Test public void testIdentityDictionary() {
+		String input =
+			"| d s |\n" +
+			"d := IdentityDictionary new.\n" +
+			"s := 'ab'.\n" +
+			"d at: s put: 1. d at: 'a', 'b' put: 2. d at: 3 put: 3. d at: 3 put: 4.\n" +
+			"^{d size. d at: s. d at: 3. d className}";
+		execAndCheck(input, "{3. 1. 4. IdentityDictionary}", false);
+	}
+
+	@Test public void testSet() {
+		String input =
+			"| s |\n" +
+			"s := Set new.\n" +
+			"s add: 3. s add: 'x'. s add: 3. s add: 'x'. s add: 4.\n" +
+			"s remove: 4.\n" +
+			"^{s size. s includes: 3. s includes: 4. s includes: 'x'. s asString}";
+		execAndCheck(input, "{2. true. false. true. Set(3. x)}", false);
+	}
+
+	@Test public void testRemoveAll() {
+		String input =
+			"| d s |\n" +
+			"d := Dictionary newFrom: {1 -> 10. 2 -> 20}.\n" +
+			"s := Set new. s add: 1.\n" +
+			"d removeAll. s removeAll.\n" +
+			"d at: 3 put: 30.\n" +
+			"^{d asString. s size}";
+		execAndCheck(input, "{Dictionary(3->30). 0}", false);
+	}
+
+	@Test public void testYieldInsideHashDoesNotSwitch() {
+		String input =
+			"class Key [\n" +
+			"    = k [ ^self == k ]\n" +
+			"    hash [ Process yield. ^7 ]\n" +
+			"]\n" +
+			"| d k s |\n" +
+			"s := ''.\n" +
+			"[s := s, 'b'] fork.\n" +
+			"d := Dictionary new. k := Key new.\n" +
+			"d at: k put: 'a'.\n" +
+			"s := s, (d at: k).\n" +
+			"Process yield.\n" +
+			"^s";
+		execAndCheck(input, "ab", false);
+	}
+
+	@Test public void testWaitInsideHash() {
+		String input =
+			"class Key [\n" +
+			"    hash [ Semaphore new wait. ^7 ]\n" +
+			"]\n" +
+			"[nil] fork.\n" +
+			"^Dictionary new at: Key new put: 1";
+		try {
+			execAndCheck(input, "", false);
+			fail("expecting VMException");
+		}
+		catch (VMException e) {
+			assertEquals("a process can't wait or end inside a method sent by a primitive", e.getMessage());
+		}
+	}
+
+	@Test public void testReturnPastPrimitiveFromHash() {
+		String input =
+			"class Key [\n" +
+			"    |blk|\n" +
+			"    setBlk: b [ blk := b ]\n" +
+			"    hash [ blk value. ^7 ]\n" +
+			"]\n" +
+			"class T [\n" +
+			"    run [ Dictionary new at: (Key new setBlk: [^'escaped']) put: 1. ^'stayed' ]\n" +
+			"]\n" +
+			"^T new run";
+		try {
+			execAndCheck(input, "", false);
+			fail("expecting VMException");
+		}
+		catch (VMException e) {
+			assertEquals("hash returned past the primitive that sent it", e.getMessage());
+		}
+	}
+}
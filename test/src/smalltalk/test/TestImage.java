@@ -0,0 +1,103 @@
+package smalltalk.test;
+
+import org.junit.Test;
+import smalltalk.Run;
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.Image;
+import smalltalk.vm.VirtualMachine;
+import smalltalk.vm.primitive.STMetaClassObject;
+import smalltalk.vm.primitive.STObject;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TestImage extends BaseTest {
+	public Image compileToImage(String input, boolean genDbg) {
+		STSymbolTable symtab = Run.compileCore(genDbg);
+		Run.compileString(symtab, input, genDbg);
+		return new Image(ByteBuffer.wrap(Image.toBytes(symtab)));
+	}
+
+	@Test public void testExecFromImage() {
+		String input =
+			"class T [\n" +
+			"    |x|\n" +
+			"    x: v [ x := v ]\n" +
+			"    f [ |sum| sum := x. {1. 2. 3} do: [:e | sum := sum + e]. ^sum ]\n" +
+			"]\n" +
+			"^(T new x: 10) f";
+		VirtualMachine vm = new VirtualMachine(compileToImage(input, false));
+		assertEquals("16", vm.execMain().toString());
+	}
+
+	@Test public void testClassesMatchCompiledClasses() {
+		String input = "class T : Array [ |y| foo [ ^[:z | z] value: y ] ]";
+		STSymbolTable symtab = Run.compileCore(true);
+		Run.compileString(symtab, input, true);
+		VirtualMachine compiled = new VirtualMachine(symtab);
+		VirtualMachine loaded = new VirtualMachine(new Image(ByteBuffer.wrap(Image.toBytes(symtab))));
+		int n = 0;
+		for (STObject o : compiled.systemDict.getObjects()) {
+			if ( o instanceof STMetaClassObject ) {
+				STMetaClassObject c = (STMetaClassObject)o;
+				STMetaClassObject c2 = loaded.lookupClass(c.getName());
+				assertEquals(c.toTestString(), c2.toTestString());
+				assertTrue(c2.superClass==null || c2.superClass==loaded.lookupClass(c.superClass.getName()));
+				n++;
+			}
+		}
+		assertTrue(n > 10);
+	}
+
+	@Test public void testSaveAndLoad() throws Exception {
+		File f = File.createTempFile("test", ".sti");
+		f.deleteOnExit();
+		STSymbolTable symtab = Run.compileCore(false);
+		Run.compile(symtab, "smalltalk/test/linkedlist.st", false);
+		Image.save(symtab, f.getPath());
+		Image image = Image.load(f.getPath());
+		assertEquals(Run.exec(symtab, false).toString(), new VirtualMachine(image).execMain().toString());
+	}
+
+	@Test public void testMappedImageLoadsMethodsOnFirstSend() throws Exception {
+		File f = File.createTempFile("test", ".sti");
+		f.deleteOnExit();
+		STSymbolTable symtab = Run.compileCore(false);
+		Run.compileString(symtab,
+			"class T [\n" +
+			"    f [ ^[:x | x * 2] value: 21 ]\n" +
+			"    g [ ^0 ]\n" +
+			"]\n" +
+			"^T new f", false);
+		Image.save(symtab, f.getPath());
+		VirtualMachine vm = new VirtualMachine(Image.map(f.getPath()));
+		STMetaClassObject t = vm.lookupClass("T");
+		assertEquals(0, t.methods.size());
+		assertEquals("42", vm.execMain().toString());
+		assertEquals("[f]", t.methods.keySet().toString());
+		assertEquals("T", t.methods.get("f").blocks[0].className);
+		t.loadAllMethods();
+		assertEquals(2, t.methods.size());
+	}
+
+	@Test public void testVMsShareDecodedMethods() {
+		Image image = compileToImage("class T [ f [ ^[:x | x] value: 1 ] ]\n^T new f", false);
+		VirtualMachine a = new VirtualMachine(image);
+		VirtualMachine b = new VirtualMachine(image);
+		assertEquals("1", a.execMain().toString());
+		assertEquals("1", b.execMain().toString());
+		assertNotSame(a.lookupClass("T"), b.lookupClass("T"));
+		assertSame(a.lookupClass("T").layout, b.lookupClass("T").layout);
+		assertSame(a.lookupClass("T").resolveMethod("f"), b.lookupClass("T").resolveMethod("f"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotAnImage() {
+		new Image(ByteBuffer.wrap(new byte[] {'c','l','a','s','s',' ','T'}));
+	}
+}
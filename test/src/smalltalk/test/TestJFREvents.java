@@ -0,0 +1,93 @@
+package smalltalk.test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+import smalltalk.Run;
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.VirtualMachine;
+import smalltalk.vm.exceptions.VMException;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestJFREvents extends BaseTest {
+	static final String fib =
+		"class Fib [\n" +
+		"    fib: n [ n < 2 ifTrue: [^n]. ^(self fib: n - 1) + (self fib: n - 2) ]\n" +
+		"]\n" +
+		"^Fib new fib: 5";
+
+	public List<RecordedEvent> record(String input) throws IOException {
+		File file = File.createTempFile("smalltalk", ".jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable("smalltalk.CompilePhase");
+			recording.enable("smalltalk.ExecMain");
+			recording.enable("smalltalk.VMError");
+			recording.enable("smalltalk.SlowSend").withThreshold(Duration.ZERO);
+			recording.start();
+			STSymbolTable symtab = Run.compileCore(false);
+			Run.compileString(symtab, input, false);
+			VirtualMachine vm = new VirtualMachine(symtab);
+			try {
+				vm.execMain();
+			}
+			catch (VMException e) {
+				// recorded as an event
+			}
+			recording.stop();
+			recording.dump(file.toPath());
+			return RecordingFile.readAllEvents(file.toPath());
+		}
+		finally {
+			file.delete();
+		}
+	}
+
+	public List<RecordedEvent> events(List<RecordedEvent> events, String name) {
+		List<RecordedEvent> matching = new ArrayList<>();
+		for (RecordedEvent e : events) {
+			if ( e.getEventType().getName().equals(name) ) matching.add(e);
+		}
+		return matching;
+	}
+
+	@Test public void testCompileAndExecEvents() throws IOException {
+		List<RecordedEvent> all = record(fib);
+		List<RecordedEvent> phases = events(all, "smalltalk.CompilePhase");
+		assertEquals(6, phases.size()); // 3 phases each for image.st and the input
+		assertEquals("parseClasses", phases.get(0).getString("phase"));
+		assertEquals("image.st", phases.get(0).getString("fileName"));
+		assertTrue(phases.get(0).getInt("classCount") > 10);
+		RecordedEvent last = phases.get(5);
+		assertEquals("CodeGenerator", last.getString("phase"));
+		assertEquals("<string>", last.getString("fileName"));
+		assertEquals(1, last.getInt("classCount"));
+
+		List<RecordedEvent> exec = events(all, "smalltalk.ExecMain");
+		assertEquals(1, exec.size());
+		assertTrue(exec.get(0).getLong("sends") > 15);
+
+		List<RecordedEvent> sends = new ArrayList<>();
+		for (RecordedEvent e : events(all, "smalltalk.SlowSend")) {
+			if ( e.getString("method").equals("Fib>>fib:") ) sends.add(e);
+		}
+		assertEquals(15, sends.size()); // 2*fib(6)-1 calls
+		assertEquals("Fib", sends.get(0).getString("receiverClass"));
+		assertEquals(2, sends.get(0).getInt("line"));
+	}
+
+	@Test public void testErrorEvent() throws IOException {
+		List<RecordedEvent> all = record("class T [ foo [^1] ]\n^T foo");
+		List<RecordedEvent> errors = events(all, "smalltalk.VMError");
+		assertEquals(1, errors.size());
+		assertEquals("MessageNotUnderstood", errors.get(0).getString("type"));
+	}
+}
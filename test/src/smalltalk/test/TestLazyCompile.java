@@ -0,0 +1,105 @@
+package smalltalk.test;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.junit.Test;
+import smalltalk.Run;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.STClass;
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.VirtualMachine;
+import smalltalk.vm.exceptions.CompileError;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestLazyCompile extends BaseTest {
+	public STSymbolTable compileLazily(String input) {
+		Compiler c = new Compiler(new STSymbolTable(Run.sharedCore(false)));
+		c.lazy = true;
+		STSymbolTable symtab = c.compile(new ANTLRInputStream(input));
+		assertEquals("[]", c.errors.toString());
+		return symtab;
+	}
+
+	@Test public void testOnlySentMethodsGenerated() {
+		STSymbolTable symtab = compileLazily(
+			"class T [\n" +
+			"    class h [ ^self new g ]\n" +
+			"    f [ ^[:x | x + 1] value: 2 ]\n" +
+			"    g [ ^99 ]\n" +
+			"]\n" +
+			"^T new f");
+		STClass t = (STClass)symtab.GLOBALS.resolve("T");
+		assertFalse(t.resolveMethod("f").isGenerated());
+		assertEquals("3", new VirtualMachine(symtab).execMain().toString());
+		assertTrue(t.resolveMethod("f").isGenerated());
+		assertFalse(t.resolveMethod("g").isGenerated());
+		assertFalse(t.resolveMethod("h").isGenerated());
+	}
+
+	@Test public void testSameCodeAsEager() throws IOException {
+		assertEquals(compileAndDump(c -> c.lazy = false), compileAndDump(c -> c.lazy = true));
+	}
+
+	@Test public void testErrorReportedOnFirstSend() {
+		STSymbolTable symtab = compileLazily(
+			"class T [\n" +
+			"    f [ y := 1 ]\n" +
+			"    g [ ^1 ]\n" +
+			"]\n" +
+			"^T new g");
+		assertEquals("1", new VirtualMachine(symtab).execMain().toString());
+		try {
+			((STClass)symtab.GLOBALS.resolve("T")).resolveMethod("f").getCompiledBlock();
+			fail("expecting compile errors");
+		}
+		catch (CompileError e) {
+			assertTrue(e.getMessage().startsWith("compile errors: [unknown variable y in "));
+		}
+	}
+
+	@Test public void testErrorOnEverySend() {
+		STSymbolTable symtab = compileLazily(
+			"class T [\n" +
+			"    f [ y := 1 ]\n" +
+			"]\n" +
+			"^T new f");
+		String first = null;
+		for (int i = 0; i < 2; i++) {
+			try {
+				new VirtualMachine(symtab).execMain();
+				fail("expecting CompileError");
+			}
+			catch (CompileError e) {
+				assertTrue(e.getMessage().startsWith("compile errors: [unknown variable y in "));
+				assertTrue(e.stackTrace.contains("MainClass>>main"));
+				if ( first==null ) first = e.getMessage();
+				assertEquals(first, e.getMessage());
+			}
+		}
+	}
+
+	@Test public void testCodeGenCrashFailsEverySend() {
+		STSymbolTable symtab = compileLazily(
+			"class T [\n" +
+			"    f [ ^1 ]\n" +
+			"]\n" +
+			"^T new f");
+		((STClass)symtab.GLOBALS.resolve("T")).resolveMethod("f").setCodeGen(() -> {
+			throw new IllegalStateException("boom");
+		});
+		for (int i = 0; i < 2; i++) {
+			try {
+				new VirtualMachine(symtab).execMain();
+				fail("expecting CompileError");
+			}
+			catch (CompileError e) {
+				assertEquals("code generation failed: java.lang.IllegalStateException: boom", e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package smalltalk.test;
+
+import org.junit.Test;
+import smalltalk.Run;
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.VirtualMachine;
+
+import static org.junit.Assert.assertEquals;
+
+/** Check the answers of the programs in resources/smalltalk/bench,
+ *  which smalltalk.bench.MacroBenchmarks times.
+ */
+public class TestMacroBenchmarks extends BaseTest {
+	public void checkBenchmark(String name, String expecting) {
+		STSymbolTable symtab = Run.compileCore(false);
+		Run.compile(symtab, "smalltalk/bench/"+name+".st", false);
+		assertEquals(expecting, new VirtualMachine(symtab).execMain().toString());
+	}
+
+	@Test public void testRichards() {
+		checkBenchmark("richards", "{2322. 928}"); // queueCount, holdCount
+	}
+
+	@Test public void testDeltaBlue() {
+		checkBenchmark("deltablue", "{100. 200}");
+	}
+
+	@Test public void testNBody() {
+		checkBenchmark("nbody", "{-169075. -169086}");
+	}
+
+	@Test public void testBinaryTrees() {
+		checkBenchmark("binarytrees", "{1023. 7936. 8128. 8176. 511}");
+	}
+
+	@Test public void testJSON() {
+		checkBenchmark("json", "{-5162. 820. 40}");
+	}
+
+	@Test public void testBank() {
+		checkBenchmark("bank", "{47203. true. 124. 20}");
+	}
+}
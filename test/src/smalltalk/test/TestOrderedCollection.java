@@ -0,0 +1,159 @@
+package smalltalk.test;
+
+import org.junit.Test;
+import smalltalk.vm.exceptions.IndexOutOfRange;
+import smalltalk.vm.exceptions.MismatchedBlockArg;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TestOrderedCollection extends BaseTest {
+	@Test public void testEmpty() {
+		String input = "^{OrderedCollection new asString. OrderedCollection new size. OrderedCollection new isEmpty}";
+		execAndCheck(input, "{OrderedCollection(). 0. true}", false);
+	}
+
+	@Test public void testAddFirstAndLast() {
+		String input =
+			"| c |\n" +
+			"c := OrderedCollection new.\n" +
+			"c addLast: 2. c addLast: 3. c addFirst: 1. c add: 4.\n" +
+			"^{c asString. c first. c last. c at: 2. c size}";
+		execAndCheck(input, "{OrderedCollection(1. 2. 3. 4). 1. 4. 2. 4}", false);
+	}
+
+	@Test public void testRemoveFromBothEnds() {
+		String input =
+			"| c |\n" +
+			"c := OrderedCollection new.\n" +
+			"1 to: 5 do: [:i | c addLast: i].\n" +
+			"^{c removeFirst. c removeLast. c removeFirst. c asArray}";
+		execAndCheck(input, "{1. 5. 2. {3. 4}}", false);
+	}
+
+	@Test public void testGrowWhileWrapped() {
+		String input =
+			"| c ok |\n" +
+			"c := OrderedCollection new.\n" +
+			"1 to: 6 do: [:i | c addLast: i].\n" +
+			"1 to: 4 do: [:i | c removeFirst].\n" + // first is now well into the buffer
+			"7 to: 100 do: [:i | c addLast: i].\n" +
+			"0 to: 4 do: [:i | c addFirst: 4 - i].\n" +
+			"ok := true.\n" +
+			"1 to: c size do: [:i | (c at: i) = (i - 1) ifFalse: [ok := false]].\n" +
+			"^{c size. ok}";
+		execAndCheck(input, "{101. true}", false);
+	}
+
+	@Test public void testAtPut() {
+		String input =
+			"| c |\n" +
+			"c := OrderedCollection new.\n" +
+			"c add: 1. c add: 2.\n" +
+			"c at: 2 put: 'two'.\n" +
+			"^c asArray";
+		execAndCheck(input, "{1. two}", false);
+	}
+
+	@Test public void testDo() {
+		String input =
+			"| c sum |\n" +
+			"c := OrderedCollection new.\n" +
+			"1 to: 100 do: [:i | c add: i].\n" +
+			"sum := 0.\n" +
+			"^{(c do: [:x | sum := sum + x]) == c. sum}";
+		execAndCheck(input, "{true. 5050}", false);
+	}
+
+	@Test public void testDoLargeDoesNotRecurse() {
+		String input =
+			"| c n |\n" +
+			"c := OrderedCollection new.\n" +
+			"n := 0.\n" +
+			"1 to: 500 do: [:i | c add: i].\n" +
+			"c do: [:x | c size < 100000 ifTrue: [c add: x]. n := n + 1].\n" + // grows as it goes
+			"^n";
+		execAndCheck(input, "100000", false);
+	}
+
+	@Test public void testNestedDo() {
+		String input =
+			"| c pairs |\n" +
+			"c := OrderedCollection new. c add: 1. c add: 2.\n" +
+			"pairs := OrderedCollection new.\n" +
+			"c do: [:x | c do: [:y | pairs add: x * 10 + y]].\n" +
+			"^pairs asArray";
+		execAndCheck(input, "{11. 12. 21. 22}", false);
+	}
+
+	@Test public void testReturnFromDo() {
+		String input =
+			"class T [\n" +
+			"    find: x in: c [ c do: [:v | v = x ifTrue: [^'found']]. ^'missing' ]\n" +
+			"]\n" +
+			"| c |\n" +
+			"c := OrderedCollection new. c add: 1. c add: 2. c add: 3.\n" +
+			"^{T new find: 2 in: c. T new find: 4 in: c}";
+		execAndCheck(input, "{found. missing}", false);
+	}
+
+	@Test public void testDoInTwoProcesses() {
+		String input =
+			"| c s done |\n" +
+			"c := OrderedCollection new. c add: 1. c add: 2. c add: 3.\n" +
+			"s := ''. done := Semaphore new.\n" +
+			"[c do: [:x | s := s, 'a', x asString. Process yield]. done signal] fork.\n" +
+			"c do: [:x | s := s, 'b', x asString. Process yield].\n" +
+			"done wait.\n" +
+			"^s";
+		execAndCheck(input, "b1a1b2a2b3a3", false);
+	}
+
+	@Test public void testFilterAnswersOrderedCollection() {
+		String input = "^({1. 2. 3. 4} filter: [:x | x > 2]) asString";
+		execAndCheck(input, "OrderedCollection(3. 4)", false);
+	}
+
+	@Test public void testSubclass() {
+		String input =
+			"class Stack : OrderedCollection [\n" +
+			"    push: x [ ^self addLast: x ]\n" +
+			"    pop [ ^self removeLast ]\n" +
+			"]\n" +
+			"| s sum |\n" +
+			"s := Stack new. s push: 1. s push: 2. s push: 3.\n" +
+			"sum := 0. s do: [:x | sum := sum + x].\n" +
+			"^{s pop. s asString. sum}";
+		execAndCheck(input, "{3. Stack(1. 2). 6}", false);
+	}
+
+	@Test public void testRemoveFirstFromEmpty() {
+		try {
+			execAndCheck("^OrderedCollection new removeFirst", "", false);
+			fail("expecting IndexOutOfRange");
+		}
+		catch (IndexOutOfRange e) {
+			assertEquals("removeFirst of an empty OrderedCollection", e.getMessage());
+		}
+	}
+
+	@Test public void testAtOutOfRange() {
+		try {
+			execAndCheck("| c | c := OrderedCollection new. c add: 1. ^c at: 2", "", false);
+			fail("expecting IndexOutOfRange");
+		}
+		catch (IndexOutOfRange e) {
+			assertEquals("index 2 not in 1..1", e.getMessage());
+		}
+	}
+
+	@Test public void testDoWithWrongBlock() {
+		try {
+			execAndCheck("| c | c := OrderedCollection new. c add: 1. ^c do: [:a :b | a]", "", false);
+			fail("expecting MismatchedBlockArg");
+		}
+		catch (MismatchedBlockArg e) {
+			assertEquals("do: expects a block of 1 argument(s)", e.getMessage());
+		}
+	}
+}
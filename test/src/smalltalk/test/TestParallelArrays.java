@@ -0,0 +1,137 @@
+package smalltalk.test;
+
+import org.junit.Test;
+import smalltalk.SmalltalkExecutor;
+import smalltalk.vm.exceptions.ClassMessageSentToInstance;
+import smalltalk.vm.exceptions.ExecutionLimitExceeded;
+import smalltalk.vm.exceptions.VMException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestParallelArrays extends BaseTest {
+	public static void execAndCheckError(BaseTest test, String input, String expecting) {
+		try {
+			test.execAndCheck(input, "", false);
+			fail("expecting error "+expecting);
+		}
+		catch (VMException e) {
+			assertEquals(expecting, e.getMessage());
+		}
+	}
+
+	@Test public void testCollect() {
+		String input = "^{1. 2. 3. 4. 5} parallelCollect: [:x | x * x]";
+		execAndCheck(input, "{1. 4. 9. 16. 25}", false);
+	}
+
+	@Test public void testCollectLargeArrayKeepsOrder() {
+		String input =
+			"| a b ok |\n" +
+			"a := Array new: 1000.\n" +
+			"1 to: 1000 do: [:i | a at: i put: i].\n" +
+			"b := a parallelCollect: [:x | x * 2].\n" +
+			"ok := true.\n" +
+			"1 to: 1000 do: [:i | (b at: i) = (i * 2) ifFalse: [ok := false]].\n" +
+			"^{b size. ok}";
+		execAndCheck(input, "{1000. true}", false);
+	}
+
+	@Test public void testCapturedStateIsCopied() {
+		String input =
+			"class T [\n" +
+			"    |k|\n" +
+			"    scale: x [ ^x * k ]\n" +
+			"    run [ | offset | k := 10. offset := 1. ^{1. 2. 3} parallelCollect: [:x | (self scale: x) + offset] ]\n" +
+			"]\n" +
+			"^T new run";
+		execAndCheck(input, "{11. 21. 31}", false);
+	}
+
+	@Test public void testNestedBlocks() {
+		String input = "^{1. 2. 3} parallelCollect: [:x | | s | s := 0. 1 to: x do: [:i | s := s + i]. s]";
+		execAndCheck(input, "{1. 3. 6}", false);
+	}
+
+	@Test public void testCollectObjects() {
+		String input =
+			"class Box [ |val| v [ ^val ] v: x [ val := x ] ]\n" +
+			"| boxes |\n" +
+			"boxes := {1. 2} parallelCollect: [:x | | b | b := Box new. b v: x + 1. b].\n" +
+			"^{(boxes at: 1) v. (boxes at: 2) v. (boxes at: 1) className}";
+		execAndCheck(input, "{2. 3. Box}", false);
+	}
+
+	@Test public void testInject() {
+		String input =
+			"| a |\n" +
+			"a := Array new: 1000.\n" +
+			"1 to: 1000 do: [:i | a at: i put: i].\n" +
+			"^a parallelInject: 0 into: [:sum :x | sum + x]";
+		execAndCheck(input, "500500", false);
+	}
+
+	@Test public void testEmpty() {
+		String input = "^{(Array new: 0) parallelCollect: [:x | x]. (Array new: 0) parallelInject: 0 into: [:a :b | a + b]}";
+		execAndCheck(input, "{{}. 0}", false);
+	}
+
+	@Test public void testChangesToCapturedObjectsAreLost() {
+		String input =
+			"| a |\n" +
+			"a := {0}.\n" +
+			"{1. 2} parallelDo: [:x | a at: 1 put: x].\n" +
+			"^a at: 1";
+		execAndCheck(input, "0", false);
+	}
+
+	@Test public void testAssignToCapturedVariableRejected() {
+		String input = "| n | n := 0. {1. 2} parallelDo: [:x | n := n + x]. ^n";
+		execAndCheckError(this, input, "parallelDo: block can't assign to variables outside itself");
+	}
+
+	@Test public void testAssignToFieldRejected() {
+		String input =
+			"class T [ |n| run [ ^{1} parallelCollect: [:x | [:y | n := y] value: x] ] ]\n" +
+			"^T new run";
+		execAndCheckError(this, input, "parallelCollect: block can't assign to fields");
+	}
+
+	@Test public void testReturnRejected() {
+		String input = "^{1. 2} parallelCollect: [:x | ^x]";
+		execAndCheckError(this, input, "parallelCollect: block can't return from its method with ^");
+	}
+
+	@Test public void testTimeLimitOfJobAppliesToChunks() throws Exception {
+		String slow = "^{1. 2} parallelCollect: [:x | 1 to: 100000000 do: [:i | ]. x]";
+		try (SmalltalkExecutor executor = new SmalltalkExecutor(1)) {
+			long start = System.nanoTime();
+			Throwable t = TestSmalltalkExecutor.failure(executor.submit(slow, 0, 300));
+			long ms = (System.nanoTime() - start) / 1_000_000;
+			assertTrue(t instanceof ExecutionLimitExceeded);
+			assertTrue("took "+ms+"ms for a 300ms limit", ms < 2000);
+			// the chunks stopped too, leaving the pool free
+			assertEquals("{2. 4}", executor.submit("^{1. 2} parallelCollect: [:x | x * 2]", 0, 2000).get().toString());
+		}
+	}
+
+	@Test public void testInstructionLimitOfJobAppliesToChunks() throws Exception {
+		String slow = "^{1. 2} parallelCollect: [:x | 1 to: 100000000 do: [:i | ]. x]";
+		try (SmalltalkExecutor executor = new SmalltalkExecutor(1)) {
+			Throwable t = TestSmalltalkExecutor.failure(executor.submit(slow, 100000, 0));
+			assertTrue(t instanceof ExecutionLimitExceeded);
+		}
+	}
+
+	@Test public void testErrorInBlock() {
+		String input = "^{1. 2} parallelCollect: [:x | x error: 'bad']";
+		try {
+			execAndCheck(input, "", false);
+			fail("expecting ClassMessageSentToInstance");
+		}
+		catch (ClassMessageSentToInstance e) {
+			assertEquals("error: is a class method sent to instance of Integer", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package smalltalk.test;
+
+import org.junit.Test;
+import smalltalk.Run;
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.VirtualMachine;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestParallelCompile extends BaseTest {
+	@Test public void testSameCodeAsSequential() throws IOException {
+		String sequential = compileAndDump(c -> c.pool = null);
+		for (int i = 0; i < 5; i++) {
+			assertEquals(sequential, compileAndDump(c -> { }));
+		}
+	}
+
+	@Test public void testExecMultipleFiles() {
+		STSymbolTable symtab = Run.overlayCore(false);
+		Run.compile(symtab, IMAGE_FILES.subList(1, 3), false);
+		Run.compileString(symtab,
+			"| d | d := BucketDictionary new. d at: 1 put: 'one'. ^d at: 1", false);
+		assertEquals("one", new VirtualMachine(symtab).execMain().toString());
+	}
+}
@@ -0,0 +1,62 @@
+package smalltalk.test;
+
+import org.antlr.v4.runtime.ANTLRInputStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.junit.Test;
+import smalltalk.compiler.Compiler;
+import smalltalk.compiler.STBlock;
+import smalltalk.compiler.STClass;
+import smalltalk.compiler.STMethod;
+import smalltalk.compiler.STSymbolTable;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestParse extends BaseTest {
+	@Test public void testSLLFirstGivesSameCodeAsLL() throws IOException {
+		assertEquals(compileAndDump(c -> c.sllFirst = false), compileAndDump(c -> c.sllFirst = true));
+	}
+
+	@Test public void testSLLParseSucceeds() {
+		CompilerWithHooks c = new CompilerWithHooks();
+		c.parseClasses(new ANTLRInputStream("class T [ f: x [ ^{x. x + 1} ] ]\n^T new f: 3"));
+		assertEquals(PredictionMode.SLL, c.getParser().getInterpreter().getPredictionMode());
+		assertEquals(0, c.getParser().getNumberOfSyntaxErrors());
+	}
+
+	@Test public void testSyntaxErrorFallsBackToLL() {
+		CompilerWithHooks c = new CompilerWithHooks();
+		c.parseClasses(new ANTLRInputStream("class T [ f [ ^1 + ] ]"));
+		assertEquals(PredictionMode.LL, c.getParser().getInterpreter().getPredictionMode());
+		assertTrue(c.getParser().getNumberOfSyntaxErrors() > 0);
+	}
+
+	@Test public void testTreesReleasedAfterCompile() {
+		STMethod f = compileMethodF(true);
+		assertNull(f.getDefNode());
+		assertNull(((STBlock)f.getAllNestedScopes().get(0)).getDefNode());
+		assertEquals(2, f.compiledBlock.line);
+		assertEquals(2, f.compiledBlock.blocks[0].line);
+	}
+
+	@Test public void testKeepTrees() {
+		STMethod f = compileMethodF(false);
+		assertNotNull(f.getDefNode());
+		assertNotNull(((STBlock)f.getAllNestedScopes().get(0)).getDefNode());
+	}
+
+	public STMethod compileMethodF(boolean releaseTrees) {
+		Compiler c = new Compiler();
+		c.releaseTrees = releaseTrees;
+		STSymbolTable symtab = c.compile(new ANTLRInputStream(
+			"class T [\n" +
+			"    f [ ^[:x | x] value: 1 ]\n" +
+			"]\n"));
+		assertEquals("[]", c.errors.toString());
+		return ((STClass)symtab.GLOBALS.resolve("T")).resolveMethod("f");
+	}
+}
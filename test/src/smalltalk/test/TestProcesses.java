@@ -0,0 +1,148 @@
+package smalltalk.test;
+
+import org.junit.Test;
+import smalltalk.Run;
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.VirtualMachine;
+import smalltalk.vm.exceptions.BlockCannotReturn;
+import smalltalk.vm.exceptions.Deadlock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestProcesses extends BaseTest {
+	public static String exec(String input, int processQuantum) {
+		STSymbolTable symtab = Run.overlayCore(false);
+		Run.compileString(symtab, input, false);
+		VirtualMachine vm = new VirtualMachine(symtab);
+		vm.processQuantum = processQuantum;
+		return vm.execMain().toString();
+	}
+
+	@Test public void testForkRunsWhenMainYields() {
+		String input =
+			"| s | s := 'a'.\n" +
+			"[s := s, 'b'] fork.\n" +
+			"s := s, 'c'.\n" +
+			"Process yield.\n" +
+			"^s, 'd'";
+		execAndCheck(input, "acbd", false);
+	}
+
+	@Test public void testProcessState() {
+		String input =
+			"| p |\n" +
+			"p := [3] newProcess.\n" +
+			"p isTerminated ifTrue: [^'early'].\n" +
+			"p resume.\n" +
+			"Process yield.\n" +
+			"^{p isTerminated. p priority. Process activeProcess priority}";
+		execAndCheck(input, "{true. 4. 4}", false);
+	}
+
+	@Test public void testProducerConsumer() {
+		String input =
+			"| s items done |\n" +
+			"s := Semaphore new. done := Semaphore new. items := ''.\n" +
+			"[1 to: 3 do: [:i | s wait. items := items, i asString]. done signal] fork.\n" +
+			"1 to: 3 do: [:i | s signal. Process yield].\n" +
+			"done wait.\n" +
+			"^items";
+		execAndCheck(input, "123", false);
+	}
+
+	@Test public void testCritical() {
+		String input =
+			"| mutex n done |\n" +
+			"mutex := Semaphore forMutualExclusion. done := Semaphore new. n := 0.\n" +
+			"1 to: 2 do: [:k |\n" +
+			"    [1 to: 100 do: [:i | mutex critical: [n := n + 1]]. done signal] fork].\n" +
+			"done wait. done wait.\n" +
+			"^n";
+		execAndCheck(input, "200", false);
+	}
+
+	@Test public void testTimeSlicing() {
+		String input =
+			"| s done |\n" +
+			"s := ''. done := Semaphore new.\n" +
+			"[1 to: 3 do: [:i | s := s, 'a'. 1 to: 50 do: [:j | j]]. done signal] fork.\n" +
+			"[1 to: 3 do: [:i | s := s, 'b'. 1 to: 50 do: [:j | j]]. done signal] fork.\n" +
+			"done wait. done wait.\n" +
+			"^s";
+		String s = exec(input, 100);
+		assertTrue(s, s.contains("ab") || s.contains("ba"));
+		assertEquals("aaabbb", exec(input, 1000000)); // one turn each
+	}
+
+	@Test public void testHigherPriorityPreempts() {
+		String input =
+			"| s p |\n" +
+			"s := ''.\n" +
+			"p := [s := s, 'high'] newProcess.\n" +
+			"p priority: Process highestPriority.\n" +
+			"p resume.\n" +
+			"^s, ' main'";
+		execAndCheck(input, "high main", false);
+	}
+
+	@Test public void testSignalWakesHigherPriority() {
+		String input =
+			"| s sem |\n" +
+			"s := ''. sem := Semaphore new.\n" +
+			"[sem wait. s := s, 'high '] forkAt: Process highestPriority.\n" +
+			"s := s, 'before '.\n" +
+			"sem signal.\n" +
+			"^s, 'after'";
+		execAndCheck(input, "before high after", false);
+	}
+
+	@Test public void testDelays() {
+		String input =
+			"| s done |\n" +
+			"s := ''. done := Semaphore new.\n" +
+			"[(Delay forMilliseconds: 40) wait. s := s, 'slow'. done signal] fork.\n" +
+			"[(Delay forMilliseconds: 10) wait. s := s, 'fast '. done signal] fork.\n" +
+			"done wait. done wait.\n" +
+			"^s";
+		execAndCheck(input, "fast slow", false);
+	}
+
+	@Test public void testTerminate() {
+		String input =
+			"| s p |\n" +
+			"s := 'a'.\n" +
+			"p := [s := s, 'b'] fork.\n" +
+			"p terminate.\n" +
+			"Process yield.\n" +
+			"^{s. p isTerminated}";
+		execAndCheck(input, "{a. true}", false);
+	}
+
+	@Test public void testDeadlock() {
+		String input = "Semaphore new wait";
+		try {
+			execAndCheck(input, "", false);
+			fail("expecting Deadlock");
+		}
+		catch (Deadlock d) {
+			assertEquals("all processes are waiting on semaphores", d.getMessage());
+		}
+	}
+
+	@Test public void testReturnFromMethodInAnotherProcess() {
+		String input =
+			"class T [\n" +
+			"    f [ [^1] fork. Process yield. ^2 ]\n" +
+			"]\n" +
+			"^T new f";
+		try {
+			execAndCheck(input, "", false);
+			fail("expecting BlockCannotReturn");
+		}
+		catch (BlockCannotReturn bcr) {
+			assertTrue(bcr.getMessage(), bcr.getMessage().startsWith("T>>f-block0 can't return from method T>>f in another process"));
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package smalltalk.test;
+
+import org.junit.Test;
+import smalltalk.Run;
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.Bytecode;
+import smalltalk.vm.VirtualMachine;
+import smalltalk.vm.profile.OpcodeHistogram;
+import smalltalk.vm.profile.Profiler;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestProfiler extends BaseTest {
+	static final String fib =
+		"class Fib [\n" +
+		"    fib: n [ n < 2 ifTrue: [^n]. ^(self fib: n - 1) + (self fib: n - 2) ]\n" +
+		"]\n" +
+		"^Fib new fib: 10";
+
+	public Profiler profile(String input) {
+		STSymbolTable symtab = Run.compileCore(false);
+		Run.compileString(symtab, input, false);
+		VirtualMachine vm = new VirtualMachine(symtab);
+		Profiler profiler = new Profiler();
+		vm.addListener(profiler);
+		assertEquals("55", vm.execMain().toString());
+		return profiler;
+	}
+
+	@Test public void testInvocationCounts() {
+		Profiler profiler = profile(fib);
+		Profiler.MethodProfile main = profiler.getProfiles().get(0);
+		assertEquals("MainClass>>main", main.block.qualifiedName);
+		assertEquals(profiler.getBytecodesExecuted(), main.totalBytecodes);
+		Profiler.MethodProfile fibProfile = profiler.getProfiles().get(1);
+		assertEquals("Fib>>fib:", fibProfile.block.qualifiedName);
+		assertEquals(177, fibProfile.invocations); // 2*fib(11)-1 calls
+		assertEquals(2, fibProfile.block.line);
+		assertTrue(fibProfile.selfBytecodes < fibProfile.totalBytecodes);
+	}
+
+	@Test public void testCollapsedStacks() {
+		Profiler profiler = profile(fib);
+		StringWriter sw = new StringWriter();
+		profiler.getCallTree().writeCollapsed(new PrintWriter(sw));
+		String collapsed = sw.toString();
+		assertTrue(collapsed.startsWith("MainClass>>main:4 "));
+		assertTrue(collapsed.contains("\nMainClass>>main:4;Fib>>fib::2;Fib>>fib::2 "));
+		long total = 0;
+		for (String line : collapsed.split("\n")) {
+			total += Long.parseLong(line.substring(line.lastIndexOf(' ')+1));
+		}
+		assertEquals(profiler.getBytecodesExecuted(), total);
+	}
+
+	@Test public void testOpcodeHistogram() {
+		STSymbolTable symtab = Run.compileCore(false);
+		Run.compileString(symtab, "^3 + 4", false);
+		VirtualMachine vm = new VirtualMachine(symtab);
+		OpcodeHistogram histogram = new OpcodeHistogram();
+		vm.addListener(histogram);
+		assertEquals("7", vm.execMain().toString());
+		assertEquals(2, histogram.getCount(Bytecode.PUSH_INT));
+		assertEquals(1, histogram.getCount(Bytecode.SEND));
+		assertEquals(1, histogram.getPairCount(Bytecode.PUSH_INT, Bytecode.PUSH_INT));
+		assertEquals(1, histogram.getPairCount(Bytecode.SEND, Bytecode.RETURN));
+		assertEquals(4.0, histogram.getBytecodesPerSend(), 0.0);
+		StringWriter sw = new StringWriter();
+		histogram.writeCSV(new PrintWriter(sw));
+		assertTrue(sw.toString().contains("\nopcode,push_int,,2\n"));
+		assertTrue(sw.toString().contains("\nblock,push_int,\"MainClass>>main:1\",2\n"));
+	}
+}
@@ -0,0 +1,87 @@
+package smalltalk.test;
+
+import org.junit.Test;
+import smalltalk.Run;
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.VirtualMachine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestSharedCore extends BaseTest {
+	@Test public void testProgramsDoNotInterfere() {
+		int ncore = Run.sharedCore(false).getGlobalSymbols().size();
+		STSymbolTable a = Run.overlayCore(false);
+		STSymbolTable b = Run.overlayCore(false);
+		Run.compileString(a, "class T [ f [ ^1 ] ]\n^T new f", false);
+		Run.compileString(b, "class T [ f [ ^2 ] g [ ^self f + 1 ] ]\n^T new g", false);
+		assertSame(a.core, b.core);
+		assertEquals("1", new VirtualMachine(a).execMain().toString());
+		assertEquals("3", new VirtualMachine(b).execMain().toString());
+		assertEquals(ncore, Run.sharedCore(false).getGlobalSymbols().size());
+		assertEquals(ncore+2, a.getGlobalSymbols().size()); // T and MainClass
+	}
+
+	@Test public void testVMsShareCompiledCode() {
+		STSymbolTable a = Run.overlayCore(false);
+		STSymbolTable b = Run.overlayCore(false);
+		Run.compileString(a, "^{1. 2} size", false);
+		Run.compileString(b, "^{1. 2. 3} size", false);
+		VirtualMachine vmA = new VirtualMachine(a);
+		VirtualMachine vmB = new VirtualMachine(b);
+		assertEquals("2", vmA.execMain().toString());
+		assertEquals("3", vmB.execMain().toString());
+		assertNotSame(vmA.lookupClass("Array"), vmB.lookupClass("Array"));
+		assertSame(vmA.lookupClass("Array").resolveMethod("size"), vmB.lookupClass("Array").resolveMethod("size"));
+	}
+
+	@Test public void testConcurrentVMs() throws Exception {
+		STSymbolTable symtab = Run.overlayCore(false);
+		Run.compile(symtab, "smalltalk/test/linkedlist.st", false);
+		String expecting = new VirtualMachine(symtab).execMain().toString();
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < 16; i++) {
+				results.add(pool.submit(() -> new VirtualMachine(symtab).execMain().toString()));
+			}
+			for (Future<String> result : results) {
+				assertEquals(expecting, result.get());
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test public void testCoreIsFrozen() {
+		STSymbolTable core = Run.sharedCore(true);
+		assertTrue(core.isFrozen());
+		try {
+			Run.compileString(core, "class T [ ]", true);
+			fail("expecting IllegalStateException");
+		}
+		catch (IllegalStateException ise) {
+			assertEquals("can't define T in a frozen symbol table", ise.getMessage());
+		}
+	}
+
+	@Test public void testCantRedefineCoreClass() {
+		try {
+			Run.compileString(Run.overlayCore(false), "class Array [ ]", false);
+			fail("expecting compile error");
+		}
+		catch (RuntimeException re) {
+			assertEquals("Image compile errors: [redefinition of Array]", re.getMessage());
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package smalltalk.test;
+
+import org.junit.Test;
+import smalltalk.SmalltalkExecutor;
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.exceptions.ExecutionLimitExceeded;
+import smalltalk.vm.primitive.STObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestSmalltalkExecutor extends BaseTest {
+	public static Throwable failure(CompletableFuture<STObject> job) throws InterruptedException {
+		try {
+			job.get();
+			fail("expecting job to fail");
+		}
+		catch (ExecutionException ee) {
+			return ee.getCause();
+		}
+		return null;
+	}
+
+	@Test public void testSource() throws Exception {
+		try (SmalltalkExecutor executor = new SmalltalkExecutor(2)) {
+			assertEquals("7", executor.submit("^3 + 4").get().toString());
+		}
+	}
+
+	@Test public void testPrecompiledManyTimes() throws Exception {
+		STSymbolTable program = SmalltalkExecutor.compile(
+			"class T [ |n| f [ n := (n==nil ifTrue: [0] ifFalse: [n]) + 1. ^n ] ]\n" +
+			"| t | t := T new. t f. ^t f");
+		try (SmalltalkExecutor executor = new SmalltalkExecutor(4)) {
+			List<CompletableFuture<STObject>> jobs = new ArrayList<>();
+			for (int i = 0; i < 100; i++) jobs.add(executor.submit(program));
+			for (CompletableFuture<STObject> job : jobs) {
+				assertEquals("2", job.get().toString()); // each job gets fresh objects
+			}
+		}
+	}
+
+	@Test public void testInstructionLimit() throws Exception {
+		try (SmalltalkExecutor executor = new SmalltalkExecutor(1)) {
+			Throwable t = failure(executor.submit("class T [ f [ ^self f ] ]\n^T new f", 10000, 0));
+			assertTrue(t instanceof ExecutionLimitExceeded);
+			assertEquals("executed more than 10000 instructions", t.getMessage());
+			assertEquals("3", executor.submit("^1 + 2", 10000, 0).get().toString());
+		}
+	}
+
+	@Test public void testTimeLimit() throws Exception {
+		try (SmalltalkExecutor executor = new SmalltalkExecutor(1)) {
+			executor.maxMillis = 50;
+			Throwable t = failure(executor.submit("1 to: 1000000 do: [:i | 1 to: 100 do: [:j | j]]"));
+			assertTrue(t instanceof ExecutionLimitExceeded);
+			assertEquals("ran longer than 50ms", t.getMessage());
+		}
+	}
+
+	@Test public void testTimeLimitMetOnDeepRecursion() throws Exception {
+		// to:do: recurses, so the stack is a million contexts deep by the deadline
+		STSymbolTable program = SmalltalkExecutor.compile("1 to: 100000000 do: [:i | ]. ^1");
+		try (SmalltalkExecutor executor = new SmalltalkExecutor(1)) {
+			failure(executor.submit(program, 0, 300)); // warm up
+			long start = System.nanoTime();
+			Throwable t = failure(executor.submit(program, 0, 300));
+			long ms = (System.nanoTime() - start) / 1_000_000;
+			assertTrue(t instanceof ExecutionLimitExceeded);
+			assertTrue("took "+ms+"ms for a 300ms limit", ms < 900);
+		}
+	}
+
+	@Test public void testCompileError() throws Exception {
+		try (SmalltalkExecutor executor = new SmalltalkExecutor(1)) {
+			Throwable t = failure(executor.submit("class Array [ ]"));
+			assertEquals("Image compile errors: [redefinition of Array]", t.getMessage());
+		}
+	}
+}
@@ -1,6 +1,8 @@
 package smalltalk.test;
 
+import org.antlr.v4.runtime.ANTLRInputStream;
 import org.junit.Test;
+import smalltalk.compiler.Compiler;
 
 import java.util.Arrays;
 
@@ -106,6 +108,20 @@ public class TestSymbolProblems extends BaseTest {
 		check(input, expecting, errors);
 	}
 
+	@Test public void testErrorsFromFullCompile() {
+		String input =
+		"class T [" +
+		"    f [ |x x| [:y | y := 1. z := 2] ]" +
+		"]";
+		Compiler compiler = new Compiler();
+		compiler.compile(new ANTLRInputStream(input));
+		String[] errors = {
+			"redefinition of x in global>>T>>f",
+			"unknown variable z in global>>T>>f>>f-block0"
+		};
+		assertEquals(Arrays.asList(errors), compiler.errors);
+	}
+
 	public void check(String input, String expecting, String[] errors) {
 		CompilerWithHooks compiler = parseAndDefineSymbols(input);
 		String result = compiler.getSymbolTable().GLOBALS.toTestString(", ", ">>");
@@ -0,0 +1,108 @@
+package smalltalk.test;
+
+import org.junit.Test;
+import smalltalk.Run;
+import smalltalk.compiler.STClass;
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.Image;
+import smalltalk.vm.TreeShaker;
+import smalltalk.vm.VirtualMachine;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestTreeShaker extends BaseTest {
+	public TreeShaker shake(String input) {
+		STSymbolTable symtab = Run.compileCore(false);
+		Run.compile(symtab, "smalltalk/test/linkedlist.st", false);
+		Run.compileString(symtab, input, false);
+		return new TreeShaker(symtab).shake();
+	}
+
+	public String execShaken(TreeShaker shaker) {
+		Image image = new Image(ByteBuffer.wrap(Image.toBytes(shaker.getLiveCode())));
+		return new VirtualMachine(image).execMain().toString();
+	}
+
+	@Test public void testUnusedClassesAndMethodsRemoved() {
+		TreeShaker shaker = shake(
+			"class T [\n" +
+			"    f [ ^self g + 1 ]\n" +
+			"    g [ ^41 ]\n" +
+			"    h [ ^LinkedList new ]\n" +
+			"]\n" +
+			"^T new f");
+		assertEquals("42", execShaken(shaker));
+		String report = shaker.report();
+		assertTrue(report.contains("LinkedList"));
+		assertTrue(report.contains("T>>h"));
+		assertFalse(report.contains("T>>f"));
+		for (STClass cl : shaker.getLiveClasses()) {
+			assertFalse(cl.getName().equals("LinkedList"));
+		}
+	}
+
+	@Test public void testClassReferenceKeepsSuperclassesAndSentMethods() {
+		TreeShaker shaker = shake(
+			"| list |\n" +
+			"list := LinkedList new.\n" +
+			"list add: 3.\n" +
+			"list add: 4.\n" +
+			"^list size");
+		assertEquals("2", execShaken(shaker));
+		String report = shaker.report();
+		assertFalse(report.contains("LinkedList>>add:"));
+		assertFalse(report.contains(" LinkedList,"));
+	}
+
+	@Test public void testActorHandlersSentByStringAreKept() {
+		TreeShaker shaker = shake(TestActors.WORKER +
+			"| w |\n" +
+			"w := Actor spawn: Worker.\n" +
+			"w send: 'fib:replyTo:' with: 15 with: Actor current.\n" +
+			"^Actor receive: Results new");
+		assertEquals("610", execShaken(shaker));
+		String report = shaker.report();
+		assertFalse(report.contains("Worker>>fib:replyTo:"));
+		assertFalse(report.contains("Results>>result:"));
+	}
+
+	@Test public void testHashAndEqualsKeptForDictionaryKeys() {
+		TreeShaker shaker = shake(
+			"class Key [\n" +
+			"    |v|\n" +
+			"    setK: x [ v := x ]\n" +
+			"    k [ ^v ]\n" +
+			"    = o [ ^v = o k ]\n" +
+			"    hash [ ^v ]\n" +
+			"]\n" +
+			"| d s |\n" +
+			"d := Dictionary new.\n" +
+			"d at: (Key new setK: 1) put: 'a'.\n" +
+			"s := Set new. s add: (Key new setK: 2). s add: (Key new setK: 2).\n" +
+			"^{d at: (Key new setK: 1). s size}");
+		assertEquals("{a. 1}", execShaken(shaker));
+		String report = shaker.report();
+		assertFalse(report.contains("Key>>hash"));
+		assertFalse(report.contains("Key>>="));
+	}
+
+	@Test public void testShakenMacroBenchmarksGiveSameResults() {
+		String[][] benchmarks = {
+			{"richards",    "{2322. 928}"},
+			{"deltablue",   "{100. 200}"},
+			{"nbody",       "{-169075. -169086}"},
+			{"binarytrees", "{1023. 7936. 8128. 8176. 511}"},
+			{"json",        "{-5162. 820. 40}"},
+			{"bank",        "{47203. true. 124. 20}"},
+		};
+		for (String[] b : benchmarks) {
+			STSymbolTable symtab = Run.compileCore(false);
+			Run.compile(symtab, "smalltalk/bench/"+b[0]+".st", false);
+			assertEquals(b[0], b[1], execShaken(new TreeShaker(symtab).shake()));
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package smalltalk.test;
+
+import org.junit.Test;
+import smalltalk.Run;
+import smalltalk.compiler.STSymbolTable;
+import smalltalk.vm.VMStats;
+import smalltalk.vm.VirtualMachine;
+import smalltalk.vm.exceptions.MessageNotUnderstood;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestVMStats extends BaseTest {
+	public VirtualMachine newVM(String input) {
+		STSymbolTable symtab = Run.compileCore(false);
+		Run.compileString(symtab, input, false);
+		return new VirtualMachine(symtab);
+	}
+
+	@Test public void testSendsAndMethodCache() {
+		VirtualMachine vm = newVM("| sum | sum := 0. 1 to: 10 do: [:i | sum := sum + i]. ^sum");
+		assertEquals("55", vm.execMain().toString());
+		VMStats stats = vm.getStats();
+		assertTrue(stats.sends > 30);
+		assertTrue(stats.primitiveCalls > 20);
+		assertEquals(stats.sends, stats.methodCacheHits + stats.methodCacheMisses);
+		assertTrue(stats.methodCacheHits > stats.methodCacheMisses);
+		assertTrue(stats.integersAllocated >= 10);
+		assertTrue(stats.objectsAllocated >= stats.integersAllocated);
+	}
+
+	@Test public void testDepthAndNonLocalReturn() {
+		VirtualMachine vm = newVM(
+			"class T [\n" +
+			"    f [ self g: [^99]. ^1]\n" +
+			"    g: blk [ blk value. ^2 ]\n" +
+			"]\n" +
+			"^T new f");
+		assertEquals("99", vm.execMain().toString());
+		VMStats stats = vm.getStats();
+		assertEquals(1, stats.nonLocalReturns);
+		assertEquals(4, stats.maxContextDepth); // main, f, g:, block
+	}
+
+	@Test public void testExceptionCounts() {
+		VirtualMachine vm = newVM("class T [ foo [^1] ]\n^T foo"); // instance method sent to class
+		try {
+			vm.execMain();
+			fail("expecting MessageNotUnderstood");
+		}
+		catch (MessageNotUnderstood e) {
+			assertEquals("{MessageNotUnderstood=1}", vm.getStats().getExceptions().toString());
+		}
+	}
+
+	@Test public void testMBean() throws Exception {
+		VirtualMachine vm = newVM("^3 + 4");
+		ObjectName name = vm.registerMBean();
+		try {
+			vm.execMain();
+			Object sends = ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Sends");
+			assertEquals(1L, sends);
+		}
+		finally {
+			vm.unregisterMBean();
+		}
+		assertTrue(!ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+	}
+}